@@ -0,0 +1,93 @@
+import java.util.Random;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import dkc.bench.Workload;
+
+/**
+ * BoxPairWorkload.java
+ * Runs one of GameObj's pairwise collision tests over a fixed set of box pairs: a mix of
+ * overlapping, touching and separated pairs like checkCollisions() sees.
+ * Variants: direction, trigDirection (the original trigonometric getCollisionDirection,
+ * kept here for comparison), colliding, touching.
+ * @author Jack Harkins
+ *
+ */
+public class BoxPairWorkload implements Workload {
+    
+    public static final int NUM_PAIRS = 1024;
+    
+    private final GameObj[] first = new GameObj[NUM_PAIRS];
+    private final GameObj[] second = new GameObj[NUM_PAIRS];
+    private String variant;
+    
+    @Override
+    public void setUp(String variant, int size) {
+        this.variant = variant;
+        Random random = new Random(120);
+        for (int i = 0; i < NUM_PAIRS; i++) {
+            first[i] = new TerrainBlock(0, 0, 60, 60);
+            int px;
+            int py;
+            switch (i % 3) {
+            case 0: // overlapping
+                px = random.nextInt(100) - 50;
+                py = random.nextInt(100) - 50;
+                break;
+            case 1: // touching on one side
+                px = random.nextBoolean() ? 60 : -60;
+                py = random.nextInt(100) - 50;
+                break;
+            default: // nowhere near
+                px = random.nextInt(2000) + 200;
+                py = random.nextInt(2000) - 1000;
+            }
+            second[i] = new TerrainBlock(px, py, 60, 60);
+        }
+    }
+    
+    // getCollisionDirection() as it was before it was made integer-only
+    private static CollisionDirection trigDirection(GameObj self, GameObj other) {
+        double dx = other.getPx() + other.getWidth() / 2 - (self.getPx() + self.getWidth() / 2);
+        double dy = other.getPy() + other.getHeight() / 2 - (self.getPy() + self.getHeight() / 2);
+        
+        double theta = Math.acos(dx / (Math.sqrt(dx * dx + dy * dy)));
+        double diagTheta = Math.atan2(other.getHeight() / 2, other.getWidth() / 2);
+        
+        if (theta <= diagTheta) {
+            return CollisionDirection.RIGHT;
+        } else if (theta > diagTheta && theta <= Math.PI - diagTheta) {
+            return (dy > 0) ? CollisionDirection.UP : CollisionDirection.DOWN;
+        } else {
+            return CollisionDirection.LEFT;
+        }
+    }
+    
+    @Override
+    public void run(Blackhole bh) {
+        switch (variant) {
+        case "direction":
+            for (int i = 0; i < NUM_PAIRS; i++) {
+                bh.consume(first[i].getCollisionDirection(second[i]));
+            }
+            break;
+        case "trigDirection":
+            for (int i = 0; i < NUM_PAIRS; i++) {
+                bh.consume(trigDirection(first[i], second[i]));
+            }
+            break;
+        case "colliding":
+            for (int i = 0; i < NUM_PAIRS; i++) {
+                bh.consume(first[i].isColliding(second[i]));
+            }
+            break;
+        case "touching":
+            for (int i = 0; i < NUM_PAIRS; i++) {
+                bh.consume(first[i].isTouching(second[i]));
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("unknown variant " + variant);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import dkc.bench.Workload;
+
+/**
+ * BroadPhaseWorkload.java
+ * Tests 200 enemy-sized objects against the terrain of a level the way checkCollisions()
+ * does, either by scanning every block ("brute") or by querying a TerrainGrid ("grid").
+ * @author Jack Harkins
+ *
+ */
+public class BroadPhaseWorkload implements Workload {
+    
+    private static final int NUM_MOVING_OBJS = 200;
+    
+    private List<TerrainBlock> blocks;
+    private List<GameObj> objs;
+    private TerrainGrid grid;
+    private final TerrainGrid.Candidates nearby = new TerrainGrid.Candidates();
+    private boolean useGrid;
+    
+    @Override
+    public void setUp(String variant, int size) {
+        useGrid = variant.equals("grid");
+        blocks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // alternating ground and platform blocks
+            int py = (i % 2 == 0) ? 0 : 240;
+            blocks.add(new TerrainBlock((i / 2) * 60, py, 60, 60));
+        }
+        int levelWidth = (size / 2) * 60;
+        objs = new ArrayList<>(NUM_MOVING_OBJS);
+        for (int i = 0; i < NUM_MOVING_OBJS; i++) {
+            // standing on the ground, slightly offset from the block grid
+            objs.add(new TerrainBlock(i * (levelWidth / NUM_MOVING_OBJS) + 17, 59, 60, 60));
+        }
+        grid = new TerrainGrid(blocks);
+    }
+    
+    private static int test(GameObj obj, TerrainBlock block) {
+        CollisionDirection direction = obj.getCollisionDirection(block);
+        if (obj.isColliding(block)) {
+            return direction.ordinal() + 1;
+        } else if (obj.isTouching(block)) {
+            return direction.ordinal() + 5;
+        }
+        return 0;
+    }
+    
+    @Override
+    public void run(Blackhole bh) {
+        int hits = 0;
+        for (GameObj obj : objs) {
+            if (useGrid) {
+                grid.query(obj, nearby);
+                for (int i = 0; i < nearby.size(); i++) {
+                    hits += test(obj, grid.getBlock(nearby.get(i)));
+                }
+            } else {
+                for (TerrainBlock block : blocks) {
+                    hits += test(obj, block);
+                }
+            }
+        }
+        bh.consume(hits);
+    }
+}
@@ -0,0 +1,30 @@
+import org.openjdk.jmh.infra.Blackhole;
+
+import dkc.bench.Workload;
+
+/**
+ * CheckCollisionsWorkload.java
+ * One GameWorld.checkCollisions() pass on a generated level, without moving anything.
+ * The counted variant has CollisionStats count every test.
+ * @author Jack Harkins
+ *
+ */
+public class CheckCollisionsWorkload implements Workload {
+    
+    private GameWorld world;
+    
+    @Override
+    public void setUp(String variant, int size) throws Exception {
+        CollisionStats.get().setEnabled(variant.equals("counted"));
+        world = LevelGenerator.load(size);
+        for (int i = 0; i < 100; i++) {
+            world.tick();
+        }
+    }
+    
+    @Override
+    public void run(Blackhole bh) {
+        world.checkCollisions();
+        bh.consume(world.getPlayer().canJump());
+    }
+}
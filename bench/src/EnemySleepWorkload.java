@@ -0,0 +1,34 @@
+import org.openjdk.jmh.infra.Blackhole;
+
+import dkc.bench.Workload;
+
+/**
+ * EnemySleepWorkload.java
+ * One GameWorld.tick() on a generated level with the whole level in play. Variant
+ * "awake" keeps every enemy awake; "asleep" puts enemies more than a screen away from
+ * the player to sleep.
+ * @author Jack Harkins
+ *
+ */
+public class EnemySleepWorkload implements Workload {
+    
+    private GameWorld world;
+    
+    @Override
+    public void setUp(String variant, int size) throws Exception {
+        world = LevelGenerator.load(size);
+        if (variant.equals("asleep")) {
+            world.setSleepDistance(800);
+        }
+        // let everything land before measuring
+        for (int i = 0; i < 100; i++) {
+            world.tick();
+        }
+    }
+    
+    @Override
+    public void run(Blackhole bh) {
+        world.tick();
+        bh.consume(world.getActiveEnemyCount());
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * LevelGenerator.java
+ * Writes synthetic levels of a given size in the text level format for benchmarks.
+ * 
+ * The level is a long floor of sprite-sized blocks, split into pens by walls so that
+ * enemies patrol back and forth forever instead of walking off the map, with a row of
+ * bananas floating out of reach above. The player stands alone in the first pen, so
+ * repeatedly ticking the level does the same amount of work every tick.
+ * @author Jack Harkins
+ *
+ */
+public class LevelGenerator {
+    
+    public static final int BLOCK_SIZE = 60;
+    
+    // floor blocks between walls
+    private static final int PEN_WIDTH = 20;
+    
+    /**
+     * Writes a level to a temporary file that is deleted when the JVM exits.
+     * @param numBlocks number of terrain blocks; there is one enemy and one banana for
+     * every ten blocks
+     * @return path of the level file
+     * @throws IOException upon an error in writing
+     */
+    public static String write(int numBlocks) throws IOException {
+        File file = File.createTempFile("dkcLevel" + numBlocks + "-", ".txt");
+        file.deleteOnExit();
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        try {
+            write(out, numBlocks);
+        } finally {
+            out.close();
+        }
+        return file.getPath();
+    }
+    
+    private static void write(PrintWriter out, int numBlocks) {
+        out.println("; synthetic level with " + numBlocks + " blocks");
+        out.println("!Player");
+        out.println(BLOCK_SIZE + "," + BLOCK_SIZE + ",dk.png,~");
+        
+        // every PEN_WIDTH-th block is a wall on top of the floor
+        int numFloor = numBlocks - numBlocks / (PEN_WIDTH + 1);
+        out.println("!TerrainBlock");
+        int written = 0;
+        for (int i = 0; i < numFloor && written < numBlocks; i++) {
+            out.println(i * BLOCK_SIZE + ",0," + BLOCK_SIZE + "," + BLOCK_SIZE + ",~");
+            written++;
+            if (i % PEN_WIDTH == 0 && written < numBlocks) {
+                out.println(i * BLOCK_SIZE + "," + BLOCK_SIZE + "," + BLOCK_SIZE + ","
+                        + 2 * BLOCK_SIZE + ",~");
+                written++;
+            }
+        }
+        
+        out.println("!Enemy");
+        for (int i = 0; i < numBlocks / 10; i++) {
+            int pen = 1 + i % Math.max(numFloor / PEN_WIDTH - 1, 1);
+            int offset = 2 + (i / Math.max(numFloor / PEN_WIDTH - 1, 1)) % (PEN_WIDTH - 3);
+            out.println((pen * PEN_WIDTH + offset) * BLOCK_SIZE + "," + BLOCK_SIZE
+                    + ",diddy,~");
+        }
+        
+        out.println("!PowerUp");
+        for (int i = 0; i < numBlocks / 10; i++) {
+            out.println(i * 10 * BLOCK_SIZE + ",500,banana,~");
+        }
+    }
+    
+    /**
+     * @param numBlocks number of terrain blocks
+     * @return a world with a freshly generated level loaded
+     * @throws IOException upon an error in writing the level
+     */
+    public static GameWorld load(int numBlocks) throws IOException {
+        return load(numBlocks, GameWorld.WHOLE_LEVEL);
+    }
+    
+    /**
+     * @param numBlocks number of terrain blocks
+     * @param activeWindow the world's active window, see GameWorld.setActiveWindow()
+     * @return a world with a freshly generated level loaded
+     * @throws IOException upon an error in writing the level
+     */
+    public static GameWorld load(int numBlocks, int activeWindow) throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.setActiveWindow(activeWindow);
+        world.load(write(numBlocks), 5);
+        return world;
+    }
+}
@@ -0,0 +1,104 @@
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import dkc.bench.Workload;
+
+/**
+ * LevelParserWorkload.java
+ * Reads an entire generated level file. Variant "tokens" splits it into Strings with
+ * LevelParser.readNextTokens(), "records" passes its objects to a LevelParser.Loader that
+ * does nothing with them, and "load" loads it into a GameWorld. "binaryRecords" and
+ * "binaryLoad" do the same with the level converted to the binary format. "respawn"
+ * restarts the level the way GameCourt does after a death, from a LevelCache that
+ * already holds it.
+ * @author Jack Harkins
+ *
+ */
+public class LevelParserWorkload implements Workload {
+    
+    private String filename;
+    private String variant;
+    private Blackhole bh;
+    private LevelCache levelCache;
+    
+    private final LevelParser.Loader loader = new LevelParser.Loader() {
+        @Override
+        public void addTerrainBlock(int px, int py, int width, int height) {
+            bh.consume(px + py + width + height);
+        }
+        
+        @Override
+        public void addPlayer(int px, int py, String imageName) {
+            bh.consume(imageName);
+        }
+        
+        @Override
+        public void addEnemy(int px, int py, Enemy.EnemyType type) {
+            bh.consume(px + py);
+        }
+        
+        @Override
+        public void addPowerUp(int px, int py, PowerUp.PowerUpType type) {
+            bh.consume(px + py);
+        }
+        
+        @Override
+        public void addCheckpoint(int px, int py) {
+            bh.consume(px + py);
+        }
+    };
+    
+    @Override
+    public void setUp(String variant, int size) throws Exception {
+        filename = LevelGenerator.write(size);
+        this.variant = variant;
+        if (variant.startsWith("binary")) {
+            File binary = File.createTempFile("dkcLevel" + size + "-", ".dkcl");
+            binary.deleteOnExit();
+            LevelConverter.convert(filename, binary.getPath());
+            filename = binary.getPath();
+        }
+        if (variant.equals("respawn")) {
+            levelCache = new LevelCache(1);
+            levelCache.get(filename);
+        }
+    }
+    
+    @Override
+    public void run(Blackhole bh) {
+        this.bh = bh;
+        try {
+            if (variant.equals("load") || variant.equals("binaryLoad")) {
+                GameWorld world = new GameWorld(800);
+                world.load(filename, 5);
+                bh.consume(world);
+                return;
+            }
+            if (variant.equals("respawn")) {
+                GameWorld world = new GameWorld(800);
+                world.load(levelCache.get(filename), 5);
+                bh.consume(world);
+                return;
+            }
+            if (variant.equals("binaryRecords")) {
+                BinaryLevelParser parser = new BinaryLevelParser(filename);
+                parser.parse(loader);
+                parser.close();
+                return;
+            }
+            LevelParser parser = new LevelParser(filename);
+            if (variant.equals("records")) {
+                parser.parse(loader);
+            } else {
+                while (parser.hasNext()) {
+                    bh.consume(parser.readNextTokens());
+                }
+            }
+            parser.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
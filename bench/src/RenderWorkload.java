@@ -0,0 +1,58 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import dkc.bench.Workload;
+
+/**
+ * RenderWorkload.java
+ * Draws one frame of a generated level into an off-screen image, the way GameCourt does.
+ * Variant "culled" uses WorldRenderer drawing terrain block by block, "tiles" uses it with
+ * a TerrainTileCache, and "all" draws every object, as GameCourt did before it had a
+ * renderer.
+ * @author Jack Harkins
+ *
+ */
+public class RenderWorkload implements Workload {
+    
+    private static final int VIEW_WIDTH = 800;
+    private static final int VIEW_HEIGHT = 600;
+    
+    private GameWorld world;
+    private WorldRenderer renderer;
+    private boolean culled;
+    private BufferedImage canvas;
+    private Graphics2D g;
+    
+    @Override
+    public void setUp(String variant, int size) throws Exception {
+        world = LevelGenerator.load(size);
+        world.loadSprites();
+        renderer = new WorldRenderer(VIEW_WIDTH, VIEW_HEIGHT);
+        culled = !variant.equals("all");
+        renderer.setTerrainCaching(variant.equals("tiles"));
+        canvas = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = canvas.createGraphics();
+    }
+    
+    @Override
+    public void run(Blackhole bh) {
+        if (culled) {
+            renderer.draw(g, world, 0.5);
+        } else {
+            int camera = world.getCameraOffsetX();
+            for (TerrainBlock block : world.getTerrainBlocks()) {
+                block.drawInterpolated(g, camera, 0.5);
+            }
+            for (Enemy enemy : world.getEnemies()) {
+                enemy.drawInterpolated(g, camera, 0.5);
+            }
+            for (PowerUp powerUp : world.getPowerUps()) {
+                powerUp.drawInterpolated(g, camera, 0.5);
+            }
+            world.getPlayer().drawInterpolated(g, camera, 0.5);
+        }
+        bh.consume(canvas);
+    }
+}
@@ -0,0 +1,55 @@
+import java.io.IOException;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import dkc.bench.Workload;
+
+/**
+ * ReplayWorkload.java
+ * One tick of playing back an InputRecording, e.g. one saved with "java Game --record",
+ * so that a real play session can be used as a benchmark. When the recording runs out,
+ * the level is loaded again and the recording starts over. The variant is the recording
+ * file; if it is empty, a run to the right through a generated level of the given size is
+ * recorded and used instead.
+ * @author Jack Harkins
+ *
+ */
+public class ReplayWorkload implements Workload {
+    
+    private static final int GENERATED_TICKS = 3000;
+    
+    private InputRecording recording;
+    private GameWorld world;
+    
+    @Override
+    public void setUp(String variant, int size) throws Exception {
+        if (!variant.isEmpty()) {
+            recording = InputRecording.read(variant);
+        } else {
+            String level = LevelGenerator.write(size);
+            GameWorld generated = new GameWorld(800);
+            generated.load(level, 5);
+            recording = new InputRecording(level, 5, generated);
+            for (int tick = 0; tick < GENERATED_TICKS; tick++) {
+                int input = GameWorld.INPUT_RIGHT | (tick % 67 == 0 ? GameWorld.INPUT_JUMP : 0);
+                recording.record(input);
+                generated.step(input);
+            }
+            recording.finish(generated);
+        }
+        world = recording.createWorld();
+    }
+    
+    @Override
+    public void run(Blackhole bh) {
+        if (world.getTickCount() == recording.getTickCount()) {
+            try {
+                world = recording.createWorld();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        world.step(recording.getScript().getInput(world.getTickCount()));
+        bh.consume(world.getPlayer().getPx());
+    }
+}
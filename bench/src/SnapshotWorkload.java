@@ -0,0 +1,43 @@
+import org.openjdk.jmh.infra.Blackhole;
+
+import dkc.bench.Workload;
+
+/**
+ * SnapshotWorkload.java
+ * One WorldSnapshot of a generated level with the whole level in play. Variant "save"
+ * takes a snapshot; "restore" puts the world back the way one snapshot left it;
+ * "respawn" brings the player back at the start of the level with GameWorld.respawn().
+ * @author Jack Harkins
+ *
+ */
+public class SnapshotWorkload implements Workload {
+    
+    private GameWorld world;
+    private WorldSnapshot snapshot;
+    private String variant;
+    
+    @Override
+    public void setUp(String variant, int size) throws Exception {
+        world = LevelGenerator.load(size);
+        // let everything land before measuring
+        for (int i = 0; i < 100; i++) {
+            world.tick();
+        }
+        snapshot = new WorldSnapshot();
+        world.saveSnapshot(snapshot);
+        this.variant = variant;
+        world.setRespawnAtCheckpoints(variant.equals("respawn"));
+    }
+    
+    @Override
+    public void run(Blackhole bh) {
+        if (variant.equals("restore")) {
+            world.restoreSnapshot(snapshot);
+        } else if (variant.equals("respawn")) {
+            world.respawn();
+        } else {
+            world.saveSnapshot(snapshot);
+        }
+        bh.consume(snapshot.getSize());
+    }
+}
@@ -0,0 +1,45 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import dkc.bench.Workload;
+
+/**
+ * SpriteLoadWorkload.java
+ * Creates a level's worth of bananas with an empty sprite cache, looks up each one's
+ * sprite the way GameWorld.loadSprites() does, and draws it once.
+ * @author Jack Harkins
+ *
+ */
+public class SpriteLoadWorkload implements Workload {
+    
+    private int numPowerUps;
+    private BufferedImage canvas;
+    
+    @Override
+    public void setUp(String variant, int size) throws Exception {
+        numPowerUps = size;
+        canvas = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+    }
+    
+    @Override
+    public void run(Blackhole bh) {
+        SpriteCache.clear();
+        EntityStore store = new EntityStore(numPowerUps);
+        Graphics2D g = canvas.createGraphics();
+        for (int i = 0; i < numPowerUps; i++) {
+            PowerUp banana = new PowerUp(store, (i % 25) * 30, (i / 25) % 20 * 30,
+                    PowerUp.PowerUpType.BANANA);
+            try {
+                banana.loadSprite();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            banana.draw(g, 0);
+            bh.consume(banana);
+        }
+        g.dispose();
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import dkc.bench.Workload;
+
+/**
+ * SweepWorkload.java
+ * Moves a crowd of enemies along a flat strip one tick, then finds and resolves their
+ * collisions with each other, either by testing every pair ("brute") or with a
+ * SweepAndPrune ("sweep"). Enemies bounce off the ends of the strip, which is sized so
+ * that there is roughly one enemy for every three sprite widths.
+ * @author Jack Harkins
+ *
+ */
+public class SweepWorkload implements Workload {
+    
+    private EntityStore store;
+    private List<Enemy> enemies;
+    private SweepAndPrune sweep;
+    private boolean useSweep;
+    private int stripWidth;
+    
+    @Override
+    public void setUp(String variant, int size) {
+        useSweep = variant.equals("sweep");
+        stripWidth = size * 180;
+        store = new EntityStore(size);
+        enemies = new ArrayList<>(size);
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            Enemy enemy = new Enemy(store, random.nextInt(stripWidth - 60), 0,
+                    Enemy.EnemyType.DIDDY);
+            if (random.nextBoolean()) {
+                enemy.setVx(-enemy.getVx());
+            }
+            enemies.add(enemy);
+        }
+        sweep = new SweepAndPrune();
+    }
+    
+    @Override
+    public void run(Blackhole bh) {
+        store.integrate(0);
+        for (int i = 0; i < enemies.size(); i++) {
+            Enemy enemy = enemies.get(i);
+            if (enemy.getPx() < 0 || enemy.getPx() + enemy.getWidth() > stripWidth) {
+                enemy.setVx(-enemy.getVx());
+            }
+        }
+        if (useSweep) {
+            sweep.update(enemies);
+            sweep.collide();
+        } else {
+            for (int i = 0; i < enemies.size(); i++) {
+                Enemy a = enemies.get(i);
+                for (int j = i + 1; j < enemies.size(); j++) {
+                    Enemy b = enemies.get(j);
+                    if (a.isColliding(b)) {
+                        a.collisionAction(b, a.getCollisionDirection(b));
+                        b.collisionAction(a, b.getCollisionDirection(a));
+                    } else if (a.isTouching(b)) {
+                        a.touchAction(b, a.getCollisionDirection(b));
+                        b.touchAction(a, b.getCollisionDirection(a));
+                    }
+                }
+            }
+        }
+        bh.consume(enemies.get(0).getPx());
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.concurrent.ForkJoinPool;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import dkc.bench.Workload;
+
+/**
+ * TickWorkload.java
+ * One GameWorld.tick() on a generated level. Variant "whole" keeps the whole level in
+ * play; "streamed" only the part within a screen of the view; "parallel" keeps the whole
+ * level in play and runs the enemy phase on the common ForkJoinPool.
+ * @author Jack Harkins
+ *
+ */
+public class TickWorkload implements Workload {
+    
+    private GameWorld world;
+    
+    @Override
+    public void setUp(String variant, int size) throws Exception {
+        world = LevelGenerator.load(size,
+                variant.equals("streamed") ? 800 : GameWorld.WHOLE_LEVEL);
+        if (variant.equals("parallel")) {
+            world.setEnemyPool(ForkJoinPool.commonPool());
+        }
+        // let everything land before measuring
+        for (int i = 0; i < 100; i++) {
+            world.tick();
+        }
+    }
+    
+    @Override
+    public void run(Blackhole bh) {
+        world.tick();
+        bh.consume(world.getPlayer().getPy());
+    }
+}
@@ -0,0 +1,41 @@
+package dkc.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * BoxPairBenchmark.java
+ * Pairs per second for GameObj.getCollisionDirection(), isColliding() and isTouching(),
+ * and for the trigonometric getCollisionDirection() it replaced.
+ * @author Jack Harkins
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(1024)
+public class BoxPairBenchmark {
+    
+    @Param({"direction", "trigDirection", "colliding", "touching"})
+    public String variant;
+    
+    // pairwise tests don't depend on the level
+    public int size;
+
+    private Workload workload;
+    
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workloads.create("BoxPairWorkload", variant, size);
+    }
+    
+    @Benchmark
+    public void run(Blackhole bh) {
+        workload.run(bh);
+    }
+}
@@ -0,0 +1,40 @@
+package dkc.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * BroadPhaseBenchmark.java
+ * Terrain collision passes per second for 200 moving objects, scanning every block
+ * versus querying a TerrainGrid.
+ * @author Jack Harkins
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadPhaseBenchmark {
+    
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"brute", "grid"})
+    public String variant;
+
+    private Workload workload;
+    
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workloads.create("BroadPhaseWorkload", variant, size);
+    }
+    
+    @Benchmark
+    public void run(Blackhole bh) {
+        workload.run(bh);
+    }
+}
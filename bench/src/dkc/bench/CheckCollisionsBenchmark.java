@@ -0,0 +1,40 @@
+package dkc.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * CheckCollisionsBenchmark.java
+ * Passes per second of GameWorld.checkCollisions() by level size, with CollisionStats
+ * counting off (plain) or on (counted).
+ * @author Jack Harkins
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckCollisionsBenchmark {
+    
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"plain", "counted"})
+    public String variant;
+
+    private Workload workload;
+    
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workloads.create("CheckCollisionsWorkload", variant, size);
+    }
+    
+    @Benchmark
+    public void run(Blackhole bh) {
+        workload.run(bh);
+    }
+}
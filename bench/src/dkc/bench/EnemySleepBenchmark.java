@@ -0,0 +1,41 @@
+package dkc.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * EnemySleepBenchmark.java
+ * Ticks per second of GameWorld.tick() with every enemy awake or only the ones near the
+ * player (see EnemySleepWorkload). There is one enemy for every ten blocks, so the
+ * largest level has 5000.
+ * @author Jack Harkins
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnemySleepBenchmark {
+    
+    @Param({"10000", "50000"})
+    public int size;
+
+    @Param({"awake", "asleep"})
+    public String variant;
+
+    private Workload workload;
+    
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workloads.create("EnemySleepWorkload", variant, size);
+    }
+    
+    @Benchmark
+    public void run(Blackhole bh) {
+        workload.run(bh);
+    }
+}
@@ -0,0 +1,40 @@
+package dkc.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * LevelParserBenchmark.java
+ * Whole level files per second read by LevelParser, by level size and by how much is
+ * done with them (see LevelParserWorkload).
+ * @author Jack Harkins
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelParserBenchmark {
+    
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"tokens", "records", "load", "binaryRecords", "binaryLoad", "respawn"})
+    public String variant;
+
+    private Workload workload;
+    
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workloads.create("LevelParserWorkload", variant, size);
+    }
+    
+    @Benchmark
+    public void run(Blackhole bh) {
+        workload.run(bh);
+    }
+}
@@ -0,0 +1,29 @@
+package dkc.bench;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Workload.java
+ * The game's classes live in the default package, which JMH refuses to generate benchmark
+ * code for, and which classes in a named package cannot refer to. Each benchmark in this
+ * package therefore drives a Workload implemented in the default package next to the game
+ * classes, created reflectively by Workloads. Every benchmark only ever sees one Workload
+ * class, so the JIT inlines the interface call.
+ * @author Jack Harkins
+ *
+ */
+public interface Workload {
+    
+    /**
+     * Builds whatever the workload operates on. Not measured.
+     * @param variant which operation to run, for workloads that measure several
+     * @param size level size, in terrain blocks
+     */
+    void setUp(String variant, int size) throws Exception;
+    
+    /**
+     * Performs one measured operation.
+     * @param bh sink for results, so the JIT cannot discard the work
+     */
+    void run(Blackhole bh);
+}
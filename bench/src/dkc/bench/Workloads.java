@@ -0,0 +1,20 @@
+package dkc.bench;
+
+/**
+ * Workloads.java
+ * Creates Workloads by class name, since they live in the default package.
+ * @author Jack Harkins
+ *
+ */
+public final class Workloads {
+    
+    private Workloads() {
+    }
+    
+    public static Workload create(String className, String variant, int size) throws Exception {
+        Workload workload = (Workload) Class.forName(className).getDeclaredConstructor()
+                .newInstance();
+        workload.setUp(variant, size);
+        return workload;
+    }
+}
@@ -0,0 +1,92 @@
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AllocationTest {
+    
+    private static final int WARMUP_TICKS = 20000;
+    private static final int MEASURED_TICKS = 1000;
+    
+    private com.sun.management.ThreadMXBean threads;
+    private GameWorld world;
+    
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        
+        world = new GameWorld(800);
+        world.load(LevelFixture.runway(WARMUP_TICKS + MEASURED_TICKS).write(), 5);
+    }
+    
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    
+    // bytes allocated by reading the counter twice, subtracted from every measurement
+    private long measurementOverhead() {
+        long before = allocatedBytes();
+        long after = allocatedBytes();
+        return after - before;
+    }
+    
+    // Plays long enough for everything a tick does to have been compiled, with the
+    // player still running, jumping, picking up bananas and stomping enemies
+    private void warmUp() {
+        for (int t = 0; t < WARMUP_TICKS; t++) {
+            world.step(InputFixture.runRightJumping(t));
+        }
+        assertTrue(world.getSummary(), world.getPlayer().isAlive());
+    }
+    
+    @Test
+    public void testSteadyStateTickDoesNotAllocate() {
+        warmUp();
+        int bananas = world.getPlayer().getNumBananas();
+        int enemies = world.getRemainingEnemies();
+        
+        long overhead = measurementOverhead();
+        long before = allocatedBytes();
+        for (int t = WARMUP_TICKS; t < WARMUP_TICKS + MEASURED_TICKS; t++) {
+            world.step(InputFixture.runRightJumping(t));
+        }
+        long after = allocatedBytes();
+        assertEquals("bytes allocated in " + MEASURED_TICKS + " ticks", 0,
+                after - before - overhead);
+        // the measured ticks covered picking things up and stomping enemies
+        assertTrue(world.getSummary(), world.getPlayer().isAlive());
+        assertTrue(world.getSummary(), world.getPlayer().getNumBananas() != bananas);
+        assertTrue(world.getSummary(), world.getRemainingEnemies() < enemies);
+    }
+    
+    @Test
+    public void testRemovingObjectsDoesNotAllocate() {
+        warmUp();
+        int numEnemies = world.getEnemies().size();
+        int numPowerUps = world.getPowerUps().size();
+        assertTrue("level has enemies left to remove", numEnemies > 1);
+        assertTrue("level has power ups left to remove", numPowerUps > 1);
+        
+        // every other object, so that the survivors have to be moved down
+        for (int i = 0; i < numEnemies; i += 2) {
+            world.getEnemies().get(i).kill();
+        }
+        for (int i = 0; i < numPowerUps; i += 2) {
+            world.getPowerUps().get(i).claim();
+        }
+        
+        long overhead = measurementOverhead();
+        long before = allocatedBytes();
+        world.tick();
+        long after = allocatedBytes();
+        assertEquals("bytes allocated removing objects", 0, after - before - overhead);
+        assertEquals(numEnemies / 2, world.getEnemies().size());
+        assertEquals(numPowerUps / 2, world.getPowerUps().size());
+    }
+}
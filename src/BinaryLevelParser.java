@@ -0,0 +1,224 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BinaryLevelParser.java
+ * Reads levels in the binary format written by BinaryLevelWriter, which loads several
+ * times faster than the text format since there is nothing to tokenize. All values are
+ * big-endian ints:
+ * 
+ * magic ("DKCL"), version, number of sections, then for each section:
+ * section type, number of records, length of the records in bytes, and the records.
+ * 
+ * TerrainBlock records are px, py, width, height. Enemy and PowerUp records are px, py
+ * and the ordinal of the object's EnemyType or PowerUpType. Player records are px, py,
+ * the length of the image name in bytes, and the UTF-8 image name padded with zeros to a
+ * multiple of four bytes. Checkpoint records are px, py. Sections of unknown types are
+ * skipped, so levels with checkpoints can still be read by parsers that predate them.
+ * @author Jack Harkins
+ *
+ */
+public class BinaryLevelParser {
+    
+    public static final int MAGIC = 0x444B434C; // "DKCL"
+    public static final int VERSION = 1;
+    
+    // Section types
+    public static final int TERRAIN_BLOCKS = 1;
+    public static final int PLAYERS = 2;
+    public static final int ENEMIES = 3;
+    public static final int POWER_UPS = 4;
+    public static final int CHECKPOINTS = 5;
+    
+    private static final int HEADER_BYTES = 12;
+    
+    private static final Enemy.EnemyType[] ENEMY_TYPES = Enemy.EnemyType.values();
+    private static final PowerUp.PowerUpType[] POWER_UP_TYPES = PowerUp.PowerUpType.values();
+    
+    private final String filename;
+    private final ByteBuffer data;
+    private final int numSections;
+    
+    /**
+     * Reads a binary level and checks its header.
+     * @param filename the name of the file to be read
+     * @throws IOException if the file does not exist, can't be read, or isn't a binary
+     * level of a version this parser understands
+     */
+    public BinaryLevelParser(String filename) throws IOException {
+        this.filename = filename;
+        FileInputStream in = new FileInputStream(filename);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(filename + " is too large to be a level");
+            }
+            data = ByteBuffer.allocate((int) size);
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // keep reading until the buffer is full or the file ends
+            }
+            data.flip();
+        } finally {
+            in.close();
+        }
+        if (data.remaining() < HEADER_BYTES || data.getInt() != MAGIC) {
+            throw new IOException(filename + " is not a binary level");
+        }
+        int version = data.getInt();
+        if (version != VERSION) {
+            throw new IOException(filename + " is binary level version " + version
+                    + "; only version " + VERSION + " is supported");
+        }
+        numSections = data.getInt();
+    }
+    
+    /**
+     * 
+     * @param filename a level file
+     * @return does the file start like a binary level? False if it can't be read.
+     */
+    public static boolean isBinaryLevel(String filename) {
+        try {
+            FileInputStream in = new FileInputStream(filename);
+            try {
+                ByteBuffer magic = ByteBuffer.allocate(4);
+                while (magic.hasRemaining() && in.getChannel().read(magic) >= 0) {
+                    // keep reading until we have four bytes or the file ends
+                }
+                return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * 
+     * @return an upper bound on the number of game objects in the file, for sizing
+     * collections before parsing it
+     */
+    public int getMaxObjectCount() {
+        // every record takes at least three ints
+        return data.remaining() / 12 + 1;
+    }
+    
+    /**
+     * Passes every game object in the file to the loader, section by section.
+     * @throws IOException if the file is truncated or corrupt, or contains an unknown
+     * object type
+     */
+    public void parse(LevelParser.Loader loader) throws IOException {
+        try {
+            for (int s = 0; s < numSections; s++) {
+                int type = data.getInt();
+                int count = data.getInt();
+                int length = data.getInt();
+                if (count < 0 || length < 0 || length > data.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                ByteBuffer section = data.slice();
+                section.limit(length);
+                data.position(data.position() + length);
+                IntBuffer ints = section.asIntBuffer();
+                switch (type) {
+                case TERRAIN_BLOCKS:
+                    parseTerrainBlocks(ints, count, loader);
+                    break;
+                case PLAYERS:
+                    parsePlayers(section, ints, count, loader);
+                    break;
+                case ENEMIES:
+                    parseEnemies(ints, count, loader);
+                    break;
+                case POWER_UPS:
+                    parsePowerUps(ints, count, loader);
+                    break;
+                case CHECKPOINTS:
+                    parseCheckpoints(ints, count, loader);
+                    break;
+                default:
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException(filename + " is truncated or corrupt");
+        }
+    }
+    
+    // Copies a section's records out of the buffer in one go
+    private static int[] bulkGet(IntBuffer ints, int count, int intsPerRecord) {
+        if (count > ints.remaining() / intsPerRecord) {
+            throw new BufferUnderflowException();
+        }
+        int[] records = new int[count * intsPerRecord];
+        ints.get(records);
+        return records;
+    }
+    
+    private static void parseTerrainBlocks(IntBuffer ints, int count, LevelParser.Loader loader) {
+        int[] r = bulkGet(ints, count, 4);
+        for (int i = 0; i < r.length; i += 4) {
+            loader.addTerrainBlock(r[i], r[i + 1], r[i + 2], r[i + 3]);
+        }
+    }
+    
+    private static void parsePlayers(ByteBuffer section, IntBuffer ints, int count,
+            LevelParser.Loader loader) {
+        for (int i = 0; i < count; i++) {
+            int px = ints.get();
+            int py = ints.get();
+            int nameLength = ints.get();
+            if (nameLength < 0 || nameLength > 4 * ints.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            byte[] name = new byte[nameLength];
+            section.position(4 * ints.position());
+            section.get(name);
+            ints.position(ints.position() + (nameLength + 3) / 4);
+            loader.addPlayer(px, py, new String(name, StandardCharsets.UTF_8));
+        }
+    }
+    
+    private void parseEnemies(IntBuffer ints, int count, LevelParser.Loader loader)
+            throws IOException {
+        int[] r = bulkGet(ints, count, 3);
+        for (int i = 0; i < r.length; i += 3) {
+            if (r[i + 2] < 0 || r[i + 2] >= ENEMY_TYPES.length) {
+                throw new IOException(filename + " has unknown enemy type " + r[i + 2]);
+            }
+            loader.addEnemy(r[i], r[i + 1], ENEMY_TYPES[r[i + 2]]);
+        }
+    }
+    
+    private void parsePowerUps(IntBuffer ints, int count, LevelParser.Loader loader)
+            throws IOException {
+        int[] r = bulkGet(ints, count, 3);
+        for (int i = 0; i < r.length; i += 3) {
+            if (r[i + 2] < 0 || r[i + 2] >= POWER_UP_TYPES.length) {
+                throw new IOException(filename + " has unknown power up type " + r[i + 2]);
+            }
+            loader.addPowerUp(r[i], r[i + 1], POWER_UP_TYPES[r[i + 2]]);
+        }
+    }
+    
+    private static void parseCheckpoints(IntBuffer ints, int count, LevelParser.Loader loader) {
+        int[] r = bulkGet(ints, count, 2);
+        for (int i = 0; i < r.length; i += 2) {
+            loader.addCheckpoint(r[i], r[i + 1]);
+        }
+    }
+    
+    /**
+     * Closes the parser and frees system resources associated with it
+     */
+    public void close() {
+        // the file was closed once it had been read
+    }
+}
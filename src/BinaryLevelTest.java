@@ -0,0 +1,189 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BinaryLevelTest {
+    
+    // Records what a Loader is given, one line per object
+    private static class RecordingLoader implements LevelParser.Loader {
+        final List<String> objects = new ArrayList<>();
+        
+        @Override
+        public void addTerrainBlock(int px, int py, int width, int height) {
+            objects.add("TerrainBlock " + px + " " + py + " " + width + " " + height);
+        }
+        
+        @Override
+        public void addPlayer(int px, int py, String imageName) {
+            objects.add("Player " + px + " " + py + " " + imageName);
+        }
+        
+        @Override
+        public void addEnemy(int px, int py, Enemy.EnemyType type) {
+            objects.add("Enemy " + px + " " + py + " " + type);
+        }
+        
+        @Override
+        public void addPowerUp(int px, int py, PowerUp.PowerUpType type) {
+            objects.add("PowerUp " + px + " " + py + " " + type);
+        }
+        
+        @Override
+        public void addCheckpoint(int px, int py) {
+            objects.add("Checkpoint " + px + " " + py);
+        }
+    }
+    
+    private static File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("binaryLevelTest", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+    
+    private static List<String> parseText(String filename) throws IOException {
+        RecordingLoader loader = new RecordingLoader();
+        LevelParser parser = new LevelParser(filename);
+        parser.parse(loader);
+        parser.close();
+        return loader.objects;
+    }
+    
+    private static List<String> parseBinary(String filename) throws IOException {
+        RecordingLoader loader = new RecordingLoader();
+        BinaryLevelParser parser = new BinaryLevelParser(filename);
+        parser.parse(loader);
+        parser.close();
+        return loader.objects;
+    }
+    
+    // Objects of each type in order, which is all the binary format preserves
+    private static List<String> byType(List<String> objects) {
+        List<String> sorted = new ArrayList<>();
+        for (String type : Arrays.asList("Player", "TerrainBlock", "Enemy", "PowerUp",
+                "Checkpoint")) {
+            for (String obj : objects) {
+                if (obj.startsWith(type + " ")) {
+                    sorted.add(obj);
+                }
+            }
+        }
+        return sorted;
+    }
+    
+    private static String convert(String textFilename) throws IOException {
+        File binary = tempFile(".dkcl");
+        LevelConverter.convert(textFilename, binary.getPath());
+        return binary.getPath();
+    }
+    
+    @Test
+    public void testSampleLevelRoundTrip() throws IOException {
+        String binary = convert("sampleDKCLevel.txt");
+        assertTrue(BinaryLevelParser.isBinaryLevel(binary));
+        assertFalse(BinaryLevelParser.isBinaryLevel("sampleDKCLevel.txt"));
+        assertEquals(byType(parseText("sampleDKCLevel.txt")), parseBinary(binary));
+    }
+    
+    @Test
+    public void testEveryTypeRoundTrips() throws IOException {
+        BinaryLevelWriter writer = new BinaryLevelWriter();
+        RecordingLoader expected = new RecordingLoader();
+        for (LevelParser.Loader loader : Arrays.asList(writer, expected)) {
+            // image names of every length mod 4, and one that isn't ASCII
+            for (String name : Arrays.asList("", "a", "ab", "abc", "dk.png", "dïddy.png")) {
+                loader.addPlayer(-1, Integer.MAX_VALUE, name);
+            }
+            loader.addTerrainBlock(Integer.MIN_VALUE, 0, 60, 1);
+            for (Enemy.EnemyType type : Enemy.EnemyType.values()) {
+                loader.addEnemy(3, 4, type);
+            }
+            for (PowerUp.PowerUpType type : PowerUp.PowerUpType.values()) {
+                loader.addPowerUp(5, 6, type);
+            }
+            loader.addCheckpoint(7, 8);
+            loader.addCheckpoint(-9, Integer.MIN_VALUE);
+        }
+        File binary = tempFile(".dkcl");
+        writer.write(binary.getPath());
+        assertEquals(byType(expected.objects), parseBinary(binary.getPath()));
+    }
+    
+    @Test
+    public void testWorldsFromBothFormatsPlayTheSame() throws IOException {
+        String binary = convert("sampleDKCLevel.txt");
+        GameWorld fromText = new GameWorld(800);
+        fromText.load("sampleDKCLevel.txt", 5);
+        GameWorld fromBinary = new GameWorld(800);
+        fromBinary.load(binary, 5);
+        for (int tick = 0; tick < 2000; tick++) {
+            int input = (tick % 50 < 3) ? GameWorld.INPUT_RIGHT | GameWorld.INPUT_JUMP
+                    : GameWorld.INPUT_RIGHT;
+            fromText.step(input);
+            fromBinary.step(input);
+        }
+        assertEquals(fromText.getSummary(), fromBinary.getSummary());
+    }
+    
+    @Test
+    public void testLargeLevelRoundTrip() throws IOException {
+        File text = tempFile(".txt");
+        PrintWriter out = new PrintWriter(text, "UTF-8");
+        out.println("!Player");
+        out.println("60,60,dk.png,~");
+        out.println("!TerrainBlock");
+        for (int i = 0; i < 50000; i++) {
+            out.println(i * 60 + ",0,60,60,~");
+        }
+        out.println("!PowerUp");
+        for (int i = 0; i < 5000; i++) {
+            out.println(i * 600 + ",500,bananaBunch,~");
+        }
+        out.close();
+        assertEquals(byType(parseText(text.getPath())), parseBinary(convert(text.getPath())));
+    }
+    
+    @Test(expected = IOException.class)
+    public void testTextLevelIsRejected() throws IOException {
+        new BinaryLevelParser("sampleDKCLevel.txt");
+    }
+    
+    @Test
+    public void testUnsupportedVersionIsRejected() throws IOException {
+        String binary = convert("sampleDKCLevel.txt");
+        RandomAccessFile file = new RandomAccessFile(binary, "rw");
+        file.seek(4);
+        file.writeInt(BinaryLevelParser.VERSION + 1);
+        file.close();
+        try {
+            new BinaryLevelParser(binary);
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("version"));
+        }
+    }
+    
+    @Test
+    public void testTruncatedFileIsRejected() throws IOException {
+        String binary = convert("sampleDKCLevel.txt");
+        byte[] bytes = Files.readAllBytes(new File(binary).toPath());
+        File truncated = tempFile(".dkcl");
+        for (int length = 12; length < bytes.length; length += 37) {
+            Files.write(truncated.toPath(), Arrays.copyOf(bytes, length));
+            try {
+                parseBinary(truncated.getPath());
+                fail("expected IOException for " + length + " bytes");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("truncated"));
+            }
+        }
+    }
+}
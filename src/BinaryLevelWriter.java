@@ -0,0 +1,125 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * BinaryLevelWriter.java
+ * Collects game objects, e.g. from a LevelParser, and writes them out as a binary level
+ * (see BinaryLevelParser for the format). Objects of each type keep the order they were
+ * added in.
+ * @author Jack Harkins
+ *
+ */
+public class BinaryLevelWriter implements LevelParser.Loader {
+    
+    /**
+     * A growable array of ints holding one section's records
+     */
+    private static class Section {
+        private final int type;
+        private int[] values = new int[64];
+        private int size;
+        private int count;
+        
+        Section(int type) {
+            this.type = type;
+        }
+        
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+        
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(type);
+            out.writeInt(count);
+            out.writeInt(4 * size);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(values[i]);
+            }
+        }
+    }
+    
+    private final Section terrainBlocks = new Section(BinaryLevelParser.TERRAIN_BLOCKS);
+    private final Section players = new Section(BinaryLevelParser.PLAYERS);
+    private final Section enemies = new Section(BinaryLevelParser.ENEMIES);
+    private final Section powerUps = new Section(BinaryLevelParser.POWER_UPS);
+    private final Section checkpoints = new Section(BinaryLevelParser.CHECKPOINTS);
+    
+    @Override
+    public void addTerrainBlock(int px, int py, int width, int height) {
+        terrainBlocks.add(px);
+        terrainBlocks.add(py);
+        terrainBlocks.add(width);
+        terrainBlocks.add(height);
+        terrainBlocks.count++;
+    }
+    
+    @Override
+    public void addPlayer(int px, int py, String imageName) {
+        byte[] name = imageName.getBytes(StandardCharsets.UTF_8);
+        players.add(px);
+        players.add(py);
+        players.add(name.length);
+        // pack the name four bytes to an int, big-endian, padded with zeros
+        for (int i = 0; i < name.length; i += 4) {
+            int packed = 0;
+            for (int j = 0; j < 4; j++) {
+                int b = (i + j < name.length) ? name[i + j] & 0xff : 0;
+                packed = (packed << 8) | b;
+            }
+            players.add(packed);
+        }
+        players.count++;
+    }
+    
+    @Override
+    public void addEnemy(int px, int py, Enemy.EnemyType type) {
+        enemies.add(px);
+        enemies.add(py);
+        enemies.add(type.ordinal());
+        enemies.count++;
+    }
+    
+    @Override
+    public void addPowerUp(int px, int py, PowerUp.PowerUpType type) {
+        powerUps.add(px);
+        powerUps.add(py);
+        powerUps.add(type.ordinal());
+        powerUps.count++;
+    }
+    
+    @Override
+    public void addCheckpoint(int px, int py) {
+        checkpoints.add(px);
+        checkpoints.add(py);
+        checkpoints.count++;
+    }
+    
+    /**
+     * Writes every object added so far to a file, replacing its contents.
+     * @param filename the file to write
+     * @throws IOException upon an error in writing
+     */
+    public void write(String filename) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(filename)));
+        try {
+            out.writeInt(BinaryLevelParser.MAGIC);
+            out.writeInt(BinaryLevelParser.VERSION);
+            out.writeInt(5);
+            players.write(out);
+            terrainBlocks.write(out);
+            enemies.write(out);
+            powerUps.write(out);
+            checkpoints.write(out);
+        } finally {
+            out.close();
+        }
+    }
+}
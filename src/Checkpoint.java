@@ -0,0 +1,72 @@
+import java.awt.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Checkpoint.java
+ * A post partway through a level. The first time the player touches it, the checkpoint
+ * is reached and GameWorld saves the state of the world, so that a player who dies later
+ * comes back here rather than at the start of the level. Checkpoints never move and are
+ * always in play, even in a streamed level.
+ * @author Jack Harkins
+ *
+ */
+public class Checkpoint extends GameObj {
+    
+    // wide enough for the flag, so that touching the flag reaches the checkpoint too
+    public static final int WIDTH = 60;
+    public static final int HEIGHT = 120;
+    private static final int POST_WIDTH = 20;
+    private static final int FLAG_HEIGHT = 30;
+    
+    private boolean isReached;
+    
+    public Checkpoint(int px, int py) {
+        this(new EntityStore(1), px, py);
+    }
+    
+    public Checkpoint(EntityStore store, int px, int py) {
+        super(store, px, py, 0, 0, WIDTH, HEIGHT);
+        setStatic(true);
+    }
+    
+    /**
+     * 
+     * @return has the player touched this checkpoint?
+     */
+    public boolean isReached() {
+        return isReached;
+    }
+    
+    /**
+     * Marks the checkpoint as touched by the player
+     */
+    public void reach() {
+        isReached = true;
+    }
+    
+    /**
+     * Writes whether the checkpoint has been reached, for restoreState() to read back.
+     * Used by WorldSnapshot.
+     */
+    void saveState(ByteBuffer out) {
+        out.put((byte) (isReached ? 1 : 0));
+    }
+    
+    void restoreState(ByteBuffer in) {
+        isReached = in.get() != 0;
+    }
+    
+    /**
+     * Draws a post with a flag at the top, red until the checkpoint is reached and
+     * yellow afterwards.
+     */
+    @Override
+    public void draw(Graphics2D g, int cameraOffsetX) {
+        int x = GameCourt.getCartesianX(getPx(), getWidth()) + cameraOffsetX;
+        int y = GameCourt.getCartesianY(getPy(), getHeight());
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(x, y, POST_WIDTH, getHeight());
+        g.setColor(isReached ? Color.YELLOW : Color.RED);
+        g.fillRect(x + POST_WIDTH, y, getWidth() - POST_WIDTH, FLAG_HEIGHT);
+    }
+}
@@ -0,0 +1,163 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class CheckpointTest {
+    
+    private static final int CHECKPOINT_X = 600;
+    private static final int BANANA_BEFORE_X = 300;
+    private static final int BANANA_AFTER_X = 900;
+    private static final int START_X = 60;
+    
+    /**
+     * A floor that ends in a pit, with a banana on either side of a checkpoint and an
+     * enemy caged out of reach so that the level can't be cleared. Walking right, the player
+     * picks up both bananas, reaches the checkpoint between them, and falls to their death.
+     */
+    private static String writeLevel(boolean withCheckpoint) throws IOException {
+        LevelFixture level = new LevelFixture().player(START_X, 60)
+                .terrain(0, 0, 1200, 60)
+                .terrain(5000, 0, 600, 60).terrain(5000, 60, 60, 120).terrain(5540, 60, 60, 120)
+                .enemy(5200, 60)
+                .powerUp(BANANA_BEFORE_X, 60).powerUp(BANANA_AFTER_X, 60);
+        if (withCheckpoint) {
+            level.checkpoint(CHECKPOINT_X, 60);
+        }
+        return level.write();
+    }
+    
+    private static GameWorld load(String level, int activeWindow) throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.setActiveWindow(activeWindow);
+        world.load(level, 5);
+        world.setRespawnAtCheckpoints(true);
+        return world;
+    }
+    
+    // Walks right until the player has respawned once
+    private static void playUntilRespawn(GameWorld world) {
+        int respawns = world.getRespawnCount();
+        for (int tick = 0; tick < 2000 && world.getRespawnCount() == respawns; tick++) {
+            world.step(GameWorld.INPUT_RIGHT);
+        }
+        assertEquals(respawns + 1, world.getRespawnCount());
+    }
+    
+    private static PowerUp findPowerUp(GameWorld world, int x) {
+        for (PowerUp powerUp : world.getPowerUps()) {
+            if (powerUp.getPx() == x) {
+                return powerUp;
+            }
+        }
+        return null;
+    }
+    
+    private static void checkRespawnAtCheckpoint(GameWorld world) {
+        Player player = world.getPlayer();
+        playUntilRespawn(world);
+        
+        assertSame("the player isn't recreated", player, world.getPlayer());
+        assertTrue(player.isAlive());
+        assertEquals(4, player.getNumLives());
+        assertNotNull(world.getLastCheckpoint());
+        assertTrue(world.getLastCheckpoint().isReached());
+        int distance = Math.abs(player.getPx() - CHECKPOINT_X);
+        assertTrue("respawned at " + player.getPx(), distance <= Checkpoint.WIDTH);
+        // picked up before the checkpoint, so it stays picked up
+        assertEquals(1, player.getNumBananas());
+        assertNull(findPowerUp(world, BANANA_BEFORE_X));
+        // picked up after it, so it's back
+        assertNotNull(findPowerUp(world, BANANA_AFTER_X));
+        assertFalse(findPowerUp(world, BANANA_AFTER_X).hasBeenClaimed());
+        assertTrue("tick count carries on", world.getTickCount() > 200);
+    }
+    
+    @Test
+    public void testRespawnAtCheckpoint() throws IOException {
+        checkRespawnAtCheckpoint(load(writeLevel(true), GameWorld.WHOLE_LEVEL));
+    }
+    
+    @Test
+    public void testRespawnAtCheckpointInStreamedLevel() throws IOException {
+        checkRespawnAtCheckpoint(load(writeLevel(true), 400));
+    }
+    
+    @Test
+    public void testRespawnAtStartWithoutCheckpoint() throws IOException {
+        GameWorld world = load(writeLevel(false), GameWorld.WHOLE_LEVEL);
+        playUntilRespawn(world);
+        assertNull(world.getLastCheckpoint());
+        // respawned at the start of the last step, then moved right once
+        assertTrue("respawned at " + world.getPlayer().getPx(),
+                world.getPlayer().getPx() - START_X <= 6);
+        assertEquals(0, world.getPlayer().getNumBananas());
+        assertEquals(4, world.getPlayer().getNumLives());
+        assertEquals(2, world.getPowerUps().size());
+    }
+    
+    @Test
+    public void testLevelIsOverWhenOutOfLives() throws IOException {
+        GameWorld world = load(writeLevel(true), GameWorld.WHOLE_LEVEL);
+        for (int tick = 0; tick < 10000 && !world.isOver(); tick++) {
+            world.step(GameWorld.INPUT_RIGHT);
+        }
+        assertTrue(world.isOver());
+        assertEquals(0, world.getPlayer().getNumLives());
+        assertEquals(4, world.getRespawnCount());
+    }
+    
+    @Test
+    public void testWithoutRespawningDeathEndsLevel() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.load(writeLevel(true), 5);
+        for (int tick = 0; tick < 2000 && !world.isOver(); tick++) {
+            world.step(GameWorld.INPUT_RIGHT);
+        }
+        assertTrue(world.isOver());
+        assertEquals(4, world.getPlayer().getNumLives());
+        assertEquals(0, world.getRespawnCount());
+    }
+    
+    @Test
+    public void testRespawnTakesLessThanAFrame() throws IOException {
+        GameWorld world = load("sampleDKCLevel.txt", GameWorld.WHOLE_LEVEL);
+        for (int i = 0; i < 100; i++) {
+            world.respawn();
+        }
+        assertTrue(world.getLastRespawnNanos() + " ns",
+                world.getLastRespawnNanos() < 16_000_000L);
+    }
+    
+    @Test
+    public void testRecordingReplaysRespawns() throws IOException {
+        String level = writeLevel(true);
+        GameWorld world = load(level, GameWorld.WHOLE_LEVEL);
+        InputRecording recording = new InputRecording(level, 5, world);
+        for (int tick = 0; tick < 10000 && !world.isOver(); tick++) {
+            int input = (tick % 70 < 3) ? GameWorld.INPUT_RIGHT | GameWorld.INPUT_JUMP
+                    : GameWorld.INPUT_RIGHT;
+            recording.record(input);
+            world.step(input);
+        }
+        recording.finish(world);
+        assertTrue(world.getRespawnCount() > 0);
+        
+        File file = File.createTempFile("checkpointTest", ".dkcr");
+        file.deleteOnExit();
+        recording.write(file.getPath());
+        assertTrue(InputRecording.read(file.getPath()).matches(recording.replay()));
+    }
+    
+    @Test
+    public void testBinaryLevelKeepsCheckpoints() throws IOException {
+        File binary = File.createTempFile("checkpointTest", ".dkcl");
+        binary.deleteOnExit();
+        LevelConverter.convert(writeLevel(true), binary.getPath());
+        GameWorld world = load(binary.getPath(), GameWorld.WHOLE_LEVEL);
+        assertEquals(1, world.getCheckpoints().size());
+        assertEquals(CHECKPOINT_X, world.getCheckpoints().get(0).getPx());
+    }
+}
@@ -0,0 +1,124 @@
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CollisionDirectionTest {
+    
+    private static final int NUM_RANDOM_PAIRS = 4000000;
+    
+    // The original trigonometric implementation from the CIS 120 sample game code
+    private static CollisionDirection trigDirection(GameObj self, GameObj other) {
+        double dx = other.getPx() + other.getWidth() / 2 - (self.getPx() + self.getWidth() / 2);
+        double dy = other.getPy() + other.getHeight() / 2 - (self.getPy() + self.getHeight() / 2);
+
+        double theta = Math.acos(dx / (Math.sqrt(dx * dx + dy * dy)));
+        double diagTheta = Math.atan2(other.getHeight() / 2, other.getWidth() / 2);
+
+        if (theta <= diagTheta ) {
+            return CollisionDirection.RIGHT;
+        } else if ( theta > diagTheta && theta <= Math.PI - diagTheta ) {
+            if ( dy > 0 ) {
+                return CollisionDirection.UP;
+            } else {
+                return CollisionDirection.DOWN;
+            }
+        } else {
+            return CollisionDirection.LEFT;
+        }
+    }
+    
+    // Is the direction between the centers exactly along the other's diagonal? There the
+    // trigonometric version's answer depends on rounding error.
+    private static boolean onDiagonal(GameObj self, GameObj other) {
+        long dx = other.getPx() + other.getWidth() / 2 - (self.getPx() + self.getWidth() / 2);
+        long dy = other.getPy() + other.getHeight() / 2 - (self.getPy() + self.getHeight() / 2);
+        return Math.abs(dx) * (other.getHeight() / 2) == Math.abs(dy) * (other.getWidth() / 2);
+    }
+    
+    private static void assertSameAsTrig(GameObj self, GameObj other) {
+        assertEquals("self (" + self.getPx() + "," + self.getPy() + "," + self.getWidth()
+                + "," + self.getHeight() + ") other (" + other.getPx() + "," + other.getPy()
+                + "," + other.getWidth() + "," + other.getHeight() + ")",
+                trigDirection(self, other), self.getCollisionDirection(other));
+    }
+    
+    @Test
+    public void testMatchesTrigOnRandomPairs() {
+        Random random = new Random(120);
+        int compared = 0;
+        for (int i = 0; i < NUM_RANDOM_PAIRS; i++) {
+            // mostly sprite- and block-sized boxes that overlap or nearly overlap
+            TerrainBlock self = new TerrainBlock(random.nextInt(400) - 200,
+                    random.nextInt(400) - 200, random.nextInt(150) + 1, random.nextInt(150) + 1);
+            TerrainBlock other = new TerrainBlock(random.nextInt(400) - 200,
+                    random.nextInt(400) - 200, random.nextInt(1000) + 1, random.nextInt(300) + 1);
+            if (!onDiagonal(self, other)) {
+                assertSameAsTrig(self, other);
+                compared++;
+            }
+        }
+        // ties should be rare enough not to weaken the comparison
+        assertTrue(compared > NUM_RANDOM_PAIRS * 99 / 100);
+    }
+    
+    @Test
+    public void testMatchesTrigOnLargeCoordinates() {
+        Random random = new Random(121);
+        for (int i = 0; i < NUM_RANDOM_PAIRS / 4; i++) {
+            TerrainBlock self = new TerrainBlock(random.nextInt(2000000) - 1000000,
+                    random.nextInt(20000) - 10000, random.nextInt(100) + 1, random.nextInt(100) + 1);
+            TerrainBlock other = new TerrainBlock(self.getPx() + random.nextInt(20000) - 10000,
+                    self.getPy() + random.nextInt(2000) - 1000, random.nextInt(100000) + 1,
+                    random.nextInt(1000) + 1);
+            if (!onDiagonal(self, other)) {
+                assertSameAsTrig(self, other);
+            }
+        }
+    }
+    
+    @Test
+    public void testDegenerateCases() {
+        // coincident centers
+        assertSameAsTrig(new TerrainBlock(0, 0, 60, 60), new TerrainBlock(0, 0, 60, 60));
+        // other too small to have a diagonal
+        assertSameAsTrig(new TerrainBlock(0, 0, 60, 60), new TerrainBlock(100, 30, 1, 1));
+        assertSameAsTrig(new TerrainBlock(0, 0, 60, 60), new TerrainBlock(100, 60, 1, 1));
+        assertSameAsTrig(new TerrainBlock(0, 0, 60, 60), new TerrainBlock(-100, 30, 1, 1));
+        // other one pixel wide, straight above
+        assertSameAsTrig(new TerrainBlock(0, 0, 60, 60), new TerrainBlock(30, 100, 1, 60));
+    }
+    
+    @Test
+    public void testExactDiagonalGoesRightOnRightVerticalOnLeft() {
+        TerrainBlock self = new TerrainBlock(0, 0, 60, 60);
+        assertEquals(CollisionDirection.RIGHT,
+                self.getCollisionDirection(new TerrainBlock(40, 40, 60, 60)));
+        assertEquals(CollisionDirection.RIGHT,
+                self.getCollisionDirection(new TerrainBlock(40, -40, 60, 60)));
+        assertEquals(CollisionDirection.UP,
+                self.getCollisionDirection(new TerrainBlock(-40, 40, 60, 60)));
+        assertEquals(CollisionDirection.DOWN,
+                self.getCollisionDirection(new TerrainBlock(-40, -40, 60, 60)));
+    }
+    
+    @Test
+    public void testPenetrationDepth() {
+        TerrainBlock self = new TerrainBlock(0, 0, 60, 60);
+        TerrainBlock right = new TerrainBlock(50, 0, 60, 60);
+        TerrainBlock below = new TerrainBlock(0, -60, 60, 60);
+        TerrainBlock gap = new TerrainBlock(-70, 0, 60, 60);
+        
+        assertEquals(CollisionDirection.RIGHT, self.getCollisionDirection(right));
+        assertEquals(10, self.getPenetrationDepth(right, CollisionDirection.RIGHT));
+        assertEquals(CollisionDirection.DOWN, self.getCollisionDirection(below));
+        assertEquals(0, self.getPenetrationDepth(below, CollisionDirection.DOWN));
+        assertEquals(CollisionDirection.LEFT, self.getCollisionDirection(gap));
+        assertEquals(-10, self.getPenetrationDepth(gap, CollisionDirection.LEFT));
+        
+        self.clipLeft(right);
+        assertEquals(-10, self.getPx());
+        assertEquals(0, self.getPenetrationDepth(right, CollisionDirection.RIGHT));
+    }
+}
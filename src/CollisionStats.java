@@ -0,0 +1,284 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * CollisionStats.java
+ * Counts the collision tests made by GameObj (isColliding(), isTouching() and
+ * getCollisionDirection()), how many of them hit, and the Collidable actions they lead
+ * to, so that the efficiency of the broad phase can be watched while the game runs. The
+ * counts are gathered into rates once a second, along with the number of terrain blocks
+ * in play, and can be read over JMX (see register()).
+ * 
+ * Counting is off by default and is turned on through setEnabled(), either over JMX or
+ * with -Ddkc.collisionStats=true. While it is off, each test costs one extra read of a
+ * flag. Counters are LongAdders, so the threads of a parallel enemy phase each count
+ * into a cell of their own rather than contending for one.
+ * @author Jack Harkins
+ *
+ */
+public class CollisionStats implements CollisionStatsMBean {
+    
+    /**
+     * What is counted
+     */
+    public enum Counter {
+        COLLIDING_CHECKS, // calls to isColliding()
+        COLLIDING_HITS, // ... that returned true
+        TOUCHING_CHECKS, // calls to isTouching()
+        TOUCHING_HITS, // ... that returned true
+        DIRECTION_CHECKS, // calls to getCollisionDirection()
+        COLLISION_ACTIONS, // calls to Collidable.collisionAction()
+        TOUCH_ACTIONS, // calls to Collidable.touchAction()
+        TICKS // calls to GameWorld.tick()
+    }
+    
+    public static final String OBJECT_NAME = "dkc:type=CollisionStats";
+    
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    
+    private static final CollisionStats INSTANCE = new CollisionStats();
+    private static volatile boolean enabled = Boolean.getBoolean("dkc.collisionStats");
+    
+    private final LongAdder[] counts = new LongAdder[COUNTERS.length];
+    private volatile int terrainBlocks;
+    private volatile long windowStart = System.nanoTime();
+    
+    // Counts up to the start of the current second, and the rates during the last one.
+    // Guarded by this.
+    private final long[] totals = new long[COUNTERS.length];
+    private final double[] rates = new double[COUNTERS.length];
+    
+    private CollisionStats() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+    
+    /**
+     * 
+     * @return the statistics for every world in the game
+     */
+    public static CollisionStats get() {
+        return INSTANCE;
+    }
+    
+    /**
+     * Makes the statistics readable over JMX as dkc:type=CollisionStats. Calling it
+     * more than once does nothing.
+     */
+    public static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // already registered
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    // Called by GameObj, Player, Enemy and GameWorld
+    
+    static void countColliding(boolean hit) {
+        if (enabled) {
+            INSTANCE.counts[Counter.COLLIDING_CHECKS.ordinal()].increment();
+            if (hit) {
+                INSTANCE.counts[Counter.COLLIDING_HITS.ordinal()].increment();
+            }
+        }
+    }
+    
+    static void countTouching(boolean hit) {
+        if (enabled) {
+            INSTANCE.counts[Counter.TOUCHING_CHECKS.ordinal()].increment();
+            if (hit) {
+                INSTANCE.counts[Counter.TOUCHING_HITS.ordinal()].increment();
+            }
+        }
+    }
+    
+    static void countDirection() {
+        if (enabled) {
+            INSTANCE.counts[Counter.DIRECTION_CHECKS.ordinal()].increment();
+        }
+    }
+    
+    static void countAction(boolean collision) {
+        if (enabled) {
+            INSTANCE.counts[(collision ? Counter.COLLISION_ACTIONS : Counter.TOUCH_ACTIONS)
+                    .ordinal()].increment();
+        }
+    }
+    
+    /**
+     * Counts a tick, and works out the rates for the last second if one has passed
+     * @param numTerrainBlocks number of terrain blocks in play during the tick
+     */
+    static void countTick(int numTerrainBlocks) {
+        if (enabled) {
+            INSTANCE.counts[Counter.TICKS.ordinal()].increment();
+            INSTANCE.terrainBlocks = numTerrainBlocks;
+            long now = System.nanoTime();
+            if (now - INSTANCE.windowStart >= NANOS_PER_SECOND) {
+                INSTANCE.sample(now);
+            }
+        }
+    }
+    
+    /**
+     * Ends the current second early, working out the rates over however long it has
+     * been, e.g. for tests.
+     */
+    synchronized void sample(long now) {
+        double seconds = (double) Math.max(now - windowStart, 1) / NANOS_PER_SECOND;
+        for (int i = 0; i < counts.length; i++) {
+            long count = counts[i].sumThenReset();
+            totals[i] += count;
+            rates[i] = count / seconds;
+        }
+        windowStart = now;
+    }
+    
+    /**
+     * 
+     * @return the number of times something has been counted since the last reset,
+     * including the current second
+     */
+    public synchronized long getTotal(Counter counter) {
+        return totals[counter.ordinal()] + counts[counter.ordinal()].sum();
+    }
+    
+    /**
+     * 
+     * @return how many times a second something was counted during the last second
+     */
+    public synchronized double getRate(Counter counter) {
+        return rates[counter.ordinal()];
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    @Override
+    public void setEnabled(boolean enabled) {
+        CollisionStats.enabled = enabled;
+    }
+    
+    @Override
+    public double getTicksPerSecond() {
+        return getRate(Counter.TICKS);
+    }
+    
+    @Override
+    public double getCollidingChecksPerSecond() {
+        return getRate(Counter.COLLIDING_CHECKS);
+    }
+    
+    @Override
+    public double getCollidingHitsPerSecond() {
+        return getRate(Counter.COLLIDING_HITS);
+    }
+    
+    @Override
+    public double getTouchingChecksPerSecond() {
+        return getRate(Counter.TOUCHING_CHECKS);
+    }
+    
+    @Override
+    public double getTouchingHitsPerSecond() {
+        return getRate(Counter.TOUCHING_HITS);
+    }
+    
+    @Override
+    public double getDirectionChecksPerSecond() {
+        return getRate(Counter.DIRECTION_CHECKS);
+    }
+    
+    @Override
+    public double getCollisionActionsPerSecond() {
+        return getRate(Counter.COLLISION_ACTIONS);
+    }
+    
+    @Override
+    public double getTouchActionsPerSecond() {
+        return getRate(Counter.TOUCH_ACTIONS);
+    }
+    
+    /**
+     * 
+     * @return isColliding() and isTouching() calls per tick during the last second
+     */
+    @Override
+    public synchronized double getChecksPerTick() {
+        double ticks = rates[Counter.TICKS.ordinal()];
+        return (ticks == 0) ? 0 : (rates[Counter.COLLIDING_CHECKS.ordinal()]
+                + rates[Counter.TOUCHING_CHECKS.ordinal()]) / ticks;
+    }
+    
+    /**
+     * 
+     * @return the fraction of isColliding() and isTouching() calls during the last
+     * second that returned true, i.e. how many of the pairs the broad phase passed on
+     * were worth testing
+     */
+    @Override
+    public synchronized double getHitRate() {
+        double checks = rates[Counter.COLLIDING_CHECKS.ordinal()]
+                + rates[Counter.TOUCHING_CHECKS.ordinal()];
+        return (checks == 0) ? 0 : (rates[Counter.COLLIDING_HITS.ordinal()]
+                + rates[Counter.TOUCHING_HITS.ordinal()]) / checks;
+    }
+    
+    /**
+     * 
+     * @return the number of terrain blocks in play during the last tick
+     */
+    @Override
+    public int getTerrainBlocks() {
+        return terrainBlocks;
+    }
+    
+    /**
+     * 
+     * @return checks per tick for each terrain block in play; constant as levels grow
+     * if the checks are proportional to the terrain, falling if the broad phase keeps
+     * them to what is nearby
+     */
+    @Override
+    public double getChecksPerTerrainBlock() {
+        int blocks = terrainBlocks;
+        return (blocks == 0) ? 0 : getChecksPerTick() / blocks;
+    }
+    
+    @Override
+    public synchronized long getTotalChecks() {
+        return getTotal(Counter.COLLIDING_CHECKS) + getTotal(Counter.TOUCHING_CHECKS);
+    }
+    
+    @Override
+    public synchronized long getTotalHits() {
+        return getTotal(Counter.COLLIDING_HITS) + getTotal(Counter.TOUCHING_HITS);
+    }
+    
+    /**
+     * Forgets everything counted so far
+     */
+    @Override
+    public synchronized void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i].reset();
+            totals[i] = 0;
+            rates[i] = 0;
+        }
+        terrainBlocks = 0;
+        windowStart = System.nanoTime();
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * CollisionStatsMBean.java
+ * The attributes and operations of CollisionStats shown over JMX, e.g. in JConsole
+ * under dkc:type=CollisionStats. Rates are for the last full second of play.
+ * @author Jack Harkins
+ *
+ */
+public interface CollisionStatsMBean {
+    boolean isEnabled();
+    void setEnabled(boolean enabled);
+    
+    double getTicksPerSecond();
+    double getCollidingChecksPerSecond();
+    double getCollidingHitsPerSecond();
+    double getTouchingChecksPerSecond();
+    double getTouchingHitsPerSecond();
+    double getDirectionChecksPerSecond();
+    double getCollisionActionsPerSecond();
+    double getTouchActionsPerSecond();
+    
+    double getChecksPerTick();
+    double getHitRate();
+    int getTerrainBlocks();
+    double getChecksPerTerrainBlock();
+    
+    long getTotalChecks();
+    long getTotalHits();
+    
+    void reset();
+}
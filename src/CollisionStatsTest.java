@@ -0,0 +1,100 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CollisionStatsTest {
+    
+    private final CollisionStats stats = CollisionStats.get();
+    
+    @Before
+    public void setUp() {
+        stats.setEnabled(true);
+        stats.reset();
+    }
+    
+    @After
+    public void tearDown() {
+        stats.setEnabled(false);
+        stats.reset();
+    }
+    
+    @Test
+    public void testCountsChecksAndHits() {
+        TerrainBlock a = new TerrainBlock(0, 0, 100, 100);
+        TerrainBlock b = new TerrainBlock(50, 50, 100, 100);
+        TerrainBlock c = new TerrainBlock(100, 0, 100, 100);
+        TerrainBlock far = new TerrainBlock(1000, 0, 100, 100);
+        assertTrue(a.isColliding(b));
+        assertFalse(a.isColliding(far));
+        assertTrue(a.isTouching(c));
+        assertFalse(a.isTouching(far));
+        a.getCollisionDirection(b);
+        
+        assertEquals(2, stats.getTotal(CollisionStats.Counter.COLLIDING_CHECKS));
+        assertEquals(1, stats.getTotal(CollisionStats.Counter.COLLIDING_HITS));
+        assertEquals(2, stats.getTotal(CollisionStats.Counter.TOUCHING_CHECKS));
+        assertEquals(1, stats.getTotal(CollisionStats.Counter.TOUCHING_HITS));
+        assertEquals(1, stats.getTotal(CollisionStats.Counter.DIRECTION_CHECKS));
+        assertEquals(4, stats.getTotalChecks());
+        assertEquals(2, stats.getTotalHits());
+    }
+    
+    @Test
+    public void testDisabledCountsNothing() {
+        stats.setEnabled(false);
+        TerrainBlock a = new TerrainBlock(0, 0, 100, 100);
+        a.isColliding(a);
+        a.isTouching(a);
+        a.getCollisionDirection(a);
+        assertEquals(0, stats.getTotalChecks());
+        assertEquals(0, stats.getTotal(CollisionStats.Counter.DIRECTION_CHECKS));
+    }
+    
+    @Test
+    public void testRatesForATickedWorld() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.load("sampleDKCLevel.txt", 5);
+        for (int t = 0; t < 100; t++) {
+            world.step(GameWorld.INPUT_RIGHT);
+        }
+        stats.sample(System.nanoTime());
+        
+        assertEquals(100, stats.getTotal(CollisionStats.Counter.TICKS));
+        assertTrue(stats.getTicksPerSecond() > 0);
+        assertTrue(stats.getTotalChecks() > 0);
+        // every action follows a check that hit, and a pair of enemies both act
+        assertTrue(stats.getTotal(CollisionStats.Counter.COLLISION_ACTIONS) > 0);
+        assertTrue(stats.getTotal(CollisionStats.Counter.COLLISION_ACTIONS)
+                <= 2 * stats.getTotal(CollisionStats.Counter.COLLIDING_HITS));
+        assertTrue(stats.getTotal(CollisionStats.Counter.TOUCH_ACTIONS)
+                <= 2 * stats.getTotal(CollisionStats.Counter.TOUCHING_HITS));
+        assertTrue(stats.getHitRate() > 0 && stats.getHitRate() <= 1);
+        assertTrue(stats.getChecksPerTick() > 0);
+        assertEquals(world.getTerrainBlocks().size(), stats.getTerrainBlocks());
+        // the terrain grid keeps the player and enemies from being tested against every
+        // block
+        assertTrue(stats.getChecksPerTerrainBlock()
+                < world.getEnemies().size() + 1);
+    }
+    
+    @Test
+    public void testReadableOverJmx() throws Exception {
+        CollisionStats.register();
+        CollisionStats.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(CollisionStats.OBJECT_NAME);
+        assertEquals(Boolean.TRUE, server.getAttribute(name, "Enabled"));
+        new TerrainBlock(0, 0, 10, 10).isColliding(new TerrainBlock(5, 5, 10, 10));
+        assertEquals(1L, server.getAttribute(name, "TotalHits"));
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "TotalHits"));
+    }
+}
@@ -1,14 +1,12 @@
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.File;
-
-import javax.imageio.ImageIO;
-import javax.swing.JOptionPane;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Enemy.java
  * Represents enemies that can hurt the player. Enemies are hard-coded to
- * walk before encountering a wall or another obstacle. They may be killed
+ * walk before encountering a wall, another enemy or another obstacle. They may be killed
  * by the player when he jumps on them.
  * @author Jack Harkins
  *
@@ -31,19 +29,38 @@ public class Enemy extends GameObj implements Collidable {
     }
     
     private boolean isAlive;
+    private final EnemyType type;
     private BufferedImage image;
     
     private static final int ENEMY_VELOCITY = 3;
     
+    // Where the enemy last turned around at a wall on either side, and at what height,
+    // so that its patrol can be fast-forwarded while it sleeps. Only valid if both turns
+    // happened at the same height.
+    private boolean hasTurnedLeft;
+    private boolean hasTurnedRight;
+    private int patrolLeft;
+    private int patrolRight;
+    private int patrolY;
+    private long sleepingSince;
+    
     public Enemy(int px, int py, EnemyType type) {
-        super(px, py, ENEMY_VELOCITY, 0, 60, 60);
-        try {
-            image = ImageIO.read(new File(type.getFilename()));
-        } catch (java.io.IOException e) {
-            JOptionPane.showMessageDialog(null, "Enemy image file not found!");
-            System.exit(1);
-        }
+        this(new EntityStore(1), px, py, type);
+    }
+    
+    public Enemy(EntityStore store, int px, int py, EnemyType type) {
+        super(store, px, py, ENEMY_VELOCITY, 0, 60, 60);
+        this.type = type;
         isAlive = true;
+        setHasGravity(true);
+    }
+    
+    /**
+     * 
+     * @return the enumerated type of this enemy
+     */
+    public EnemyType getType() {
+        return type;
     }
     
     /**
@@ -55,10 +72,12 @@ public class Enemy extends GameObj implements Collidable {
     }
     
     /**
-     * Action to be performed when an enemy collides with another GameObj
+     * Action to be performed when an enemy collides with another GameObj. Enemies turn
+     * around at walls and at each other.
      */
     @Override
     public void collisionAction(GameObj other, CollisionDirection direction) {
+        CollisionStats.countAction(true);
         if (other instanceof TerrainBlock) {
             if (direction == CollisionDirection.DOWN) {
                 setVy(0);
@@ -68,15 +87,28 @@ public class Enemy extends GameObj implements Collidable {
                 setVx(ENEMY_VELOCITY); // reverse velocity
                 clipRight(other);
                 setMovableLeft(false);
+                turnedAround(true);
             } else if (direction == CollisionDirection.RIGHT) {
                 setVx(-ENEMY_VELOCITY); // reverse velocity
                 clipLeft(other);
                 setMovableRight(false);
+                turnedAround(false);
             } else if (direction == CollisionDirection.UP) {
                 setVy(0);
                 clipDown(other);
                 setMovableUp(false);
             }
+        } else if (other instanceof Enemy) {
+            // Bump into each other and turn around. Neither is pushed back, as the other
+            // one could be up against a wall; they move apart on the next tick.
+            if (direction == CollisionDirection.LEFT) {
+                setVx(ENEMY_VELOCITY);
+            } else if (direction == CollisionDirection.RIGHT) {
+                setVx(-ENEMY_VELOCITY);
+            }
+            // only pacing between two walls can be fast-forwarded
+            hasTurnedLeft = false;
+            hasTurnedRight = false;
         }
     }
     
@@ -84,6 +116,7 @@ public class Enemy extends GameObj implements Collidable {
      * Action to be performed when an enemy touches another GameObj
      */
     public void touchAction(GameObj other, CollisionDirection direction) {
+        CollisionStats.countAction(false);
         if (other instanceof TerrainBlock) {
             if (direction == CollisionDirection.DOWN) {
                 setMovableDown(false);
@@ -97,6 +130,110 @@ public class Enemy extends GameObj implements Collidable {
         }
     }
     
+    private void turnedAround(boolean atLeftWall) {
+        if (getPy() != patrolY) {
+            hasTurnedLeft = false;
+            hasTurnedRight = false;
+            patrolY = getPy();
+        }
+        if (atLeftWall) {
+            hasTurnedLeft = true;
+            patrolLeft = getPx();
+        } else {
+            hasTurnedRight = true;
+            patrolRight = getPx();
+        }
+    }
+    
+    /**
+     * 
+     * @return is the enemy asleep, i.e. frozen where it is until woken?
+     */
+    public boolean isAsleep() {
+        return getStore().hasFlags(getHandle(), EntityStore.ASLEEP);
+    }
+    
+    /**
+     * Freezes the enemy where it is. Asleep enemies are neither moved nor pulled down by
+     * gravity, and GameWorld doesn't check them for collisions.
+     * @param tick the world's tick count when the enemy fell asleep
+     */
+    public void sleep(long tick) {
+        getStore().setFlags(getHandle(), EntityStore.ASLEEP, true);
+        sleepingSince = tick;
+    }
+    
+    /**
+     * Lets the enemy move again. Normally it carries on exactly where it stopped. If
+     * fastForward is set and the enemy has been pacing on flat ground between two walls,
+     * it is instead put exactly where that patrol would have taken it had it stayed awake,
+     * which depends only on how long it slept.
+     * @param tick the world's tick count when the enemy woke up
+     * @param fastForward should the enemy's patrol be fast-forwarded?
+     */
+    public void wake(long tick, boolean fastForward) {
+        getStore().setFlags(getHandle(), EntityStore.ASLEEP, false);
+        if (fastForward && hasTurnedLeft && hasTurnedRight && getPy() == patrolY
+                && getVy() == 0 && patrolLeft < patrolRight) {
+            fastForwardPatrol(tick - sleepingSince);
+        }
+    }
+    
+    // Pacing between the walls repeats every 2 * (steps + 1) ticks: steps moves of
+    // ENEMY_VELOCITY from patrolLeft, a tick bumping into the right wall and being pushed
+    // back to patrolRight, then the same again to the left. Work out how far into that
+    // cycle the enemy is, move it along, and put it where it would be at that point.
+    private void fastForwardPatrol(long ticks) {
+        int steps = (patrolRight - patrolLeft) / ENEMY_VELOCITY;
+        long phase;
+        if (getVx() > 0 && (getPx() - patrolLeft) % ENEMY_VELOCITY == 0) {
+            phase = (getPx() - patrolLeft) / ENEMY_VELOCITY;
+        } else if (getVx() < 0 && (patrolRight - getPx()) % ENEMY_VELOCITY == 0) {
+            phase = steps + 1 + (patrolRight - getPx()) / ENEMY_VELOCITY;
+        } else {
+            return; // not on the patrol after all
+        }
+        if (phase < 0 || phase > 2 * steps + 1) {
+            return;
+        }
+        phase = (phase + ticks) % (2 * steps + 2);
+        if (phase <= steps) {
+            getStore().setPx(getHandle(), patrolLeft + (int) phase * ENEMY_VELOCITY);
+            setVx(ENEMY_VELOCITY);
+        } else {
+            getStore().setPx(getHandle(),
+                    patrolRight - (int) (phase - steps - 1) * ENEMY_VELOCITY);
+            setVx(-ENEMY_VELOCITY);
+        }
+    }
+    
+    /**
+     * Writes what the enemy knows about itself, beyond what is in its EntityStore, for
+     * restoreState() to read back. Used by WorldSnapshot.
+     */
+    void saveState(ByteBuffer out) {
+        int bits = 0;
+        bits |= isAlive ? 1 : 0;
+        bits |= hasTurnedLeft ? 2 : 0;
+        bits |= hasTurnedRight ? 4 : 0;
+        out.put((byte) bits);
+        out.putInt(patrolLeft);
+        out.putInt(patrolRight);
+        out.putInt(patrolY);
+        out.putLong(sleepingSince);
+    }
+    
+    void restoreState(ByteBuffer in) {
+        int bits = in.get();
+        isAlive = (bits & 1) != 0;
+        hasTurnedLeft = (bits & 2) != 0;
+        hasTurnedRight = (bits & 4) != 0;
+        patrolLeft = in.getInt();
+        patrolRight = in.getInt();
+        patrolY = in.getInt();
+        sleepingSince = in.getLong();
+    }
+    
     /**
      * Kills the enemy
      */
@@ -104,6 +241,11 @@ public class Enemy extends GameObj implements Collidable {
         isAlive = false;
     }
 
+    @Override
+    public void loadSprite() throws IOException {
+        image = SpriteCache.get(type.getFilename());
+    }
+
     /**
      * Draws the enemy's sprite on the canvas, according to the enemy's position.
      */
@@ -0,0 +1,112 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class EnemySleepTest {
+    
+    private static final int NEAR_CAGE_X = 600;
+    private static final int FAR_CAGE_X = 6000;
+    private static final int SLEEP_DISTANCE = 1000;
+    
+    /**
+     * A flat floor with the player at one end and two cages with an enemy pacing in each,
+     * one near the player and one far away.
+     */
+    private static String writeLevel() throws IOException {
+        LevelFixture level = new LevelFixture().terrain(0, 0, 8000, 60);
+        for (int x : new int[] { NEAR_CAGE_X, FAR_CAGE_X }) {
+            level.terrain(x, 60, 60, 120).terrain(x + 300, 60, 60, 120).enemy(x + 120, 60);
+        }
+        return level.write();
+    }
+    
+    private static GameWorld load(String level) throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.load(level, 5);
+        return world;
+    }
+    
+    private static void tick(GameWorld world, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            world.tick();
+        }
+    }
+    
+    private static Enemy farEnemy(GameWorld world) {
+        return world.getEnemies().get(1);
+    }
+    
+    @Test
+    public void testEveryoneIsAwakeByDefault() throws IOException {
+        GameWorld world = load(writeLevel());
+        tick(world, 100);
+        assertEquals(2, world.getActiveEnemyCount());
+        assertEquals(0, world.getSleepingEnemyCount());
+    }
+    
+    @Test
+    public void testFarEnemiesSleepWhereTheyAre() throws IOException {
+        GameWorld world = load(writeLevel());
+        world.setSleepDistance(SLEEP_DISTANCE);
+        tick(world, 1);
+        assertEquals(1, world.getActiveEnemyCount());
+        assertEquals(1, world.getSleepingEnemyCount());
+        assertTrue(farEnemy(world).isAsleep());
+        assertFalse(world.getEnemies().get(0).isAsleep());
+        
+        int px = farEnemy(world).getPx();
+        int py = farEnemy(world).getPy();
+        tick(world, 500);
+        assertEquals(px, farEnemy(world).getPx());
+        assertEquals(py, farEnemy(world).getPy());
+    }
+    
+    @Test
+    public void testWokenEnemiesCarryOnWhereTheyStopped() throws IOException {
+        String level = writeLevel();
+        GameWorld awake = load(level);
+        GameWorld world = load(level);
+        tick(awake, 200);
+        tick(world, 200);
+        
+        world.setSleepDistance(SLEEP_DISTANCE);
+        tick(world, 300);
+        world.setSleepDistance(GameWorld.ALWAYS_AWAKE);
+        tick(world, 200);
+        assertEquals(0, world.getSleepingEnemyCount());
+        
+        // as if the 300 ticks asleep never happened
+        tick(awake, 200);
+        assertEquals(farEnemy(awake).getPx(), farEnemy(world).getPx());
+        assertEquals(farEnemy(awake).getVx(), farEnemy(world).getVx());
+        // and the near enemy wasn't affected at all
+        tick(awake, 300);
+        assertEquals(awake.getEnemies().get(0).getPx(), world.getEnemies().get(0).getPx());
+    }
+    
+    @Test
+    public void testFastForwardedPatrolMatchesStayingAwake() throws IOException {
+        String level = writeLevel();
+        GameWorld awake = load(level);
+        GameWorld world = load(level);
+        world.setFastForwardSleepers(true);
+        // long enough for the far enemy to have turned at both walls
+        tick(awake, 200);
+        tick(world, 200);
+        
+        world.setSleepDistance(SLEEP_DISTANCE);
+        for (int ticks : new int[] { 1, 59, 60, 61, 333, 1000 }) {
+            tick(world, ticks);
+            tick(awake, ticks);
+            assertTrue(farEnemy(world).isAsleep());
+            world.setSleepDistance(GameWorld.ALWAYS_AWAKE);
+            tick(world, 1);
+            tick(awake, 1);
+            world.setSleepDistance(SLEEP_DISTANCE);
+            assertEquals("after " + ticks, farEnemy(awake).getPx(), farEnemy(world).getPx());
+            assertEquals("after " + ticks, farEnemy(awake).getVx(), farEnemy(world).getVx());
+        }
+    }
+}
@@ -0,0 +1,400 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * EntityStore.java
+ * Holds the position, velocity, size and movement flags of every GameObj in a level in
+ * parallel primitive arrays rather than in the objects themselves. Each object is
+ * identified by an integer handle into the arrays; GameObj is a thin view over its
+ * handle. Keeping the state together lets GameWorld move everything in one pass over a
+ * few contiguous arrays, and keeps a large level's state to a few bytes per object.
+ * 
+ * Handles stay valid until they are freed. Freed handles are reused by later objects.
+ * 
+ * Objects flagged STATIC are expected to stay where they are. The store counts every
+ * change to one (see getStaticVersion()) so that anything cached from their positions
+ * can tell when it is out of date.
+ * @author Jack Harkins
+ *
+ */
+public class EntityStore {
+    
+    // Flag bits
+    public static final int CAN_MOVE_UP = 1;
+    public static final int CAN_MOVE_DOWN = 2;
+    public static final int CAN_MOVE_LEFT = 4;
+    public static final int CAN_MOVE_RIGHT = 8;
+    public static final int CAN_MOVE_ANY = CAN_MOVE_UP | CAN_MOVE_DOWN | CAN_MOVE_LEFT
+            | CAN_MOVE_RIGHT;
+    // falls under gravity when integrate() is called
+    public static final int HAS_GRAVITY = 16;
+    // set on every allocated handle, cleared when it is freed
+    public static final int LIVE = 32;
+    // not expected to move, e.g. terrain
+    public static final int STATIC = 64;
+    // skipped by integrate() and SweepAndPrune, e.g. an enemy too far from the player to matter
+    public static final int ASLEEP = 128;
+    
+    // Used to match falling behavior of DKC and similar platform games
+    private static final int MAX_VELOCITY = 20;
+    
+    private int[] px;
+    private int[] py;
+    private int[] vx;
+    private int[] vy;
+    // position before the last move, used to draw between ticks
+    private int[] prevPx;
+    private int[] prevPy;
+    private int[] width;
+    private int[] height;
+    private int[] flags;
+    
+    // handles [0, size) have been allocated at some point
+    private int size;
+    private int[] freeHandles;
+    private int numFree;
+    
+    private long staticVersion;
+    
+    /**
+     * @param capacity number of objects to make room for up front
+     */
+    public EntityStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        px = new int[capacity];
+        py = new int[capacity];
+        vx = new int[capacity];
+        vy = new int[capacity];
+        prevPx = new int[capacity];
+        prevPy = new int[capacity];
+        width = new int[capacity];
+        height = new int[capacity];
+        flags = new int[capacity];
+        freeHandles = new int[capacity];
+    }
+    
+    /**
+     * Adds an object to the store. It starts out able to move in every direction.
+     * @return the new object's handle
+     */
+    public int allocate(int px, int py, int vx, int vy, int width, int height) {
+        int handle;
+        if (numFree > 0) {
+            handle = freeHandles[--numFree];
+        } else {
+            if (size == flags.length) {
+                grow();
+            }
+            handle = size++;
+        }
+        this.px[handle] = px;
+        this.py[handle] = py;
+        this.vx[handle] = vx;
+        this.vy[handle] = vy;
+        this.prevPx[handle] = px;
+        this.prevPy[handle] = py;
+        this.width[handle] = width;
+        this.height[handle] = height;
+        this.flags[handle] = LIVE | CAN_MOVE_ANY;
+        return handle;
+    }
+    
+    private void grow() {
+        int capacity = flags.length * 2;
+        px = Arrays.copyOf(px, capacity);
+        py = Arrays.copyOf(py, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        prevPx = Arrays.copyOf(prevPx, capacity);
+        prevPy = Arrays.copyOf(prevPy, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        freeHandles = Arrays.copyOf(freeHandles, capacity);
+    }
+    
+    /**
+     * Removes an object from the store. Its handle may be given to a later object.
+     * @param handle the object to remove
+     */
+    public void free(int handle) {
+        if ((flags[handle] & LIVE) == 0) {
+            throw new IllegalStateException("handle " + handle + " is not in use");
+        }
+        if ((flags[handle] & STATIC) != 0) {
+            staticVersion++;
+        }
+        flags[handle] = 0;
+        freeHandles[numFree++] = handle;
+    }
+    
+    /**
+     * 
+     * @return one more than the highest handle ever allocated, i.e. the handles that
+     * integrate() runs over
+     */
+    public int getHandleCount() {
+        return size;
+    }
+    
+    /**
+     * 
+     * @return number of objects currently in the store
+     */
+    public int getLiveCount() {
+        return size - numFree;
+    }
+    
+    public int getPx(int handle) {
+        return px[handle];
+    }
+    
+    public int getPy(int handle) {
+        return py[handle];
+    }
+    
+    public void setPx(int handle, int px) {
+        if (this.px[handle] != px && (flags[handle] & STATIC) != 0) {
+            staticVersion++;
+        }
+        this.px[handle] = px;
+    }
+    
+    public void setPy(int handle, int py) {
+        if (this.py[handle] != py && (flags[handle] & STATIC) != 0) {
+            staticVersion++;
+        }
+        this.py[handle] = py;
+    }
+    
+    public int getVx(int handle) {
+        return vx[handle];
+    }
+    
+    public int getVy(int handle) {
+        return vy[handle];
+    }
+    
+    public void setVx(int handle, int vx) {
+        this.vx[handle] = vx;
+    }
+    
+    public void setVy(int handle, int vy) {
+        this.vy[handle] = vy;
+    }
+    
+    public int getPrevPx(int handle) {
+        return prevPx[handle];
+    }
+    
+    public int getPrevPy(int handle) {
+        return prevPy[handle];
+    }
+    
+    public int getWidth(int handle) {
+        return width[handle];
+    }
+    
+    public int getHeight(int handle) {
+        return height[handle];
+    }
+    
+    /**
+     * 
+     * @return is every one of the given flag bits set for the object?
+     */
+    public boolean hasFlags(int handle, int mask) {
+        return (flags[handle] & mask) == mask;
+    }
+    
+    /**
+     * 
+     * @return a counter that changes whenever a STATIC object is added, moved or removed
+     */
+    public long getStaticVersion() {
+        return staticVersion;
+    }
+    
+    /**
+     * Sets or clears the given flag bits for an object.
+     */
+    public void setFlags(int handle, int mask, boolean value) {
+        if ((mask & STATIC) != 0) {
+            staticVersion++;
+        }
+        if (value) {
+            flags[handle] |= mask;
+        } else {
+            flags[handle] &= ~mask;
+        }
+    }
+    
+    /**
+     * Updates an object's position according to its velocity
+     */
+    public void move(int handle) {
+        if ((flags[handle] & STATIC) != 0 && (vx[handle] | vy[handle]) != 0) {
+            staticVersion++;
+        }
+        prevPx[handle] = px[handle];
+        prevPy[handle] = py[handle];
+        px[handle] += vx[handle];
+        py[handle] += vy[handle];
+    }
+    
+    /**
+     * Updates an object's y-velocity, keeping it within the maximum falling speed
+     * @param yAccel the acceleration due to gravity
+     */
+    public void fall(int handle, int yAccel) {
+        int v = vy[handle];
+        if (v - yAccel < -MAX_VELOCITY) {
+            vy[handle] = -MAX_VELOCITY;
+        } else if (v + yAccel > MAX_VELOCITY) {
+            vy[handle] = MAX_VELOCITY;
+        } else {
+            vy[handle] = v + yAccel;
+        }
+    }
+    
+    /**
+     * Makes every object with gravity that is able to move down fall, then moves every
+     * object according to its velocity. Equivalent to calling fall() and move() on each
+     * object in turn, in a single pass over the arrays. ASLEEP objects stay where they
+     * are.
+     * @param yAccel the acceleration due to gravity
+     */
+    public void integrate(int yAccel) {
+        integrate(yAccel, 0, size);
+    }
+    
+    /**
+     * Does what integrate() does for the handles in [from, to) only. Objects don't affect
+     * each other here, so several threads may integrate disjoint ranges at once, as long
+     * as nothing else touches the store meanwhile.
+     * @param yAccel the acceleration due to gravity
+     * @param from first handle to integrate
+     * @param to one past the last handle to integrate
+     */
+    public void integrate(int yAccel, int from, int to) {
+        final int falling = LIVE | HAS_GRAVITY | CAN_MOVE_DOWN;
+        int staticChanges = 0;
+        for (int i = from; i < to; i++) {
+            int f = flags[i];
+            if ((f & LIVE) == 0) {
+                continue;
+            }
+            if ((f & ASLEEP) != 0) {
+                // so that they aren't drawn sliding from where they were before sleeping
+                prevPx[i] = px[i];
+                prevPy[i] = py[i];
+                continue;
+            }
+            if ((f & falling) == falling) {
+                fall(i, yAccel);
+            }
+            if ((f & STATIC) != 0 && (vx[i] | vy[i]) != 0) {
+                staticChanges++;
+            }
+            prevPx[i] = px[i];
+            prevPy[i] = py[i];
+            px[i] += vx[i];
+            py[i] += vy[i];
+        }
+        if (staticChanges != 0) {
+            synchronized (this) {
+                staticVersion += staticChanges;
+            }
+        }
+    }
+    
+    /**
+     * Writes the state of every handle, allocated or free, to a buffer, so that
+     * restore() can put the store back exactly as it is now.
+     * @param out buffer to write to
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public void save(ByteBuffer out) {
+        out.putInt(size);
+        out.putInt(numFree);
+        out.putLong(staticVersion);
+        putInts(out, px, size);
+        putInts(out, py, size);
+        putInts(out, vx, size);
+        putInts(out, vy, size);
+        putInts(out, prevPx, size);
+        putInts(out, prevPy, size);
+        putInts(out, width, size);
+        putInts(out, height, size);
+        putInts(out, flags, size);
+        putInts(out, freeHandles, numFree);
+    }
+    
+    /**
+     * Puts the store back the way it was when save() wrote the buffer. Every handle has
+     * the state it had then, and will be handed out in the same order.
+     * @param in buffer to read from, positioned where save() started writing
+     */
+    public void restore(ByteBuffer in) {
+        int savedSize = in.getInt();
+        int savedNumFree = in.getInt();
+        long savedStaticVersion = in.getLong();
+        while (flags.length < savedSize) {
+            grow();
+        }
+        size = savedSize;
+        numFree = savedNumFree;
+        getInts(in, px, size);
+        getInts(in, py, size);
+        getInts(in, vx, size);
+        getInts(in, vy, size);
+        getInts(in, prevPx, size);
+        getInts(in, prevPy, size);
+        getInts(in, width, size);
+        getInts(in, height, size);
+        getInts(in, flags, size);
+        getInts(in, freeHandles, numFree);
+        // The counter only ever goes up, so that anything cached from static objects
+        // after the save can't be mistaken for being up to date
+        if (staticVersion != savedStaticVersion) {
+            staticVersion++;
+        }
+    }
+    
+    private static void putInts(ByteBuffer out, int[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            out.putInt(values[i]);
+        }
+    }
+    
+    private static void getInts(ByteBuffer in, int[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            values[i] = in.getInt();
+        }
+    }
+    
+    /**
+     * 
+     * @return a hash of the state of every object in the store, for checking that two
+     * runs of a level ended up in exactly the same state
+     */
+    public long getStateHash() {
+        long hash = size;
+        for (int i = 0; i < size; i++) {
+            if ((flags[i] & LIVE) == 0) {
+                continue;
+            }
+            hash = hash * 31 + i;
+            hash = hash * 31 + px[i];
+            hash = hash * 31 + py[i];
+            hash = hash * 31 + vx[i];
+            hash = hash * 31 + vy[i];
+            hash = hash * 31 + prevPx[i];
+            hash = hash * 31 + prevPy[i];
+            hash = hash * 31 + width[i];
+            hash = hash * 31 + height[i];
+            hash = hash * 31 + flags[i];
+        }
+        return hash;
+    }
+}
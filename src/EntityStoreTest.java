@@ -0,0 +1,149 @@
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class EntityStoreTest {
+    
+    private static final int GRAVITY = -1;
+    
+    @Test
+    public void testFreedHandleIsReused() {
+        EntityStore store = new EntityStore(4);
+        int a = store.allocate(1, 2, 3, 4, 5, 6);
+        int b = store.allocate(7, 8, 9, 10, 11, 12);
+        store.setFlags(a, EntityStore.HAS_GRAVITY | EntityStore.STATIC, true);
+        store.free(a);
+        assertFalse(store.hasFlags(a, EntityStore.LIVE));
+        assertEquals(1, store.getLiveCount());
+        
+        // the new object gets the old handle but none of the old object's state
+        int c = store.allocate(20, 30, 0, 0, 60, 60);
+        assertEquals(a, c);
+        assertEquals(2, store.getHandleCount());
+        assertEquals(2, store.getLiveCount());
+        assertEquals(20, store.getPx(c));
+        assertEquals(30, store.getPy(c));
+        assertEquals(0, store.getVx(c));
+        assertEquals(60, store.getWidth(c));
+        assertTrue(store.hasFlags(c, EntityStore.LIVE | EntityStore.CAN_MOVE_ANY));
+        assertFalse(store.hasFlags(c, EntityStore.HAS_GRAVITY));
+        assertFalse(store.hasFlags(c, EntityStore.STATIC));
+        assertEquals(7, store.getPx(b));
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testFreeingTwiceFails() {
+        EntityStore store = new EntityStore(4);
+        int handle = store.allocate(0, 0, 0, 0, 60, 60);
+        store.free(handle);
+        store.free(handle);
+    }
+    
+    @Test
+    public void testGrowsPastInitialCapacity() {
+        EntityStore store = new EntityStore(2);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, store.allocate(i, -i, i % 7, 0, 60, i + 1));
+            store.setFlags(i, EntityStore.HAS_GRAVITY, i % 2 == 0);
+        }
+        assertEquals(100, store.getLiveCount());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, store.getPx(i));
+            assertEquals(-i, store.getPy(i));
+            assertEquals(i % 7, store.getVx(i));
+            assertEquals(i + 1, store.getHeight(i));
+            assertEquals(i % 2 == 0, store.hasFlags(i, EntityStore.HAS_GRAVITY));
+        }
+    }
+    
+    @Test
+    public void testFlagsAreKeptPerHandle() {
+        EntityStore store = new EntityStore(4);
+        int a = store.allocate(0, 0, 0, 0, 60, 60);
+        int b = store.allocate(0, 0, 0, 0, 60, 60);
+        store.setFlags(a, EntityStore.CAN_MOVE_LEFT | EntityStore.CAN_MOVE_UP, false);
+        store.setFlags(b, EntityStore.ASLEEP, true);
+        
+        assertFalse(store.hasFlags(a, EntityStore.CAN_MOVE_LEFT));
+        assertFalse(store.hasFlags(a, EntityStore.CAN_MOVE_UP));
+        assertTrue(store.hasFlags(a, EntityStore.CAN_MOVE_RIGHT | EntityStore.CAN_MOVE_DOWN));
+        assertFalse(store.hasFlags(a, EntityStore.ASLEEP));
+        assertTrue(store.hasFlags(b, EntityStore.CAN_MOVE_ANY | EntityStore.ASLEEP));
+        // every bit in the mask has to be set
+        assertFalse(store.hasFlags(a, EntityStore.CAN_MOVE_ANY));
+    }
+    
+    @Test
+    public void testStaticChangesAreCounted() {
+        EntityStore store = new EntityStore(4);
+        int handle = store.allocate(0, 0, 0, 0, 60, 60);
+        long version = store.getStaticVersion();
+        store.setFlags(handle, EntityStore.STATIC, true);
+        assertTrue(store.getStaticVersion() > version);
+        
+        version = store.getStaticVersion();
+        store.integrate(GRAVITY);
+        assertEquals("standing still", version, store.getStaticVersion());
+        store.setVx(handle, 5);
+        store.integrate(GRAVITY);
+        assertTrue(store.getStaticVersion() > version);
+        
+        version = store.getStaticVersion();
+        store.free(handle);
+        assertTrue(store.getStaticVersion() > version);
+    }
+    
+    @Test
+    public void testIntegrateOnlyDropsObjectsWithGravity() {
+        EntityStore store = new EntityStore(4);
+        int floating = store.allocate(0, 100, 2, 0, 60, 60);
+        int falling = store.allocate(0, 100, 2, 0, 60, 60);
+        int landed = store.allocate(0, 100, 2, 0, 60, 60);
+        int asleep = store.allocate(0, 100, 2, 0, 60, 60);
+        int freed = store.allocate(0, 100, 2, 0, 60, 60);
+        for (int handle : new int[] { falling, landed, asleep, freed }) {
+            store.setFlags(handle, EntityStore.HAS_GRAVITY, true);
+        }
+        store.setFlags(landed, EntityStore.CAN_MOVE_DOWN, false);
+        store.setFlags(asleep, EntityStore.ASLEEP, true);
+        store.free(freed);
+        
+        for (int tick = 1; tick <= 3; tick++) {
+            store.integrate(GRAVITY);
+            assertEquals(2 * tick, store.getPx(floating));
+            assertEquals(100, store.getPy(floating));
+            assertEquals(GRAVITY * tick, store.getVy(falling));
+            assertEquals(2 * tick, store.getPx(landed));
+            assertEquals(100, store.getPy(landed));
+            assertEquals(0, store.getPx(asleep));
+            assertEquals(100, store.getPy(asleep));
+            assertEquals(0, store.getPx(freed));
+        }
+        assertEquals(100 - 1 - 2 - 3, store.getPy(falling));
+        assertEquals(100 - 1 - 2, store.getPrevPy(falling));
+    }
+    
+    @Test
+    public void testRestoreUndoesAllocationsAndFrees() {
+        EntityStore store = new EntityStore(2);
+        int a = store.allocate(1, 1, 0, 0, 60, 60);
+        int b = store.allocate(2, 2, 0, 0, 60, 60);
+        store.free(a);
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        store.save(buffer);
+        long hash = store.getStateHash();
+        
+        store.setPx(b, 50);
+        store.allocate(3, 3, 0, 0, 60, 60);
+        store.allocate(4, 4, 0, 0, 60, 60);
+        buffer.flip();
+        store.restore(buffer);
+        assertEquals(hash, store.getStateHash());
+        assertEquals(1, store.getLiveCount());
+        assertEquals(2, store.getPx(b));
+        // the freed handle is still the next one handed out
+        assertEquals(a, store.allocate(5, 5, 0, 0, 60, 60));
+    }
+}
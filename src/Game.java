@@ -6,6 +6,7 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.io.IOException;
 
 import javax.swing.*;
 
@@ -17,10 +18,25 @@ import javax.swing.*;
  * This class is the main entry point to the game. Its purpose is to set up the
  * drawing canvas and initialize the graphical elements of the game, such as buttons
  * and status labels.
+ * 
+ * Usage: java Game [--record <file>] [--replay <file>] [--profile <file>]
+ * --record saves each attempt at a level to the file (see InputRecording), --replay
+ * starts by playing a saved attempt back, and --profile times every tick and frame and
+ * saves the statistics to the file (see TickProfiler) when the game exits.
  * @author Jack Harkins
  *
  */
 public class Game implements Runnable {
+    
+    private final String recordFilename;
+    private final InputRecording replay;
+    private final String profileFilename;
+    
+    public Game(String recordFilename, InputRecording replay, String profileFilename) {
+        this.recordFilename = recordFilename;
+        this.replay = replay;
+        this.profileFilename = profileFilename;
+    }
 
     /* (non-Javadoc)
      * @see java.lang.Runnable#run()
@@ -117,14 +133,50 @@ public class Game implements Runnable {
         mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         mainFrame.setVisible(true);
         
-        court.reset();
+        court.setRecordFilename(recordFilename);
+        if (profileFilename != null) {
+            court.setProfileFilename(profileFilename);
+        }
+        if (replay != null) {
+            court.replay(replay);
+        } else {
+            court.reset();
+        }
     }
 
     /**
      * @param args
      */
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(new Game());
+        String recordFilename = null;
+        InputRecording replay = null;
+        String profileFilename = null;
+        if (args.length % 2 != 0) {
+            usage();
+        }
+        for (int i = 0; i < args.length; i += 2) {
+            if (args[i].equals("--record")) {
+                recordFilename = args[i + 1];
+            } else if (args[i].equals("--replay")) {
+                try {
+                    replay = InputRecording.read(args[i + 1]);
+                } catch (IOException e) {
+                    System.err.println("Can't read " + args[i + 1] + ": " + e.getMessage());
+                    System.exit(1);
+                }
+            } else if (args[i].equals("--profile")) {
+                profileFilename = args[i + 1];
+            } else {
+                usage();
+            }
+        }
+        SwingUtilities.invokeLater(new Game(recordFilename, replay, profileFilename));
+    }
+    
+    private static void usage() {
+        System.err.println("Usage: java Game [--record <file>] [--replay <file>] "
+                + "[--profile <file>]");
+        System.exit(2);
     }
 
 }
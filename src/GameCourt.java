@@ -2,21 +2,17 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
-import java.net.URL;
 import javax.sound.sampled.*;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.List;
-import java.util.LinkedList;
+import java.util.Arrays;
 
 /**
  * GameCourt.java
- * GameCourt handles the core state of the game, including the game objects currently
- * in play, whether or not the game is paused, the current keys being pressed, and the updating
- * of game state due to collisions and other game events.
+ * GameCourt is the Swing front end of the game. It owns the GameWorld being played and
+ * handles whether or not the game is paused, the current keys being pressed, drawing,
+ * music, and the dialogs shown when the player wins or runs out of lives.
  * @author Jack Harkins
  */
 
@@ -25,97 +21,228 @@ public class GameCourt extends JPanel {
     
     private static final int COURT_WIDTH = 800;
     private static final int COURT_HEIGHT = 600;
+    // Length of one simulation step. Velocities and gravity are per step, so changing this
+    // changes the speed of the game.
     private static final int TIMER_INTERVAL = 15;
-    private static final int MOVE_VELOCITY = 6;
-    private static final int LAND_GRAVITY = -1;
+    private static final int SLOW_MOTION_INTERVAL = 200;
     private static final int DEFAULT_NUM_LIVES = 5;
-    private static final int FALL_DEATH_THRESHOLD = -50;
+    // Number of parsed levels kept in memory for restarting without reading the file
+    private static final int LEVEL_CACHE_SIZE = 4;
+    // Only the part of a level within a screen of the view is in play, so that long
+    // levels take no more memory or time per tick than short ones
+    private static final int ACTIVE_WINDOW = COURT_WIDTH;
+    // Enemies this far from the player can't be seen, so they sleep until the player
+    // comes back, carrying on their patrols as if they'd been awake
+    private static final int SLEEP_DISTANCE = COURT_WIDTH;
+    
+    private static final String BACKGROUND_IMAGE = "jungleBackground.png";
+    private static final String GAME_OVER_IMAGE = "gameOverScreen.png";
+    private static final String TITLE_MUSIC = "title.wav";
+    private static final String LEVEL_MUSIC = "jungleGroove.wav";
+    private static final String GAME_OVER_MUSIC = "gameOver.wav";
     
     private int cumulativeNumLives; // save # of lives after death
     
-    // Game objects 
-    private Player activePlayer;  
-    private List<Enemy> enemyList;
-    private List<TerrainBlock> terrainBlockList;
-    private List<PowerUp> powerUpList;
+    // Game objects and the rules that update them. Replaced, holding worldLock, each
+    // time a level finishes loading.
+    private GameWorld world;
+    private final LevelCache levelCache = new LevelCache(LEVEL_CACHE_SIZE);
+    
+    // Levels, sprites and sounds are loaded in the background so that the window keeps
+    // responding. Only used on the EDT.
+    private final LevelLoader levelLoader = new LevelLoader(levelCache, COURT_WIDTH,
+            ACTIVE_WINDOW, Arrays.asList(BACKGROUND_IMAGE, GAME_OVER_IMAGE),
+            Arrays.asList(TITLE_MUSIC, LEVEL_MUSIC, GAME_OVER_MUSIC));
+    private final LevelLoader.Listener loadListener;
+    private LevelLoader.Load currentLoad; // the load in progress, if any
+    private LevelLoader.Load awaitingFirstFrame; // loaded, but not drawn yet
+    private volatile LevelLoader.Load lastLoad; // the level being played, for GameMetrics
     
     // Game state labels
     private final JLabel status;
     private final JLabel lives;
     private final JLabel bananas;
     private final JLabel enemiesRemaining;
-    private final Timer loopTimer;
-    private String fileInputMode;
     
-    // Audio
+    // The game loop runs tick() on its own thread. Everything that touches game objects
+    // holds worldLock.
+    private final GameLoop loop;
+    private final Object worldLock = new Object();
+    private final Runnable presentFrame;
+    
+    // Audio, null until the loader has opened it, or if it couldn't be
     private Clip titleMusic;
     private Clip levelMusic;
     private Clip gameOverMusic;
     
     // Drawing and backgrounds
-    private int cameraOffsetX;
     private BufferedImage backgroundImage;
     private BufferedImage gameOverScreen;
     private BufferedImage titleScreen;
     
-    private boolean atTitleScreen;
-    private boolean atGameOverScreen;
+    // Frames are drawn by the game loop into the back buffer, then swapped with the
+    // front buffer, which paintComponent() copies to the screen
+    private BufferedImage backBuffer;
+    private BufferedImage frontBuffer;
+    private final Object frameLock = new Object();
+    private final WorldRenderer renderer = new WorldRenderer(COURT_WIDTH, COURT_HEIGHT);
+    
+    // Status bar values captured with each frame, shown by presentFrame on the EDT
+    private volatile int hudLives;
+    private volatile int hudBananas;
+    private volatile int hudEnemies;
+    private int shownStatsVersion;
+    
+    // Values currently shown by the labels, so that they're only rebuilt when one changes
+    private int shownLives = -1;
+    private int shownBananas = -1;
+    private int shownEnemies = -1;
+    
+    private volatile boolean atTitleScreen;
+    private volatile boolean atGameOverScreen;
     
-    private Timer makeTimer(int interval) {
-        return new Timer(interval, new ActionListener() {
-            public void actionPerformed(ActionEvent e) {
+    // Keys are turned into GameWorld.INPUT_ bits as they're pressed and handed to the
+    // world once per tick, so that a run can be recorded and played back exactly.
+    // Guarded by worldLock.
+    private int heldDirection;
+    private boolean jumpPressed;
+    // Each attempt at a level is recorded if recordFilename is set, and overwrites the
+    // last. While replaying, input comes from the recording instead of the keyboard.
+    // Guarded by worldLock.
+    private String recordFilename;
+    private InputRecording recording;
+    private InputRecording replay;
+    
+    // Times each phase of a tick and frame while the overlay is shown (O), or for the
+    // whole run if the statistics are to be saved when the game exits
+    private final TickProfiler profiler = new TickProfiler();
+    private volatile boolean showProfile;
+    private volatile String profileFilename;
+    private static final Font PROFILE_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    
+    private GameLoop makeLoop(int interval) {
+        return new GameLoop(new GameLoop.Client() {
+            @Override
+            public void step() {
                 if (!atTitleScreen && !atGameOverScreen) {
                     tick();
                 }
-                repaint();
             }
-        });
+            
+            @Override
+            public void render(double alpha) {
+                if (!atTitleScreen && !atGameOverScreen) {
+                    renderFrame(alpha);
+                }
+                SwingUtilities.invokeLater(presentFrame);
+            }
+        }, worldLock, interval, getDisplayRefreshRate());
+    }
+    
+    private static int getDisplayRefreshRate() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return 60;
+        }
+        int refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+        return (refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN) ? 60 : refreshRate;
     }
     
     public GameCourt(JLabel status, JLabel lives, JLabel bananas, JLabel enemiesRemaining) {
         setBorder(BorderFactory.createLineBorder(Color.BLACK));
-        loopTimer = makeTimer(TIMER_INTERVAL);
+        // counting starts once it's turned on over JMX
+        CollisionStats.register();
+        world = new GameWorld(COURT_WIDTH);
+        loop = makeLoop(TIMER_INTERVAL);
         atTitleScreen = true;
+        presentFrame = new Runnable() {
+            @Override
+            public void run() {
+                long time = profiler.start();
+                setNumLives(hudLives);
+                setNumBananas(hudBananas);
+                setNumEnemies(hudEnemies);
+                if (shownStatsVersion != loop.getStatsVersion() && !loop.isPaused()) {
+                    shownStatsVersion = loop.getStatsVersion();
+                    setPanelStatus(String.format("Running (%.0f steps/s, %.0f fps, %d dropped)",
+                            loop.getSimHz(), loop.getRenderFps(), loop.getDroppedSteps()));
+                }
+                repaint();
+                profiler.lap(TickProfiler.Phase.HUD, time);
+            }
+        };
+        loadListener = new LevelLoader.Listener() {
+            @Override
+            public void progress(LevelLoader.Load load) {
+                repaint();
+            }
+            
+            @Override
+            public void loaded(final LevelLoader.Load load) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        finishLoading(load);
+                    }
+                });
+            }
+            
+            @Override
+            public void failed(final LevelLoader.Load load, final Exception e) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        loadFailed(load, e);
+                    }
+                });
+            }
+        };
         
         setFocusable(true);
         addKeyListener(new KeyAdapter() {
             @Override
             public void keyPressed(KeyEvent e) {
-                if (!activePlayer.isAlive()) {
-                    return;
+                synchronized (worldLock) {
+                    handleKeyPressed(e);
                 }
+            }
+            
+            private void handleKeyPressed(KeyEvent e) {
                 int keyCode = e.getKeyCode();
-                if (keyCode == KeyEvent.VK_LEFT && activePlayer.canMoveLeft()) {
-                    activePlayer.setIsMovingLeft(true);
-                    activePlayer.setIsMovingRight(false);
-                    
-                } else if (keyCode == KeyEvent.VK_RIGHT && activePlayer.canMoveRight()) {
-                    activePlayer.setIsMovingLeft(false);
-                    activePlayer.setIsMovingRight(true);
+                // the last direction pressed wins
+                if (keyCode == KeyEvent.VK_LEFT) {
+                    heldDirection = GameWorld.INPUT_LEFT;
+                } else if (keyCode == KeyEvent.VK_RIGHT) {
+                    heldDirection = GameWorld.INPUT_RIGHT;
                 } else if (keyCode == KeyEvent.VK_P) {
                     setPauseState(!isPaused());
                 } else if (keyCode == KeyEvent.VK_J) {
-                    if (activePlayer.canJump()) {
-                        activePlayer.jump();
-                    }
+                    jumpPressed = true;
                 }
                 
                 // debug: change the animation rate
                 else if (keyCode == KeyEvent.VK_T) {
-                    if (loopTimer.getDelay() != 200) {
-                        loopTimer.setDelay(200);
+                    if (loop.getStepMillis() != SLOW_MOTION_INTERVAL) {
+                        loop.setStepMillis(SLOW_MOTION_INTERVAL);
                     } else {
-                        loopTimer.setDelay(TIMER_INTERVAL);
+                        loop.setStepMillis(TIMER_INTERVAL);
                     }
                 }
+                
+                // debug: show how long each part of a tick and frame takes
+                else if (keyCode == KeyEvent.VK_O) {
+                    showProfile = !showProfile;
+                    profiler.setEnabled(showProfile || profileFilename != null);
+                }
             }
             
             @Override
             public void keyReleased(KeyEvent e) {
                 int keyCode = e.getKeyCode();
                 if (keyCode == KeyEvent.VK_LEFT || keyCode == KeyEvent.VK_RIGHT) {
-                    activePlayer.setIsMovingLeft(false);
-                    activePlayer.setIsMovingRight(false);
+                    synchronized (worldLock) {
+                        heldDirection = 0;
+                    }
                 }
             }
         });
@@ -125,16 +252,55 @@ public class GameCourt extends JPanel {
         this.bananas = bananas;
         this.enemiesRemaining = enemiesRemaining;
         
+        // the title screen is shown straight away; everything else comes with the level
         try {
-            backgroundImage = ImageIO.read(new File("jungleBackground.png"));
-            gameOverScreen = ImageIO.read(new File("gameOverScreen.png"));
-            titleScreen = ImageIO.read(new File("titleScreen.png"));
+            titleScreen = SpriteCache.get("titleScreen.png");
         } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, "Error loading background, game over screen, or"
-                    + " title screen");
+            JOptionPane.showMessageDialog(null, "Error loading title screen");
             System.exit(1);
         }
-       
+        // so that the title music can play while the player picks a level
+        levelLoader.loadSounds(new Runnable() {
+            @Override
+            public void run() {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        setMusic();
+                        repaint();
+                    }
+                });
+            }
+        });
+        // only if asked for with system properties; see GameMetrics
+        GameMetrics.start(new GameMetrics.Source() {
+            @Override
+            public double getTicksPerSecond() {
+                return loop.getSimHz();
+            }
+            
+            @Override
+            public double getFramesPerSecond() {
+                return loop.getRenderFps();
+            }
+            
+            @Override
+            public long getDroppedSteps() {
+                return loop.getDroppedSteps();
+            }
+            
+            @Override
+            public LevelLoader.Load getLastLoad() {
+                return lastLoad;
+            }
+            
+            @Override
+            public void countEntities(GameMetrics metrics) {
+                synchronized (worldLock) {
+                    metrics.countEntities(atTitleScreen ? null : world);
+                }
+            }
+        });
     }
     
     // Methods to update JLabels representing game state
@@ -144,19 +310,28 @@ public class GameCourt extends JPanel {
     }
     
     private void setNumLives(int numLives) {
-        lives.setText("Lives: " + numLives);
+        if (numLives != shownLives) {
+            shownLives = numLives;
+            lives.setText("Lives: " + numLives);
+        }
     }
     
     private void setNumBananas(int numBananas) {
-        bananas.setText("Bananas: " + numBananas);
+        if (numBananas != shownBananas) {
+            shownBananas = numBananas;
+            bananas.setText("Bananas: " + numBananas);
+        }
     }
     
     private void setNumEnemies(int numEnemies) {
-        enemiesRemaining.setText("Enemies remaining: " + enemyList.size());
+        if (numEnemies != shownEnemies) {
+            shownEnemies = numEnemies;
+            enemiesRemaining.setText("Enemies remaining: " + numEnemies);
+        }
     }
     
     public boolean isPaused() {
-        return !loopTimer.isRunning();
+        return loop.isPaused();
     }
     
     /**
@@ -165,10 +340,10 @@ public class GameCourt extends JPanel {
      */
     public void setPauseState(boolean paused) {
         if (paused) {
-            loopTimer.stop();
+            loop.pause();
             setPanelStatus("Paused");
         } else {
-            loopTimer.start();
+            loop.start();
             setPanelStatus("Running");
         }
     }
@@ -181,316 +356,367 @@ public class GameCourt extends JPanel {
         g.drawImage(titleScreen, 0, 0, COURT_WIDTH, COURT_HEIGHT, null);
     }
     
-    private void drawGameScreen(Graphics2D g) {
+    /**
+     * Draws the game objects as they were alpha of the way between the previous tick and
+     * the current one
+     */
+    private void drawGameScreen(Graphics2D g, double alpha) {
         // draw background
         g.setColor(Color.DARK_GRAY);
         g.fillRect(0, 0, COURT_WIDTH, COURT_HEIGHT);
         g.drawImage(backgroundImage, 0, 0, COURT_WIDTH, COURT_HEIGHT, null);
         
-        // draw game objects
-        for (TerrainBlock block : terrainBlockList) {
-            block.draw(g, cameraOffsetX);
+        // draw the game objects in view
+        renderer.draw(g, world, alpha);
+    }
+    
+    /**
+     * Draws the next frame off-screen on the game loop thread and makes it the frame
+     * that paintComponent() shows.
+     */
+    private void renderFrame(double alpha) {
+        if (backBuffer == null) {
+            backBuffer = new BufferedImage(COURT_WIDTH, COURT_HEIGHT, BufferedImage.TYPE_INT_RGB);
         }
-        for (Enemy enemy : enemyList) {
-            enemy.draw(g, cameraOffsetX);
+        long time = profiler.start();
+        Graphics2D g = backBuffer.createGraphics();
+        drawGameScreen(g, alpha);
+        if (showProfile) {
+            drawProfile(g);
         }
-        for (PowerUp powerUp : powerUpList) {
-            powerUp.draw(g, cameraOffsetX);
+        g.dispose();
+        profiler.lap(TickProfiler.Phase.DRAW, time);
+        
+        synchronized (frameLock) {
+            BufferedImage finished = backBuffer;
+            backBuffer = frontBuffer;
+            frontBuffer = finished;
         }
-        activePlayer.draw(g, cameraOffsetX);
+        hudLives = world.getPlayer().getNumLives();
+        hudBananas = world.getPlayer().getNumBananas();
+        hudEnemies = world.getRemainingEnemies();
     }
     
-    private void addGameObjs(List<String> tokens) {
-        if (tokens.isEmpty()) return;
-        if (tokens.size() == 1) {
-            fileInputMode = tokens.get(0);
-            return;
+    private void drawProfile(Graphics2D g) {
+        String[] lines = profiler.getSummaryLines();
+        g.setFont(PROFILE_FONT);
+        int lineHeight = g.getFontMetrics().getHeight();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, g.getFontMetrics().stringWidth(line));
         }
-        int px = Integer.parseInt(tokens.get(0));
-        int py = Integer.parseInt(tokens.get(1));
-        
-        switch (fileInputMode) {
-        case "TerrainBlock":
-            int width = Integer.parseInt(tokens.get(2));
-            int height = Integer.parseInt(tokens.get(3));
-            terrainBlockList.add(new TerrainBlock(px, py, width, height));
-            break;
-        case "Player":
-            // player starts with 5 lives by default
-            int numLives = (cumulativeNumLives == 0) ? DEFAULT_NUM_LIVES : cumulativeNumLives;
-            String imageName = tokens.get(2);
-            activePlayer = new Player(px, py, numLives, imageName);
-            break;
-        case "Enemy":
-            String enemyType = tokens.get(2);
-            if (enemyType.equals("diddy")) {
-                enemyList.add(new Enemy(px, py, Enemy.EnemyType.DIDDY));
-            }
-            break;
-        case "PowerUp":
-            String powerUpType = tokens.get(2);
-            switch (powerUpType) {
-            case "banana":
-                powerUpList.add(new PowerUp(px, py, PowerUp.PowerUpType.BANANA));
-                break;
-            case "bananaBunch":
-                powerUpList.add(new PowerUp(px, py, PowerUp.PowerUpType.BANANA_BUNCH));
-                break;
-            case "redBalloon":
-                powerUpList.add(new PowerUp(px, py, PowerUp.PowerUpType.RED_BALLOON));
-                break;
-            case "blueBalloon":
-                powerUpList.add(new PowerUp(px, py, PowerUp.PowerUpType.BLUE_BALLOON));
-                break;
-            case "greenBalloon":
-                powerUpList.add(new PowerUp(px, py, PowerUp.PowerUpType.GREEN_BALLOON));
-                break;
-            case "kongLetterK":
-                powerUpList.add(new PowerUp(px, py, PowerUp.PowerUpType.KONG_LETTER_K));
-                break;
-            case "kongLetterO":
-                powerUpList.add(new PowerUp(px, py, PowerUp.PowerUpType.KONG_LETTER_O));
-                break;
-            case "kongLetterN":
-                powerUpList.add(new PowerUp(px, py, PowerUp.PowerUpType.KONG_LETTER_N));
-                break;
-            case "kongLetterG":
-                powerUpList.add(new PowerUp(px, py, PowerUp.PowerUpType.KONG_LETTER_G));
-                break;
-            default:
-            }
-        default:
+        g.setColor(new Color(0, 0, 0, 160));
+        g.fillRect(5, 5, width + 10, lines.length * lineHeight + 10);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], 10, 10 + (i + 1) * lineHeight - 3);
         }
     }
     
     /**
-     * Resets the game to its initial state when starting the game or after the
-     * player has died.
+     * Resets the game to its initial state, asking the player which level to play.
+     * Used when starting a new game and after clearing a level.
      */
     public void reset() {
-
-        terrainBlockList = new LinkedList<>();
-        enemyList = new LinkedList<>();
-        powerUpList = new LinkedList<>();
-        
-        if (!isMusicInitialized()) {
-            try {
-                URL titleURL = new File("title.wav").toURI().toURL();
-                AudioInputStream title = AudioSystem.getAudioInputStream(titleURL);
-                titleMusic = AudioSystem.getClip();
-                titleMusic.open(title);
-                URL levelURL = new File("jungleGroove.wav").toURI().toURL();
-                AudioInputStream level = AudioSystem.getAudioInputStream(levelURL);
-                levelMusic = AudioSystem.getClip();
-                levelMusic.open(level);
-                URL gameOverURL = new File("gameOver.wav").toURI().toURL();
-                AudioInputStream gameOver = AudioSystem.getAudioInputStream(gameOverURL);
-                gameOverMusic = AudioSystem.getClip();
-                gameOverMusic.open(gameOver);
-             } catch (UnsupportedAudioFileException e) {
-                e.printStackTrace();
-             } catch (IOException e) {
-                e.printStackTrace();
-             } catch (LineUnavailableException e) {
-                e.printStackTrace();
-             }
-        }
         String filename = JOptionPane.showInputDialog(null, "Enter a level", 
                 "sampleDKCLevel.txt");
-        LevelParser parser = new LevelParser(filename);
-        while (parser.hasNext()) {
-            List<String> tokens = parser.readNextTokens();
-            addGameObjs(tokens);
+        startLevel(filename);
+    }
+    
+    /**
+     * Records each attempt at a level from now on, replacing the file each time.
+     * @param filename where to save recordings, or null to stop recording
+     */
+    public void setRecordFilename(String filename) {
+        synchronized (worldLock) {
+            recordFilename = filename;
         }
-        parser.close();
-
-        // Make sure that this component has the keyboard focus
-        requestFocusInWindow();
-        
-        cameraOffsetX = -activePlayer.getPx() + COURT_WIDTH / 2;
-        atTitleScreen = false;
-        setNumEnemies(enemyList.size());
-        loopTimer.start();
     }
     
-    private boolean isMusicInitialized() {
-        return titleMusic != null && levelMusic != null && gameOverMusic != null;
+    /**
+     * Times every tick and frame from now on, and saves the statistics for each phase
+     * (see TickProfiler.write()) when the game exits.
+     * @param filename where to save the statistics; CSV unless it ends in .json
+     */
+    public void setProfileFilename(final String filename) {
+        profileFilename = filename;
+        profiler.setEnabled(true);
+        Runtime.getRuntime().addShutdownHook(new Thread("Profile writer") {
+            @Override
+            public void run() {
+                try {
+                    profiler.write(filename);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
     }
-
-    private void checkCollisions() {
-        // can't jump unless touching terrain
-        // can move by default unless dead, touching or colliding
-        activePlayer.setJumpable(false);
-        if (activePlayer.isAlive()) {
-            activePlayer.makeMovable();
+    
+    /**
+     * Plays back a recording in place of the keyboard, then lets the player carry on
+     * from wherever the recording ends.
+     * @param recording a recording read with InputRecording.read()
+     */
+    public void replay(InputRecording recording) {
+        synchronized (worldLock) {
+            replay = recording;
+        }
+        cumulativeNumLives = recording.getNumLives();
+        startLevel(recording.getLevelFilename(), recording);
+    }
+    
+    /**
+     * Starts a level from the beginning. The level is loaded in the background while
+     * paintComponent() shows its progress, and the game starts once it is ready. A level
+     * that has been played before is set up from the copy in levelCache rather than read
+     * from its file again, so playing it again is quick even for large levels.
+     * @param filename the level file
+     */
+    private void startLevel(String filename) {
+        startLevel(filename, null);
+    }
+    
+    // Replays are loaded with the settings they were recorded with, so that they play out
+    // the same way
+    private void startLevel(String filename, InputRecording recording) {
+        long start = System.nanoTime();
+        loop.pause();
+        if (recording != null) {
+            currentLoad = levelLoader.load(recording, loadListener);
         } else {
-            activePlayer.makeImmovableHoriz();
+            // player starts with 5 lives by default
+            int numLives = (cumulativeNumLives == 0) ? DEFAULT_NUM_LIVES : cumulativeNumLives;
+            currentLoad = levelLoader.load(filename, numLives, loadListener);
         }
-        
-        // did the player collide with a block?
-        for (TerrainBlock block : terrainBlockList) {
-            CollisionDirection direction = activePlayer.getCollisionDirection(block);
-            if (activePlayer.isColliding(block)) {
-                activePlayer.collisionAction(block, direction);
-            } else if (activePlayer.isTouching(block)) {
-                activePlayer.touchAction(block, direction);
-            }
+        setPanelStatus("Loading " + filename);
+        repaint();
+        currentLoad.addBlockedNanos(System.nanoTime() - start);
+    }
+    
+    /**
+     * Hands a finished load over to the game loop. Runs on the EDT.
+     */
+    private void finishLoading(LevelLoader.Load load) {
+        if (load != currentLoad) {
+            return; // another level was asked for in the meantime
+        }
+        long start = System.nanoTime();
+        try {
+            // already decoded by the loader, so these are only lookups
+            backgroundImage = SpriteCache.get(BACKGROUND_IMAGE);
+            gameOverScreen = SpriteCache.get(GAME_OVER_IMAGE);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Error loading background or game over screen");
+            System.exit(1);
         }
+        setMusic();
         
-        for (Enemy enemy : enemyList) {
-            // did the player collide with an enemy?
-            CollisionDirection playerCollisionDirection = activePlayer.getCollisionDirection(enemy);
-            if (activePlayer.isAlive() && activePlayer.isColliding(enemy)) {
-                activePlayer.collisionAction(enemy, playerCollisionDirection);
-            }
-            
-            // did an enemy collide with a block?
-            for (TerrainBlock block : terrainBlockList) {
-                enemy.makeMovable();
-                CollisionDirection enemyCollisionDirection = enemy.getCollisionDirection(block);
-                if (enemy.isColliding(block)) {
-                    enemy.collisionAction(block, enemyCollisionDirection);
-                } else if (enemy.isTouching(block)) {
-                    enemy.touchAction(block, enemyCollisionDirection);
-                }
+        synchronized (worldLock) {
+            world = load.getWorld();
+            if (replay == null) {
+                world.setSleepDistance(SLEEP_DISTANCE);
+                world.setFastForwardSleepers(true);
+                // from the last checkpoint reached, or the start, without reloading
+                // anything
+                world.setRespawnAtCheckpoints(true);
             }
+            world.setProfiler(profiler);
+            atTitleScreen = false;
+            atGameOverScreen = false;
+            heldDirection = 0;
+            jumpPressed = false;
+            recording = (recordFilename != null)
+                    ? new InputRecording(load.getFilename(), load.getNumLives(), world) : null;
         }
+        synchronized (frameLock) {
+            frontBuffer = null; // don't show the last frame of the previous level
+        }
+        currentLoad = null;
+        awaitingFirstFrame = load;
+        lastLoad = load;
+
+        // Make sure that this component has the keyboard focus
+        requestFocusInWindow();
         
-        for (PowerUp powerUp : powerUpList) {
-            if (activePlayer.isColliding(powerUp)) {
-                activePlayer.collisionAction(powerUp, null);
-            }
+        setPanelStatus("Running");
+        setNumEnemies(world.getRemainingEnemies());
+        loop.start();
+        load.addBlockedNanos(System.nanoTime() - start);
+    }
+    
+    private void setMusic() {
+        titleMusic = levelLoader.getClip(TITLE_MUSIC);
+        levelMusic = levelLoader.getClip(LEVEL_MUSIC);
+        gameOverMusic = levelLoader.getClip(GAME_OVER_MUSIC);
+    }
+    
+    private void loadFailed(LevelLoader.Load load, Exception e) {
+        if (load != currentLoad) {
+            return;
         }
+        e.printStackTrace();
+        JOptionPane.showMessageDialog(null, "Error reading input level file!\n" + e.getMessage(),
+                "File read error", JOptionPane.ERROR_MESSAGE);
+        System.exit(1);
+    }
+
+    /**
+     * Asks the player whether to play again after clearing the level. Runs on the EDT
+     * while the game loop is paused.
+     */
+    private void showWinDialog() {
+        String message =  "No more enemies remain!\nYou win!\nPlay again?";
+        int choice = JOptionPane.showOptionDialog(null, message,
+                "Winner!", JOptionPane.YES_NO_OPTION, JOptionPane.INFORMATION_MESSAGE, null, 
+                new String[] {"Yes", "No"}, "Yes");
+        if (choice == 0) {
+            cumulativeNumLives = world.getPlayer().getNumLives();
+            reset();
+        } else {
+            System.exit(0);
+        }
+    }
+    
+    /**
+     * Tells the player they are out of lives, then shows the game over screen. Runs on
+     * the EDT while the game loop is paused.
+     */
+    private void showGameOverDialog() {
+        JOptionPane.showMessageDialog(null, "You are out of lives!", "Game over!", 
+                JOptionPane.WARNING_MESSAGE);
+        atGameOverScreen = true;
+        repaint();
     }
     
     private void tick() {
+        long time = profiler.start();
         // Check if no enemies remain. If so, the player wins.
-        if (enemyList.isEmpty()) {
-            String message =  "No more enemies remain!\nYou win!\nPlay again?";
-            int choice = JOptionPane.showOptionDialog(null, message,
-                    "Winner!", JOptionPane.YES_NO_OPTION, JOptionPane.INFORMATION_MESSAGE, null, 
-                    new String[] {"Yes", "No"}, "Yes");
-            if (choice == 0) {
-                cumulativeNumLives = activePlayer.getNumLives();
-                reset();
-            } else {
-                System.exit(0);
-            }
-        }
-        
-        // Check if player's death animation has finished
-        if (activePlayer.hasFinishedDying()) {
-            loopTimer.stop();
-            if (activePlayer.getNumLives() == 0) {
-                JOptionPane.showMessageDialog(null, "You are out of lives!", "Game over!", 
-                        JOptionPane.WARNING_MESSAGE);
-                atGameOverScreen = true;
-                repaint();
-                return;
-            }
-            String message = "You have been killed!\nYou have " + activePlayer.getNumLives() + 
-                    " lives remaining.\nContinue?";
-            int choice = JOptionPane.showOptionDialog(null, message,
-                    "Killed!", JOptionPane.YES_NO_OPTION, JOptionPane.INFORMATION_MESSAGE, null, 
-                    new String[] {"Yes", "No"}, "Yes");
-            if (choice == 0) {
-                cumulativeNumLives = activePlayer.getNumLives();
-                reset();
-            } else {
-                System.exit(0);
-            }
-        }
-        
-        // Check which enemies have died and remove them from play
-        List<Enemy> dead = new LinkedList<>();
-        for (Enemy enemy : enemyList) {
-            if (!enemy.isAlive()) {
-                dead.add(enemy);
-            }
+        // Dialogs have to be shown on the EDT, so stop the loop and hand over to it.
+        if (world.isCleared()) {
+            finishAttempt();
+            loop.pause();
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    showWinDialog();
+                }
+            });
+            return;
         }
-        enemyList.removeAll(dead);
         
-        // Similarly, check used powerups
-        List<PowerUp> claimed = new LinkedList<>();
-        for (PowerUp powerUp : powerUpList) {
-            if (powerUp.hasBeenClaimed()) {
-                claimed.add(powerUp);
-            }
+        // Check if the player has died with no lives left. Otherwise the world respawns
+        // them in place once the death animation has finished, without stopping the loop.
+        if (world.isOver()) {
+            finishAttempt();
+            loop.pause();
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    showGameOverDialog();
+                }
+            });
+            return;
         }
-        powerUpList.removeAll(claimed);
         
-        // Update player and camera positions
-        if (activePlayer.isMovingLeft() && activePlayer.canMoveLeft()) {
-            activePlayer.setVx(-MOVE_VELOCITY);
-            if (activePlayer.getPx() + cameraOffsetX <= 3 * COURT_WIDTH / 8) {
-                cameraOffsetX += MOVE_VELOCITY;
-            }
-        } else if (activePlayer.isMovingRight() && activePlayer.canMoveRight()) {
-            activePlayer.setVx(MOVE_VELOCITY);
-            if (activePlayer.getPx() + cameraOffsetX >= 5  * COURT_WIDTH / 8) {
-                cameraOffsetX -= MOVE_VELOCITY;
-            }
+        int input;
+        if (replay != null && world.getTickCount() < replay.getTickCount()) {
+            input = replay.getScript().getInput(world.getTickCount());
         } else {
-            activePlayer.setVx(0);
+            input = heldDirection | (jumpPressed ? GameWorld.INPUT_JUMP : 0);
         }
-        
-        // Make objects fall and move
-        for (Enemy enemy : enemyList) {
-            if (enemy.canMoveDown()) {
-                enemy.fall(LAND_GRAVITY);
-            }
-            enemy.move();
-        }
-        for (TerrainBlock block : terrainBlockList) {
-            block.move();
+        jumpPressed = false;
+        if (recording != null) {
+            recording.record(input);
         }
-        if (activePlayer.canMoveDown()) {
-            activePlayer.fall(LAND_GRAVITY);
+        world.step(input);
+        profiler.lap(TickProfiler.Phase.TICK, time);
+    }
+    
+    // Saves the recording of the attempt that just ended and checks a replay against its
+    // recording, showing the result in the status bar. Called on the game loop thread.
+    private void finishAttempt() {
+        if (replay != null) {
+            final String result = replay.matches(world) ? "Replay matches the recording"
+                    : "Replay diverged from the recording";
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    setPanelStatus(result);
+                }
+            });
+            replay = null;
         }
-        activePlayer.move();
-        
-        checkCollisions();
-        
-        // Kill enemies/player if they've fallen off the map.
-        for (Enemy enemy : enemyList) {
-            if (enemy.isAlive() && enemy.getPy() < FALL_DEATH_THRESHOLD) {
-                enemy.kill();
+        if (recording != null) {
+            recording.finish(world);
+            try {
+                recording.write(recordFilename);
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+            recording = null;
+        }
+    }
+    
+    private void showLoadingScreen(Graphics2D g, LevelLoader.Load load) {
+        showTitleScreen(g);
+        int barWidth = COURT_WIDTH / 2;
+        int barX = (COURT_WIDTH - barWidth) / 2;
+        int barY = COURT_HEIGHT - 60;
+        g.setColor(Color.BLACK);
+        g.fillRect(barX - 2, barY - 2, barWidth + 4, 20);
+        g.setColor(Color.YELLOW);
+        g.fillRect(barX, barY, (int) (barWidth * load.getProgress()), 16);
+        g.setColor(Color.WHITE);
+        g.drawString("Loading " + load.getFilename(), barX, barY - 8);
+    }
+    
+    private static void playMusic(Clip music) {
+        if (music != null && !music.isActive()) {
+            music.start();
         }
-        if (activePlayer.isAlive() && activePlayer.getPy() < FALL_DEATH_THRESHOLD) {
-            activePlayer.kill();
+    }
+    
+    private static void stopMusic(Clip music) {
+        if (music != null) {
+            music.stop();
         }
-        
-        // Update status bar
-        setNumLives(activePlayer.getNumLives());
-        setNumBananas(activePlayer.getNumBananas());
-        setNumEnemies(enemyList.size());
     }
     
     @Override
     public void paintComponent(Graphics g) {
+        long time = profiler.start();
         Graphics2D g2D = (Graphics2D) g;
         super.paintComponent(g);
         
-        if (atTitleScreen) {
+        if (currentLoad != null) {
+            showLoadingScreen(g2D, currentLoad);
+        } else if (atTitleScreen) {
             showTitleScreen(g2D);
-            if (!titleMusic.isActive()) {
-                titleMusic.start();
-            }
+            playMusic(titleMusic);
         } else if (atGameOverScreen) {
             showGameOverScreen(g2D);
-            if (!gameOverMusic.isActive()) {
-                levelMusic.stop();
-                gameOverMusic.start();
+            if (gameOverMusic != null && !gameOverMusic.isActive()) {
+                stopMusic(levelMusic);
+                playMusic(gameOverMusic);
             }
         } else {
-            if (!levelMusic.isActive()) {
-                titleMusic.stop();
-                levelMusic.start();
+            if (levelMusic != null && !levelMusic.isActive()) {
+                stopMusic(titleMusic);
+                playMusic(levelMusic);
+            }
+            synchronized (frameLock) {
+                if (frontBuffer != null) {
+                    g2D.drawImage(frontBuffer, 0, 0, null);
+                    if (awaitingFirstFrame != null) {
+                        // see LevelLoader.Load.getReport(), also shown by GameMetrics
+                        awaitingFirstFrame.firstFrameShown();
+                        awaitingFirstFrame = null;
+                    }
+                }
             }
-            drawGameScreen(g2D);
         }
-        
+        profiler.lap(TickProfiler.Phase.PAINT, time);
     }
     
     @Override
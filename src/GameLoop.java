@@ -0,0 +1,215 @@
+/**
+ * GameLoop.java
+ * Drives the game on its own thread using a fixed timestep. Simulation steps always advance
+ * the game by the same amount of time, no matter how long painting or garbage collection
+ * takes; rendering happens once per pass through the loop and is given how far the clock is
+ * between the last step and the next one so that it can interpolate positions.
+ * @author Jack Harkins
+ *
+ */
+public class GameLoop implements Runnable {
+
+    /**
+     * The two things a GameLoop does, implemented by whatever owns the game state.
+     * Both are called on the loop thread while holding the loop's lock.
+     */
+    public interface Client {
+        /**
+         * Advances the game by one fixed timestep
+         */
+        void step();
+
+        /**
+         * Draws the current state of the game
+         * @param alpha fraction of a timestep elapsed since the last step, in [0, 1)
+         */
+        void render(double alpha);
+    }
+
+    // After a long stall (GC pause, window drag, breakpoint) we give up on catching up
+    // rather than running hundreds of steps back to back
+    private static final int MAX_STEPS_PER_FRAME = 5;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final Client client;
+    private final Object lock;
+    private final long frameNanos;
+    private volatile long stepNanos;
+    private boolean paused;
+    private Thread thread;
+
+    // Statistics for the last full second
+    private volatile double simHz;
+    private volatile double renderFps;
+    private volatile long droppedSteps;
+    private volatile int statsVersion;
+
+    /**
+     * @param client the game to step and render
+     * @param lock lock held during every step and render; anything else touching game
+     * state must hold it too
+     * @param stepMillis length of one simulation step
+     * @param maxFps upper bound on rendered frames per second, normally the display's
+     * refresh rate
+     */
+    public GameLoop(Client client, Object lock, int stepMillis, int maxFps) {
+        this.client = client;
+        this.lock = lock;
+        this.stepNanos = stepMillis * NANOS_PER_MILLI;
+        this.frameNanos = NANOS_PER_SECOND / maxFps;
+        this.paused = true;
+    }
+
+    /**
+     * Starts or resumes stepping the game.
+     */
+    public void start() {
+        synchronized (lock) {
+            paused = false;
+            if (thread == null) {
+                thread = new Thread(this, "Game loop");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops stepping the game. Once this returns, no step or render is in progress and
+     * none will start until start() is called. Safe to call from within step().
+     */
+    public void pause() {
+        synchronized (lock) {
+            paused = true;
+        }
+    }
+
+    /**
+     *
+     * @return is the loop currently paused?
+     */
+    public boolean isPaused() {
+        synchronized (lock) {
+            return paused;
+        }
+    }
+
+    /**
+     * Changes the length of a simulation step, e.g. for slow motion.
+     * @param stepMillis new step length
+     */
+    public void setStepMillis(int stepMillis) {
+        stepNanos = stepMillis * NANOS_PER_MILLI;
+    }
+
+    /**
+     *
+     * @return the current simulation step length
+     */
+    public int getStepMillis() {
+        return (int) (stepNanos / NANOS_PER_MILLI);
+    }
+
+    /**
+     *
+     * @return simulation steps actually run during the last second
+     */
+    public double getSimHz() {
+        return simHz;
+    }
+
+    /**
+     *
+     * @return frames rendered during the last second
+     */
+    public double getRenderFps() {
+        return renderFps;
+    }
+
+    /**
+     *
+     * @return total simulation steps skipped because the loop fell too far behind
+     */
+    public long getDroppedSteps() {
+        return droppedSteps;
+    }
+
+    /**
+     *
+     * @return a counter that changes every time the statistics above are updated
+     */
+    public int getStatsVersion() {
+        return statsVersion;
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long accumulator = 0;
+        long windowStart = previous;
+        int windowSteps = 0;
+        int windowFrames = 0;
+
+        while (true) {
+            synchronized (lock) {
+                while (paused) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    // don't try to catch up on the time spent paused
+                    previous = System.nanoTime();
+                    accumulator = 0;
+                }
+
+                long now = System.nanoTime();
+                accumulator += now - previous;
+                previous = now;
+
+                long step = stepNanos;
+                int steps = 0;
+                while (accumulator >= step && steps < MAX_STEPS_PER_FRAME && !paused) {
+                    client.step();
+                    accumulator -= step;
+                    steps++;
+                }
+                if (accumulator >= step) {
+                    droppedSteps += accumulator / step;
+                    accumulator %= step;
+                }
+                windowSteps += steps;
+
+                if (paused) {
+                    continue;
+                }
+                client.render((double) accumulator / step);
+                windowFrames++;
+            }
+
+            long now = System.nanoTime();
+            if (now - windowStart >= NANOS_PER_SECOND) {
+                double seconds = (double) (now - windowStart) / NANOS_PER_SECOND;
+                simHz = windowSteps / seconds;
+                renderFps = windowFrames / seconds;
+                statsVersion++;
+                windowStart = now;
+                windowSteps = 0;
+                windowFrames = 0;
+            }
+
+            // Sleep until the next frame is due, but never past the next step
+            long untilStep = stepNanos - accumulator - (now - previous);
+            long sleepNanos = Math.min(frameNanos, Math.max(untilStep, 0));
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / NANOS_PER_MILLI, (int) (sleepNanos % NANOS_PER_MILLI));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * GameMetrics.java
+ * The health of a running game, for deployments that run for days: steps and frames per
+ * second, dropped steps, the number of each kind of object in play, how long the last
+ * level took to load, and the heap and garbage collector. Everything is read from the
+ * game when asked for, so nothing is added to a tick.
+ * 
+ * Neither way of reading the metrics is on by default. Start the game with
+ * -Ddkc.metrics.jmx=true to register them as the MBean dkc:type=GameMetrics, and with
+ * -Ddkc.metrics.port=<port> to serve them in the Prometheus text format at
+ * http://localhost:<port>/metrics. The HTTP server only listens on the loopback address.
+ * @author Jack Harkins
+ *
+ */
+public class GameMetrics implements GameMetricsMBean {
+    
+    /**
+     * Where the metrics come from, normally a GameCourt. Called on JMX and HTTP threads.
+     */
+    public interface Source {
+        double getTicksPerSecond();
+        
+        double getFramesPerSecond();
+        
+        long getDroppedSteps();
+        
+        /**
+         * 
+         * @return the last level to have finished loading, or null if none has
+         */
+        LevelLoader.Load getLastLoad();
+        
+        /**
+         * Calls countEntities() on the metrics with the world being played, holding
+         * whatever lock guards it
+         */
+        void countEntities(GameMetrics metrics);
+    }
+    
+    public static final String OBJECT_NAME = "dkc:type=GameMetrics";
+    public static final String JMX_PROPERTY = "dkc.metrics.jmx";
+    public static final String PORT_PROPERTY = "dkc.metrics.port";
+    
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    
+    private final Source source;
+    private HttpServer server;
+    
+    // Counted from the world by countEntities(). Guarded by this.
+    private long tickCount;
+    private int terrainBlocks;
+    private int enemies;
+    private int powerUps;
+    private int checkpoints;
+    private int remainingEnemies;
+    
+    public GameMetrics(Source source) {
+        this.source = source;
+    }
+    
+    /**
+     * Makes the metrics available in whichever ways the system properties ask for.
+     * @param source where the metrics come from
+     * @return the metrics, or null if neither way is turned on
+     */
+    public static GameMetrics start(Source source) {
+        boolean jmx = Boolean.getBoolean(JMX_PROPERTY);
+        Integer port = Integer.getInteger(PORT_PROPERTY);
+        if (!jmx && port == null) {
+            return null;
+        }
+        GameMetrics metrics = new GameMetrics(source);
+        if (jmx) {
+            metrics.register();
+        }
+        if (port != null) {
+            try {
+                metrics.startHttpServer(port);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return metrics;
+    }
+    
+    /**
+     * Registers the metrics as dkc:type=GameMetrics. Only one GameMetrics can be
+     * registered; later ones are ignored.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // already registered
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Serves the metrics at /metrics on the loopback address, from a thread that doesn't
+     * keep the game running.
+     * @param port the port to listen on, or 0 for any free port
+     * @return the port listened on
+     * @throws IOException if the port can't be listened on
+     */
+    public synchronized int startHttpServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                port), 0);
+        server.createContext("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = getPrometheusText().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    out.write(body);
+                } finally {
+                    out.close();
+                }
+            }
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Metrics server");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
+        server.start();
+        return server.getAddress().getPort();
+    }
+    
+    /**
+     * Stops the HTTP server, if it was started.
+     */
+    public synchronized void stopHttpServer() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+    
+    /**
+     * Records the number of objects of each kind in a world. Called by the source.
+     * @param world the world being played, or null if there isn't one
+     */
+    synchronized void countEntities(GameWorld world) {
+        if (world == null || world.getPlayer() == null) {
+            tickCount = 0;
+            terrainBlocks = 0;
+            enemies = 0;
+            powerUps = 0;
+            checkpoints = 0;
+            remainingEnemies = 0;
+            return;
+        }
+        tickCount = world.getTickCount();
+        terrainBlocks = world.getTerrainBlocks().size();
+        enemies = world.getEnemies().size();
+        powerUps = world.getPowerUps().size();
+        checkpoints = world.getCheckpoints().size();
+        remainingEnemies = world.getRemainingEnemies();
+    }
+    
+    @Override
+    public double getTicksPerSecond() {
+        return source.getTicksPerSecond();
+    }
+    
+    @Override
+    public double getFramesPerSecond() {
+        return source.getFramesPerSecond();
+    }
+    
+    @Override
+    public long getDroppedSteps() {
+        return source.getDroppedSteps();
+    }
+    
+    @Override
+    public synchronized long getTickCount() {
+        source.countEntities(this);
+        return tickCount;
+    }
+    
+    @Override
+    public synchronized int getTerrainBlocks() {
+        source.countEntities(this);
+        return terrainBlocks;
+    }
+    
+    @Override
+    public synchronized int getEnemies() {
+        source.countEntities(this);
+        return enemies;
+    }
+    
+    @Override
+    public synchronized int getPowerUps() {
+        source.countEntities(this);
+        return powerUps;
+    }
+    
+    @Override
+    public synchronized int getCheckpoints() {
+        source.countEntities(this);
+        return checkpoints;
+    }
+    
+    @Override
+    public synchronized int getRemainingEnemies() {
+        source.countEntities(this);
+        return remainingEnemies;
+    }
+    
+    @Override
+    public String getLevel() {
+        LevelLoader.Load load = source.getLastLoad();
+        return (load == null) ? "" : load.getFilename();
+    }
+    
+    @Override
+    public long getLastLoadMillis() {
+        LevelLoader.Load load = source.getLastLoad();
+        return (load == null) ? -1 : load.getLoadMillis();
+    }
+    
+    @Override
+    public long getLastTimeToFirstFrameMillis() {
+        LevelLoader.Load load = source.getLastLoad();
+        return (load == null) ? -1 : load.getTimeToFirstFrameMillis();
+    }
+    
+    @Override
+    public long getLastLoadBlockedMillis() {
+        LevelLoader.Load load = source.getLastLoad();
+        return (load == null) ? -1 : load.getBlockedMillis();
+    }
+    
+    @Override
+    public long getHeapUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+    
+    /**
+     * 
+     * @return the most the heap can grow to, or -1 if there is no limit
+     */
+    @Override
+    public long getHeapMaxBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+    }
+    
+    /**
+     * 
+     * @return number of garbage collections, by every collector, since the game started
+     */
+    @Override
+    public long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+    
+    /**
+     * 
+     * @return time spent collecting garbage since the game started, by every collector
+     */
+    @Override
+    public long getGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(gc.getCollectionTime(), 0);
+        }
+        return millis;
+    }
+    
+    /**
+     * 
+     * @return every metric in the Prometheus text exposition format
+     */
+    public synchronized String getPrometheusText() {
+        source.countEntities(this);
+        StringBuilder out = new StringBuilder();
+        gauge(out, "dkc_ticks_per_second", "Simulation steps run during the last second",
+                getTicksPerSecond());
+        gauge(out, "dkc_frames_per_second", "Frames rendered during the last second",
+                getFramesPerSecond());
+        counter(out, "dkc_dropped_steps_total",
+                "Steps skipped because the game loop fell behind", getDroppedSteps());
+        counter(out, "dkc_ticks_total", "Ticks of the level being played", tickCount);
+        out.append("# HELP dkc_entities Objects in play, by kind\n");
+        out.append("# TYPE dkc_entities gauge\n");
+        entities(out, "terrain", terrainBlocks);
+        entities(out, "enemy", enemies);
+        entities(out, "power_up", powerUps);
+        entities(out, "checkpoint", checkpoints);
+        gauge(out, "dkc_remaining_enemies", "Enemies left to defeat", remainingEnemies);
+        LevelLoader.Load load = source.getLastLoad();
+        if (load != null) {
+            gauge(out, "dkc_level_load_seconds", "Time taken to load the last level",
+                    load.getLoadMillis() / 1000.0);
+            gauge(out, "dkc_level_first_frame_seconds",
+                    "Time from asking for the last level until its first frame was shown",
+                    load.getTimeToFirstFrameMillis() / 1000.0);
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        gauge(out, "dkc_heap_used_bytes", "Heap in use", heap.getUsed());
+        gauge(out, "dkc_heap_max_bytes", "Largest the heap can grow to", heap.getMax());
+        counter(out, "dkc_gc_collections_total", "Garbage collections", getGcCount());
+        counter(out, "dkc_gc_seconds_total", "Time spent collecting garbage",
+                getGcMillis() / 1000.0);
+        return out.toString();
+    }
+    
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        metric(out, name, "gauge", help, value);
+    }
+    
+    private static void counter(StringBuilder out, String name, String help, double value) {
+        metric(out, name, "counter", help, value);
+    }
+    
+    private static void metric(StringBuilder out, String name, String type, String help,
+            double value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(format(value)).append('\n');
+    }
+    
+    private static void entities(StringBuilder out, String kind, int count) {
+        out.append("dkc_entities{kind=\"").append(kind).append("\"} ").append(count)
+                .append('\n');
+    }
+    
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
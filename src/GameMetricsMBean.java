@@ -0,0 +1,29 @@
+/**
+ * GameMetricsMBean.java
+ * The attributes of GameMetrics shown over JMX, e.g. in JConsole under
+ * dkc:type=GameMetrics.
+ * @author Jack Harkins
+ *
+ */
+public interface GameMetricsMBean {
+    double getTicksPerSecond();
+    double getFramesPerSecond();
+    long getDroppedSteps();
+    
+    long getTickCount();
+    int getTerrainBlocks();
+    int getEnemies();
+    int getPowerUps();
+    int getCheckpoints();
+    int getRemainingEnemies();
+    
+    String getLevel();
+    long getLastLoadMillis();
+    long getLastTimeToFirstFrameMillis();
+    long getLastLoadBlockedMillis();
+    
+    long getHeapUsedBytes();
+    long getHeapMaxBytes();
+    long getGcCount();
+    long getGcMillis();
+}
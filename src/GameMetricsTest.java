@@ -0,0 +1,129 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GameMetricsTest {
+    
+    private GameWorld world;
+    private GameMetrics metrics;
+    
+    @Before
+    public void setUp() throws IOException {
+        world = new GameWorld(800);
+        world.load("sampleDKCLevel.txt", 5);
+        for (int t = 0; t < 50; t++) {
+            world.step(GameWorld.INPUT_RIGHT);
+        }
+        metrics = new GameMetrics(new GameMetrics.Source() {
+            @Override
+            public double getTicksPerSecond() {
+                return 66.5;
+            }
+            
+            @Override
+            public double getFramesPerSecond() {
+                return 60;
+            }
+            
+            @Override
+            public long getDroppedSteps() {
+                return 3;
+            }
+            
+            @Override
+            public LevelLoader.Load getLastLoad() {
+                return null;
+            }
+            
+            @Override
+            public void countEntities(GameMetrics metrics) {
+                metrics.countEntities(world);
+            }
+        });
+    }
+    
+    @Test
+    public void testOffByDefault() {
+        assertNull(System.getProperty(GameMetrics.JMX_PROPERTY));
+        assertNull(System.getProperty(GameMetrics.PORT_PROPERTY));
+        assertNull(GameMetrics.start(null));
+    }
+    
+    @Test
+    public void testAttributes() {
+        assertEquals(66.5, metrics.getTicksPerSecond(), 0);
+        assertEquals(3, metrics.getDroppedSteps());
+        assertEquals(50, metrics.getTickCount());
+        assertEquals(world.getTerrainBlocks().size(), metrics.getTerrainBlocks());
+        assertEquals(world.getEnemies().size(), metrics.getEnemies());
+        assertEquals(world.getPowerUps().size(), metrics.getPowerUps());
+        assertEquals(world.getRemainingEnemies(), metrics.getRemainingEnemies());
+        assertEquals("", metrics.getLevel());
+        assertEquals(-1, metrics.getLastLoadMillis());
+        assertTrue(metrics.getHeapUsedBytes() > 0);
+        assertTrue(metrics.getGcCount() >= 0);
+    }
+    
+    @Test
+    public void testPrometheusText() {
+        String text = metrics.getPrometheusText();
+        assertTrue(text, text.contains("# TYPE dkc_ticks_per_second gauge\n"
+                + "dkc_ticks_per_second 66.500\n"));
+        assertTrue(text, text.contains("dkc_dropped_steps_total 3\n"));
+        assertTrue(text, text.contains("dkc_ticks_total 50\n"));
+        assertTrue(text, text.contains("dkc_entities{kind=\"enemy\"} "
+                + world.getEnemies().size() + "\n"));
+        assertTrue(text, text.contains("# TYPE dkc_gc_collections_total counter\n"));
+        assertFalse("no level loaded", text.contains("dkc_level_load_seconds"));
+        for (String line : text.split("\n")) {
+            assertTrue(line, line.startsWith("# ") || line.matches("[a-z_]+(\\{.*\\})? [-0-9.]+"));
+        }
+    }
+    
+    @Test
+    public void testHttpEndpoint() throws IOException {
+        int port = metrics.startHttpServer(0);
+        try {
+            HttpURLConnection connection = (HttpURLConnection)
+                    new URL("http://127.0.0.1:" + port + "/metrics").openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain"));
+            InputStream in = connection.getInputStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                body.write(buffer, 0, n);
+            }
+            in.close();
+            String text = new String(body.toByteArray(), StandardCharsets.UTF_8);
+            assertTrue(text, text.contains("dkc_ticks_total 50\n"));
+        } finally {
+            metrics.stopHttpServer();
+        }
+    }
+    
+    @Test
+    public void testReadableOverJmx() throws Exception {
+        metrics.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(GameMetrics.OBJECT_NAME);
+        try {
+            assertEquals(50L, server.getAttribute(name, "TickCount"));
+            assertEquals(60.0, server.getAttribute(name, "FramesPerSecond"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import java.awt.*;
+import java.io.IOException;
 
 /**
  * GameObj.java
@@ -10,33 +11,50 @@ import java.awt.*;
  */
 public abstract class GameObj {
     
+    // Position, velocity, size and movement flags live in the store, not here.
     // px, py, vx, and vy are in Cartesian coordinates
-    private int px;
-    private int py; 
-    private int vx;
-    private int vy;
+    private final EntityStore store;
+    private final int handle;
     
-    private final int width;
-    private final int height;
-    private boolean canMoveUp;
-    private boolean canMoveDown;
-    private boolean canMoveLeft;
-    private boolean canMoveRight;
+    /**
+     * Creates an object with a store of its own, for objects that are not part of a
+     * level (e.g. in tests).
+     */
+    public GameObj(int px, int py, int vx, int vy, int width, int height) {
+        this(new EntityStore(1), px, py, vx, vy, width, height);
+    }
     
-    // Used to match falling behavior of DKC and similar platform games
-    private static final int MAX_VELOCITY = 20;
+    /**
+     * Creates an object whose state is kept in the given store, normally the one shared
+     * by every object in a level.
+     */
+    public GameObj(EntityStore store, int px, int py, int vx, int vy, int width,
+            int height) {
+        this.store = store;
+        this.handle = store.allocate(px, py, vx, vy, width, height);
+    }
     
-    public GameObj(int px, int py, int vx, int vy, int width, int height) {
-        this.px = px;
-        this.py = py;
-        this.vx = vx;
-        this.vy = vy;
-        this.width = width;
-        this.height = height;
-        canMoveUp = true;
-        canMoveDown = true;
-        canMoveLeft = true;
-        canMoveRight = true;
+    /**
+     * 
+     * @return the store holding this object's state
+     */
+    public EntityStore getStore() {
+        return store;
+    }
+    
+    /**
+     * 
+     * @return this object's handle in its store
+     */
+    public int getHandle() {
+        return handle;
+    }
+    
+    /**
+     * Removes this object's state from its store. The object must not be used afterwards.
+     */
+    public void release() {
+        store.free(handle);
     }
      
     /**
@@ -44,7 +62,7 @@ public abstract class GameObj {
      * @return the player's current x coordinate, in Cartesian coordinates
      */
     public int getPx() {
-        return px;
+        return store.getPx(handle);
     }
     
     /**
@@ -52,7 +70,7 @@ public abstract class GameObj {
      * @return the player's current y coordinate, in Cartesian coordinates
      */
     public int getPy() {
-        return py;
+        return store.getPy(handle);
     }
     
     /**
@@ -60,7 +78,7 @@ public abstract class GameObj {
      * @return the player's current x velocity
      */
     public int getVx() {
-        return vx;
+        return store.getVx(handle);
     }
     
     /**
@@ -68,7 +86,7 @@ public abstract class GameObj {
      * @return the player's current y velocity
      */
     public int getVy() {
-        return vy;
+        return store.getVy(handle);
     }
     
     /**
@@ -76,7 +94,7 @@ public abstract class GameObj {
      * @param vx the new x velocity
      */
     public void setVx(int vx) {
-        this.vx = vx;
+        store.setVx(handle, vx);
     }
     
     /**
@@ -84,23 +102,22 @@ public abstract class GameObj {
      * @param vx the new y velocity
      */
     public void setVy(int vy) {
-        this.vy = vy;
+        store.setVy(handle, vy);
     }
     
     /**
      * Updates the player's position according to their current velocity
      */
     public void move() {
-        px += vx;
-        py += vy;
+        store.move(handle);
     }
     
     /**
      * Sets the player's velocity to zero
      */
     public void stop() {
-        vx = 0;
-        vy = 0;
+        store.setVx(handle, 0);
+        store.setVy(handle, 0);
     }
     
     /**
@@ -108,13 +125,7 @@ public abstract class GameObj {
      * @param yAccel the acceleration due to gravity
      */
     public void fall(int yAccel) {
-        if (vy - yAccel < -MAX_VELOCITY) {
-            vy = -MAX_VELOCITY;
-        } else if (vy + yAccel > MAX_VELOCITY) {
-            vy = MAX_VELOCITY;
-        } else {
-            vy += yAccel;
-        }
+        store.fall(handle, yAccel);
     }
     
     /**
@@ -122,7 +133,7 @@ public abstract class GameObj {
      * @return width of player's sprite
      */
     public int getWidth() {
-        return width;
+        return store.getWidth(handle);
     }
     
     /**
@@ -130,7 +141,7 @@ public abstract class GameObj {
      * @return height of player's sprite
      */
     public int getHeight() {
-        return height;
+        return store.getHeight(handle);
     }
     
     /**
@@ -138,7 +149,7 @@ public abstract class GameObj {
      * @return is the player able to move up?
      */
     public boolean canMoveUp() {
-        return canMoveUp;
+        return store.hasFlags(handle, EntityStore.CAN_MOVE_UP);
     }
     
     /**
@@ -146,7 +157,7 @@ public abstract class GameObj {
      * @return is the player able to move down?
      */
     public boolean canMoveDown() {
-        return canMoveDown;
+        return store.hasFlags(handle, EntityStore.CAN_MOVE_DOWN);
     }
     
     /**
@@ -154,7 +165,7 @@ public abstract class GameObj {
      * @return is the player able to move left?
      */
     public boolean canMoveLeft() {
-        return canMoveLeft;
+        return store.hasFlags(handle, EntityStore.CAN_MOVE_LEFT);
     }
     
     /**
@@ -162,17 +173,14 @@ public abstract class GameObj {
      * @return is the player able to move right?
      */
     public boolean canMoveRight() {
-        return canMoveRight;
+        return store.hasFlags(handle, EntityStore.CAN_MOVE_RIGHT);
     }
     
     /**
      * Allows the player to move in all directions
      */
     public void makeMovable() {
-        canMoveUp = true;
-        canMoveDown = true;
-        canMoveLeft = true;
-        canMoveRight = true;
+        store.setFlags(handle, EntityStore.CAN_MOVE_ANY, true);
     }
     
     /**
@@ -181,24 +189,40 @@ public abstract class GameObj {
      * from moving the player.
      */
     public void makeImmovableHoriz() {
-        canMoveLeft = false;
-        canMoveRight = false;
+        store.setFlags(handle, EntityStore.CAN_MOVE_LEFT | EntityStore.CAN_MOVE_RIGHT, false);
+    }
+    
+    /**
+     * 
+     * @param hasGravity should EntityStore.integrate() make this object fall?
+     */
+    protected void setHasGravity(boolean hasGravity) {
+        store.setFlags(handle, EntityStore.HAS_GRAVITY, hasGravity);
+    }
+    
+    /**
+     * 
+     * @param isStatic is this object expected to never move? Anything cached from the
+     * positions of static objects is rebuilt if one does.
+     */
+    protected void setStatic(boolean isStatic) {
+        store.setFlags(handle, EntityStore.STATIC, isStatic);
     }
     
     protected void setMovableUp(boolean canMoveUp) {
-        this.canMoveUp = canMoveUp;
+        store.setFlags(handle, EntityStore.CAN_MOVE_UP, canMoveUp);
     }
     
     protected void setMovableDown(boolean canMoveDown) {
-        this.canMoveDown = canMoveDown;
+        store.setFlags(handle, EntityStore.CAN_MOVE_DOWN, canMoveDown);
     }
     
     protected void setMovableLeft(boolean canMoveLeft) {
-        this.canMoveLeft = canMoveLeft;
+        store.setFlags(handle, EntityStore.CAN_MOVE_LEFT, canMoveLeft);
     }
     
     protected void setMovableRight(boolean canMoveRight) {
-        this.canMoveRight = canMoveRight;
+        store.setFlags(handle, EntityStore.CAN_MOVE_RIGHT, canMoveRight);
     }
     
     // Collision methods
@@ -228,8 +252,10 @@ public abstract class GameObj {
      * @return is the player's sprite intersecting the other sprite?
      */
     public boolean isColliding(GameObj other) {
-        return isCollidingUp(other) && isCollidingDown(other) &&
+        boolean colliding = isCollidingUp(other) && isCollidingDown(other) &&
                 isCollidingLeft(other) && isCollidingRight(other);
+        CollisionStats.countColliding(colliding);
+        return colliding;
     }    
     
     private boolean isTouchingUp(GameObj other) {
@@ -259,48 +285,114 @@ public abstract class GameObj {
      * the other?
      */
     public boolean isTouching(GameObj other) {
-        return isTouchingLeft(other) || isTouchingRight(other) ||
+        boolean touching = isTouchingLeft(other) || isTouchingRight(other) ||
                 isTouchingUp(other) || isTouchingDown(other);
+        CollisionStats.countTouching(touching);
+        return touching;
     }
 
     public void clipLeft(GameObj other) {
-        px = other.getPx() - getWidth();
+        store.setPx(handle, getPx() - getPenetrationDepth(other, CollisionDirection.RIGHT));
     }
     
     public void clipRight(GameObj other) {
-        px = other.getPx() + other.getWidth();
+        store.setPx(handle, getPx() + getPenetrationDepth(other, CollisionDirection.LEFT));
     }
     
     public void clipUp(GameObj other) {
-        py = other.getPy() + other.getHeight();
+        store.setPy(handle, getPy() + getPenetrationDepth(other, CollisionDirection.DOWN));
     }
     
     public void clipDown(GameObj other) {
-        py = other.getPy() - getHeight();
+        store.setPy(handle, getPy() - getPenetrationDepth(other, CollisionDirection.UP));
     }
     
-    // This is not my original code.
-    // Credit: CIS 120 sample game code
-    public CollisionDirection getCollisionDirection(GameObj other) {  
-        double dx = other.getPx() + other.getWidth() / 2 - (getPx() + getWidth() / 2);
-        double dy = other.getPy() + other.getHeight() / 2 - (getPy() + getHeight() / 2);
-
-        double theta = Math.acos(dx / (Math.sqrt(dx * dx + dy * dy)));
-        double diagTheta = Math.atan2(other.getHeight() / 2, other.getWidth() / 2);
-
-        if (theta <= diagTheta ) {
-            return CollisionDirection.RIGHT;
-        } else if ( theta > diagTheta && theta <= Math.PI - diagTheta ) {
-            if ( dy > 0 ) {
-                return CollisionDirection.UP;
-            } else {
-                return CollisionDirection.DOWN;
+    /**
+     * Determines which side of the other object this one is hitting, by comparing the
+     * direction between the two centers with the diagonals of the other object: RIGHT or
+     * LEFT if the other object's center lies within its diagonals horizontally from ours,
+     * UP or DOWN otherwise.
+     * 
+     * Adapted from the CIS 120 sample game code, which compared the angles with
+     * Math.acos and Math.atan2. Comparing the slopes by cross-multiplying gives the same
+     * answer using only integer arithmetic.
+     * @param other a GameObj this one might be colliding with
+     * @return the direction of other relative to this object
+     */
+    public CollisionDirection getCollisionDirection(GameObj other) {
+        CollisionStats.countDirection();
+        long dx = other.getPx() + other.getWidth() / 2 - (getPx() + getWidth() / 2);
+        long dy = other.getPy() + other.getHeight() / 2 - (getPy() + getHeight() / 2);
+        long halfWidth = other.getWidth() / 2;
+        long halfHeight = other.getHeight() / 2;
+        
+        // Slope of (dx, dy) against the slope of the diagonal. The angle between two
+        // coincident centers is undefined, which the original code resolved to LEFT.
+        long run = Math.abs(dx) * halfHeight;
+        long rise = Math.abs(dy) * halfWidth;
+        if (dx == 0 && dy == 0) {
+            return CollisionDirection.LEFT;
+        } else if (halfWidth == 0 && halfHeight == 0) {
+            // a point has no diagonals; only straight to the right counts as RIGHT
+            if (dy == 0 && dx > 0) {
+                return CollisionDirection.RIGHT;
             }
-        } else {
+        } else if (dx >= 0 && run >= rise) {
+            return CollisionDirection.RIGHT;
+        } else if (dx < 0 && run > rise) {
             return CollisionDirection.LEFT;
         }
+        return (dy > 0) ? CollisionDirection.UP : CollisionDirection.DOWN;
     }
     
-    // Abstract since every object is drawn differently
+    /**
+     * Measures how far this object overlaps the other along one axis, e.g. for
+     * RIGHT, how far our right edge is past the other's left edge. This is the distance
+     * the clip methods push this object back by.
+     * @param other a GameObj this one might be colliding with
+     * @param direction the side of this object to measure, as returned by
+     * getCollisionDirection()
+     * @return the overlap in pixels; 0 if the objects are touching, negative if there is
+     * a gap between them
+     */
+    public int getPenetrationDepth(GameObj other, CollisionDirection direction) {
+        switch (direction) {
+        case RIGHT:
+            return getPx() + getWidth() - other.getPx();
+        case LEFT:
+            return other.getPx() + other.getWidth() - getPx();
+        case UP:
+            return getPy() + getHeight() - other.getPy();
+        default:
+            return other.getPy() + other.getHeight() - getPy();
+        }
+    }
+    
+    /**
+     * Looks up the sprite the object is drawn with, so that draw() only has to draw it.
+     * Called once per object when a world's sprites are loaded (see
+     * GameWorld.loadSprites()). Objects drawn without a sprite, e.g. terrain, have nothing
+     * to look up.
+     * @throws IOException if the sprite can't be read
+     */
+    public void loadSprite() throws IOException {
+    }
+    
+    // Abstract since every object is drawn differently. Objects whose sprite hasn't been
+    // loaded are drawn without it.
     public abstract void draw(Graphics2D g, int cameraOffsetX);
+    
+    /**
+     * Draws the object partway between where it was before the last move() and where it
+     * is now, so that motion looks smooth when frames and ticks don't line up.
+     * @param alpha 0 draws the old position, 1 the current one
+     */
+    public void drawInterpolated(Graphics2D g, int cameraOffsetX, double alpha) {
+        int dx = (int) Math.round((store.getPrevPx(handle) - getPx()) * (1 - alpha));
+        int dy = (int) Math.round((store.getPrevPy(handle) - getPy()) * (1 - alpha));
+        // screen y grows downwards
+        g.translate(dx, -dy);
+        draw(g, cameraOffsetX);
+        g.translate(-dx, dy);
+    }
 }
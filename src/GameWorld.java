@@ -0,0 +1,1112 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * GameWorld.java
+ * The simulation half of the game: the game objects in a level, the camera, and the
+ * rules applied to them every tick. GameWorld has no knowledge of Swing, images or audio,
+ * so it can be stepped headlessly (see HeadlessRunner) as well as by GameCourt.
+ * @author Jack Harkins
+ *
+ */
+public class GameWorld {
+    
+    // Input bits, one per control, passed to step()
+    public static final int INPUT_LEFT = 1;
+    public static final int INPUT_RIGHT = 2;
+    public static final int INPUT_JUMP = 4;
+    
+    // Active window that keeps the whole level in play, see setActiveWindow()
+    public static final int WHOLE_LEVEL = -1;
+    
+    // Sleep distance that keeps every enemy awake, see setSleepDistance()
+    public static final int ALWAYS_AWAKE = -1;
+    
+    /**
+     * Something to run the world until, see runUntil()
+     */
+    public interface Condition {
+        boolean holds(GameWorld world);
+    }
+    
+    /**
+     * Holds once the level is over; see isOver()
+     */
+    public static final Condition OVER = new Condition() {
+        @Override
+        public boolean holds(GameWorld world) {
+            return world.isOver();
+        }
+    };
+    
+    static final int MOVE_VELOCITY = 6;
+    private static final int LAND_GRAVITY = -1;
+    static final int FALL_DEATH_THRESHOLD = -50;
+    // Fewest objects worth handing to another thread, and how many slices per thread the
+    // enemy phase is split into so that threads that finish early can help the others
+    private static final int MIN_SLICE_SIZE = 512;
+    private static final int SLICES_PER_THREAD = 4;
+    // The two parts of the enemy phase
+    private static final int INTEGRATE = 0;
+    private static final int RESOLVE_ENEMIES = 1;
+    
+    private final int viewWidth;
+    
+    // Game objects. Their positions, velocities and sizes are kept in the store so that
+    // tick() can move everything in one pass.
+    private EntityStore store;
+    private Player activePlayer;
+    // ArrayLists so that tick() can walk and compact them by index without allocating
+    private ArrayList<Enemy> enemyList;
+    private ArrayList<TerrainBlock> terrainBlockList;
+    private ArrayList<PowerUp> powerUpList;
+    private ArrayList<Checkpoint> checkpointList;
+    private TerrainGrid terrainGrid;
+    // for drawing only the objects in view
+    private IntervalIndex<TerrainBlock> terrainIndex;
+    private IntervalIndex<PowerUp> powerUpIndex;
+    // the store's static version when terrainGrid and terrainIndex were built
+    private long indexedStaticVersion;
+    private final TerrainGrid.Candidates nearbyBlocks = new TerrainGrid.Candidates();
+    // for collisions between enemies, and for finding the enemies in view
+    private SweepAndPrune sweep;
+    
+    // Creates objects in the store and adds them to the lists above
+    private final LevelParser.Loader objectLoader;
+    private int startingLives;
+    private LevelTemplate template;
+    // set by loadSprites(), after which objects coming into play look up their sprites
+    // straight away
+    private boolean spritesLoaded;
+    // Brings parts of the level into play as the camera nears them; null when the whole
+    // level is in play
+    private int activeWindow = WHOLE_LEVEL;
+    private LevelStreamer streamer;
+    // including any that aren't currently in play
+    private int remainingEnemies;
+    // Enemies further than this from the player are put to sleep
+    private int sleepDistance = ALWAYS_AWAKE;
+    private boolean fastForwardSleepers;
+    private int numSleeping;
+    // Runs the enemy phase of each tick in parallel if set, see setEnemyPool()
+    private ForkJoinPool enemyPool;
+    private Slice[] slices;
+    private int numActiveSlices;
+    private final RecursiveAction runSlices = new RecursiveAction() {
+        @Override
+        protected void compute() {
+            for (int i = 1; i < numActiveSlices; i++) {
+                slices[i].fork();
+            }
+            slices[0].invoke();
+            for (int i = 1; i < numActiveSlices; i++) {
+                slices[i].join();
+            }
+        }
+    };
+    
+    private int cameraOffsetX;
+    private int prevCameraOffsetX;
+    private long tickCount;
+    
+    // Where the player comes back after dying, if respawnAtCheckpoints is set: the world
+    // as it was when the last checkpoint was reached, or when the level was loaded
+    private boolean respawnAtCheckpoints;
+    private final WorldSnapshot respawnPoint = new WorldSnapshot();
+    private Checkpoint lastCheckpoint;
+    private Checkpoint newCheckpoint; // reached this tick
+    private int numRespawns;
+    private long lastRespawnNanos;
+    
+    private TickProfiler profiler = new TickProfiler();
+    
+    /**
+     * @param viewWidth width of the visible part of the level, used to scroll the camera
+     */
+    public GameWorld(int viewWidth) {
+        this.viewWidth = viewWidth;
+        store = new EntityStore(1);
+        sweep = new SweepAndPrune();
+        terrainBlockList = new ArrayList<>();
+        enemyList = new ArrayList<>();
+        powerUpList = new ArrayList<>();
+        checkpointList = new ArrayList<>();
+        objectLoader = new LevelParser.Loader() {
+            @Override
+            public void addTerrainBlock(int px, int py, int width, int height) {
+                terrainBlockList.add(new TerrainBlock(store, px, py, width, height));
+            }
+            
+            @Override
+            public void addPlayer(int px, int py, String imageName) {
+                activePlayer = new Player(store, px, py, startingLives, imageName);
+                lookUpSprite(activePlayer);
+            }
+            
+            @Override
+            public void addEnemy(int px, int py, Enemy.EnemyType type) {
+                Enemy enemy = new Enemy(store, px, py, type);
+                lookUpSprite(enemy);
+                enemyList.add(enemy);
+            }
+            
+            @Override
+            public void addPowerUp(int px, int py, PowerUp.PowerUpType type) {
+                PowerUp powerUp = new PowerUp(store, px, py, type);
+                lookUpSprite(powerUp);
+                powerUpList.add(powerUp);
+            }
+            
+            @Override
+            public void addCheckpoint(int px, int py) {
+                checkpointList.add(new Checkpoint(store, px, py));
+            }
+        };
+    }
+    
+    /**
+     * 
+     * @return width of the visible part of the level
+     */
+    public int getViewWidth() {
+        return viewWidth;
+    }
+    
+    /**
+     * Sets how much of a level is in play from the next load on. Normally the whole
+     * level is. Otherwise only the part of the level within the given distance of the
+     * view is, and the rest is brought into play as the camera approaches it (see
+     * LevelStreamer), which keeps memory use and the time a tick takes the same no
+     * matter how long the level is. Enemies outside the window don't move.
+     * @param activeWindow how far beyond each edge of the view to keep the level in
+     * play, in pixels, or WHOLE_LEVEL
+     */
+    public void setActiveWindow(int activeWindow) {
+        this.activeWindow = activeWindow;
+    }
+    
+    /**
+     * 
+     * @return how far beyond each edge of the view the level is kept in play, or
+     * WHOLE_LEVEL
+     */
+    public int getActiveWindow() {
+        return activeWindow;
+    }
+    
+    /**
+     * Sets how far from the player an enemy has to be to be put to sleep. Asleep enemies
+     * aren't moved, pulled down by gravity or checked for collisions, so the time a tick
+     * takes depends on the number of enemies near the player rather than in the whole
+     * level. An enemy wakes up as soon as it is back within the distance, and carries on
+     * exactly where it left off unless setFastForwardSleepers() is on. Takes effect from
+     * the next tick.
+     * @param sleepDistance horizontal distance in pixels between the centers of the
+     * player and an enemy beyond which the enemy sleeps, or ALWAYS_AWAKE. Should be well
+     * over half the view's width so that nothing visible is frozen.
+     */
+    public void setSleepDistance(int sleepDistance) {
+        this.sleepDistance = sleepDistance;
+    }
+    
+    /**
+     * 
+     * @return how far from the player enemies are put to sleep, or ALWAYS_AWAKE
+     */
+    public int getSleepDistance() {
+        return sleepDistance;
+    }
+    
+    /**
+     * Sets whether enemies pacing between two walls should be moved, when they wake up,
+     * to where their patrol would have taken them while they slept (see Enemy.wake()).
+     * Either way, where an enemy wakes up depends only on where it fell asleep and for how
+     * many ticks.
+     * @param fastForward should sleeping enemies' patrols be fast-forwarded?
+     */
+    public void setFastForwardSleepers(boolean fastForward) {
+        this.fastForwardSleepers = fastForward;
+    }
+    
+    /**
+     * 
+     * @return are sleeping enemies' patrols fast-forwarded when they wake up?
+     */
+    public boolean isFastForwardSleepers() {
+        return fastForwardSleepers;
+    }
+    
+    /**
+     * Sets where the enemy phase of each tick runs: the part of a tick where every
+     * object falls and moves, and every enemy is pushed out of the terrain and checked
+     * for falling off the map. Each enemy only depends on itself and the terrain there,
+     * so the phase can be split between threads. Everything where objects affect each
+     * other, e.g. the player running into enemies, stays on the thread calling tick(),
+     * in the same order, so a tick ends in exactly the same state either way.
+     * 
+     * Small levels, or levels with only a few screens in play, run serially anyway, as
+     * handing them to other threads would cost more than it saves.
+     * @param pool the pool to run the enemy phase on, or null to run it on the thread
+     * calling tick()
+     */
+    public void setEnemyPool(ForkJoinPool pool) {
+        enemyPool = pool;
+        if (pool == null) {
+            slices = null;
+            return;
+        }
+        slices = new Slice[pool.getParallelism() * SLICES_PER_THREAD];
+        for (int i = 0; i < slices.length; i++) {
+            slices[i] = new Slice();
+        }
+    }
+    
+    /**
+     * 
+     * @return the pool the enemy phase runs on, or null if it runs on the thread calling
+     * tick()
+     */
+    public ForkJoinPool getEnemyPool() {
+        return enemyPool;
+    }
+    
+    /**
+     * Sets whether step() brings the player back to life once their death animation has
+     * finished, as long as they have lives left, instead of leaving the level over. The
+     * player comes back at the last checkpoint they reached (see respawn()). Turning it
+     * on makes the world as it is now the place to come back to until a checkpoint is
+     * reached, so it should be done straight after a level is loaded; it stays on for
+     * levels loaded later.
+     * @param respawn should the player respawn at checkpoints?
+     */
+    public void setRespawnAtCheckpoints(boolean respawn) {
+        respawnAtCheckpoints = respawn;
+        if (respawn && activePlayer != null) {
+            saveSnapshot(respawnPoint);
+        }
+    }
+    
+    /**
+     * 
+     * @return does the player respawn at checkpoints after dying?
+     */
+    public boolean isRespawnAtCheckpoints() {
+        return respawnAtCheckpoints;
+    }
+    
+    /**
+     * Sets where the phases of each tick are timed. By default the world has a profiler
+     * of its own that is disabled.
+     * @param profiler the profiler to record into
+     */
+    public void setProfiler(TickProfiler profiler) {
+        this.profiler = profiler;
+    }
+    
+    public TickProfiler getProfiler() {
+        return profiler;
+    }
+    
+    /**
+     * Replaces the contents of the world with the objects in a level file, in either the
+     * text format or the binary format written by LevelConverter.
+     * @param filename the level file to read
+     * @param numLives number of lives the player starts with
+     * @throws IOException if the level file does not exist or can't be read
+     */
+    public void load(String filename, int numLives) throws IOException {
+        load(LevelTemplate.read(filename), numLives);
+    }
+    
+    /**
+     * Replaces the contents of the world with a fresh copy of an already read level.
+     * The template itself is not changed, so it can be loaded again, e.g. on respawn.
+     * @param template the level to load
+     * @param numLives number of lives the player starts with
+     */
+    public void load(LevelTemplate template, int numLives) {
+        this.template = template;
+        spritesLoaded = false;
+        terrainBlockList = new ArrayList<>();
+        enemyList = new ArrayList<>();
+        powerUpList = new ArrayList<>();
+        checkpointList = new ArrayList<>();
+        activePlayer = null;
+        startingLives = numLives;
+        remainingEnemies = template.getEnemyCount();
+        numSleeping = 0;
+        sweep = new SweepAndPrune();
+        
+        if (activeWindow == WHOLE_LEVEL) {
+            store = new EntityStore(template.getObjectCount());
+            streamer = null;
+            template.instantiate(objectLoader);
+        } else {
+            // the store grows as needed, but usually holds a few screens' worth
+            store = new EntityStore(0);
+            streamer = new LevelStreamer(template, activeWindow);
+            template.instantiatePlayers(objectLoader);
+            template.instantiateCheckpoints(objectLoader);
+        }
+        
+        cameraOffsetX = -activePlayer.getPx() + viewWidth / 2;
+        prevCameraOffsetX = cameraOffsetX;
+        tickCount = 0;
+        
+        if (streamer != null) {
+            streamChunks();
+        }
+        indexTerrain();
+        powerUpIndex = new IntervalIndex<>(powerUpList);
+        sweep.update(enemyList);
+        
+        lastCheckpoint = null;
+        newCheckpoint = null;
+        numRespawns = 0;
+        if (respawnAtCheckpoints) {
+            saveSnapshot(respawnPoint);
+        }
+    }
+    
+    /**
+     * Reads the sprite of every kind of object in the level, including the ones not yet
+     * in play, and hands them to the objects, so that drawing never has to read anything.
+     * Objects brought into play later are given theirs as they arrive. Only worlds that
+     * are drawn need this; LevelLoader calls it once the level's sprites are decoded.
+     * @throws IOException if one of the level's sprites can't be read
+     */
+    public void loadSprites() throws IOException {
+        for (String filename : template.getImageNames()) {
+            SpriteCache.get(filename);
+        }
+        spritesLoaded = true;
+        lookUpSprite(activePlayer);
+        for (int i = 0; i < enemyList.size(); i++) {
+            lookUpSprite(enemyList.get(i));
+        }
+        for (int i = 0; i < powerUpList.size(); i++) {
+            lookUpSprite(powerUpList.get(i));
+        }
+    }
+    
+    // Every sprite in the level was read by loadSprites(), so this is only a lookup
+    private void lookUpSprite(GameObj obj) {
+        if (!spritesLoaded) {
+            return;
+        }
+        try {
+            obj.loadSprite();
+        } catch (IOException e) {
+            throw new IllegalStateException("sprites weren't loaded with the level", e);
+        }
+    }
+    
+    // Asks the streamer for the part of the level around the view
+    private boolean streamChunks() {
+        return streamer.update(-cameraOffsetX, -cameraOffsetX + viewWidth, objectLoader,
+                terrainBlockList, enemyList, powerUpList);
+    }
+    
+    private void indexTerrain() {
+        terrainGrid = new TerrainGrid(terrainBlockList);
+        terrainIndex = new IntervalIndex<>(terrainBlockList);
+        indexedStaticVersion = store.getStaticVersion();
+    }
+    
+    // terrain never moves in the levels we ship, but if it does, keep up
+    private void reindexTerrainIfMoved() {
+        if (store.getStaticVersion() != indexedStaticVersion) {
+            indexTerrain();
+        }
+    }
+    
+    public Player getPlayer() {
+        return activePlayer;
+    }
+    
+    public List<Enemy> getEnemies() {
+        return enemyList;
+    }
+    
+    /**
+     * Finds the enemies in play that overlap a range of x coordinates, looking only at
+     * the ones nearby rather than at every enemy. Positions are those at the end of the
+     * last tick, before enemies that ran into each other were pushed apart, so callers
+     * should allow for a tick's worth of movement.
+     * @param out receives the enemies found, in order of left edge; cleared first
+     */
+    public void findEnemies(int minX, int maxX, List<? super GameObj> out) {
+        sweep.query(minX, maxX, out);
+    }
+    
+    public List<TerrainBlock> getTerrainBlocks() {
+        return terrainBlockList;
+    }
+    
+    public List<PowerUp> getPowerUps() {
+        return powerUpList;
+    }
+    
+    public List<Checkpoint> getCheckpoints() {
+        return checkpointList;
+    }
+    
+    /**
+     * 
+     * @return the checkpoint the player reached most recently, or null if they haven't
+     * reached one since the level was loaded
+     */
+    public Checkpoint getLastCheckpoint() {
+        return lastCheckpoint;
+    }
+    
+    /**
+     * 
+     * @return number of times the player has respawned since the level was loaded
+     */
+    public int getRespawnCount() {
+        return numRespawns;
+    }
+    
+    /**
+     * 
+     * @return how long the last respawn took, in nanoseconds, or 0 if there hasn't been
+     * one
+     */
+    public long getLastRespawnNanos() {
+        return lastRespawnNanos;
+    }
+    
+    /**
+     * 
+     * @return the level's terrain, indexed by x coordinate. Rebuilt first if any
+     * terrain has moved since it was last built.
+     */
+    public IntervalIndex<TerrainBlock> getTerrainIndex() {
+        reindexTerrainIfMoved();
+        return terrainIndex;
+    }
+    
+    /**
+     * 
+     * @return the power ups in play, indexed by x coordinate. Includes power ups that
+     * have been claimed since the index was built, which is when the level was loaded or
+     * when part of it last came into play.
+     */
+    public IntervalIndex<PowerUp> getPowerUpIndex() {
+        return powerUpIndex;
+    }
+    
+    /**
+     * 
+     * @return the store holding the state of every object in play
+     */
+    public EntityStore getEntityStore() {
+        return store;
+    }
+    
+    /**
+     * 
+     * @return horizontal offset applied to every object when drawing
+     */
+    public int getCameraOffsetX() {
+        return cameraOffsetX;
+    }
+    
+    /**
+     * 
+     * @return the camera offset before the last tick
+     */
+    public int getPrevCameraOffsetX() {
+        return prevCameraOffsetX;
+    }
+    
+    /**
+     * 
+     * @return number of ticks run since the level was loaded
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+    
+    /**
+     * 
+     * @return the streamer bringing the level into play, or null if the whole level is
+     * in play
+     */
+    public LevelStreamer getStreamer() {
+        return streamer;
+    }
+    
+    /**
+     * 
+     * @return number of enemies not yet defeated, whether or not they're in play
+     */
+    public int getRemainingEnemies() {
+        return remainingEnemies;
+    }
+    
+    /**
+     * 
+     * @return number of enemies in play that are awake
+     */
+    public int getActiveEnemyCount() {
+        return enemyList.size() - numSleeping;
+    }
+    
+    /**
+     * 
+     * @return number of enemies in play that are asleep, see setSleepDistance()
+     */
+    public int getSleepingEnemyCount() {
+        return numSleeping;
+    }
+    
+    /**
+     * 
+     * @return have all enemies been defeated?
+     */
+    public boolean isCleared() {
+        return remainingEnemies == 0;
+    }
+    
+    /**
+     * 
+     * @return has the level ended, either because it was cleared or because the
+     * player's death animation finished and they aren't going to respawn?
+     */
+    public boolean isOver() {
+        return isCleared() || (activePlayer.hasFinishedDying()
+                && (!respawnAtCheckpoints || activePlayer.getNumLives() == 0));
+    }
+    
+    /**
+     * Applies one tick's worth of input the same way GameCourt's key handlers do, then
+     * advances the world by one tick. If the player has finished dying and respawns at
+     * checkpoints, they respawn first.
+     * @param input a combination of the INPUT_ bits
+     */
+    public void step(int input) {
+        if (respawnAtCheckpoints && activePlayer.hasFinishedDying()
+                && activePlayer.getNumLives() > 0) {
+            respawn();
+        }
+        applyInput(input);
+        tick();
+    }
+    
+    /**
+     * Steps the world as fast as it will go, with no timer and nothing drawn, until a
+     * condition holds or a number of ticks have been run. The condition is checked
+     * before each step. The input for each tick is looked up in the script by the
+     * world's tick count, the same way a replay is.
+     * @param condition when to stop, or null to run every tick
+     * @param maxTicks the most ticks to run
+     * @param script input for each tick, or null for none
+     * @return the number of ticks run
+     */
+    public long runUntil(Condition condition, long maxTicks, InputScript script) {
+        long ticks = 0;
+        while (ticks < maxTicks && (condition == null || !condition.holds(this))) {
+            step((script == null) ? 0 : script.getInput(tickCount));
+            ticks++;
+        }
+        return ticks;
+    }
+    
+    /**
+     * Works out where the bottom of a player who jumps is, relative to where they jumped
+     * from, on each tick after the jump, for tools that check what the player can reach.
+     * Their velocity changes the same way it does in a tick, starting on the tick after
+     * the jump since the player is still standing during it, so the arc is exact as long
+     * as they don't hit anything.
+     * @param maxDrop how far below where they jumped from to follow the player
+     * @return the height on the tick of the jump (0) and each tick after, until the
+     * player is more than maxDrop below where they started
+     */
+    static int[] getJumpArc(int maxDrop) {
+        EntityStore scratch = new EntityStore(1);
+        int handle = scratch.allocate(0, 0, 0, Player.getJumpVelocity(), 1, 1);
+        int[] arc = new int[64];
+        int size = 1;
+        int height = 0;
+        while (height >= -maxDrop) {
+            if (size > 1) {
+                scratch.fall(handle, LAND_GRAVITY);
+            }
+            height += scratch.getVy(handle);
+            if (size == arc.length) {
+                arc = Arrays.copyOf(arc, size * 2);
+            }
+            arc[size++] = height;
+        }
+        return Arrays.copyOf(arc, size);
+    }
+    
+    /**
+     * Brings the player back to life at the last checkpoint they reached, or at the start
+     * of the level if they haven't reached one, with the rest of the world put back the
+     * way it was at that moment. The player keeps the number of lives they have now, and
+     * the tick count carries on from where it is, so that input recorded by tick stays in
+     * step. Nothing is read or created, so it takes about as long as restoreSnapshot();
+     * see getLastRespawnNanos().
+     * @throws IllegalStateException if the player doesn't respawn at checkpoints
+     */
+    public void respawn() {
+        if (!respawnAtCheckpoints) {
+            throw new IllegalStateException("the player doesn't respawn at checkpoints");
+        }
+        long start = System.nanoTime();
+        int numLives = activePlayer.getNumLives();
+        long ticks = tickCount;
+        restoreSnapshot(respawnPoint);
+        activePlayer.setNumLives(numLives);
+        tickCount = ticks;
+        numRespawns++;
+        lastRespawnNanos = System.nanoTime() - start;
+    }
+    
+    private void applyInput(int input) {
+        if (!activePlayer.isAlive()) {
+            return;
+        }
+        if ((input & INPUT_LEFT) != 0 && activePlayer.canMoveLeft()) {
+            activePlayer.setIsMovingLeft(true);
+            activePlayer.setIsMovingRight(false);
+        } else if ((input & INPUT_RIGHT) != 0 && activePlayer.canMoveRight()) {
+            activePlayer.setIsMovingLeft(false);
+            activePlayer.setIsMovingRight(true);
+        } else if ((input & (INPUT_LEFT | INPUT_RIGHT)) == 0) {
+            activePlayer.setIsMovingLeft(false);
+            activePlayer.setIsMovingRight(false);
+        }
+        if ((input & INPUT_JUMP) != 0 && activePlayer.canJump()) {
+            activePlayer.jump();
+        }
+    }
+    
+    /**
+     * Resolves collisions between the player, enemies, terrain and power ups at their
+     * current positions, and kills any enemy that has fallen off the map. Collisions
+     * between enemies and other moving objects are found by a SweepAndPrune rather than by
+     * testing every pair. Package-private so that it can be benchmarked on its own.
+     */
+    void checkCollisions() {
+        // can't jump unless touching terrain
+        // can move by default unless dead, touching or colliding
+        activePlayer.setJumpable(false);
+        if (activePlayer.isAlive()) {
+            activePlayer.makeMovable();
+        } else {
+            activePlayer.makeImmovableHoriz();
+        }
+        
+        // did the player collide with a block?
+        terrainGrid.query(activePlayer, nearbyBlocks);
+        for (int i = 0; i < nearbyBlocks.size(); i++) {
+            TerrainBlock block = terrainGrid.getBlock(nearbyBlocks.get(i));
+            CollisionDirection direction = activePlayer.getCollisionDirection(block);
+            if (activePlayer.isColliding(block)) {
+                activePlayer.collisionAction(block, direction);
+            } else if (activePlayer.isTouching(block)) {
+                activePlayer.touchAction(block, direction);
+            }
+        }
+        
+        // did the player collide with an enemy? The player never moves an enemy, so this
+        // can be checked before the enemies are pushed out of the terrain.
+        for (int e = 0; e < enemyList.size() && activePlayer.isAlive(); e++) {
+            Enemy enemy = enemyList.get(e);
+            if (numSleeping > 0 && enemy.isAsleep()) {
+                continue;
+            }
+            if (activePlayer.isColliding(enemy)) {
+                activePlayer.collisionAction(enemy, activePlayer.getCollisionDirection(enemy));
+            }
+        }
+        
+        runEnemyPhase(RESOLVE_ENEMIES, enemyList.size());
+        
+        // did enemies run into each other? Enemies pay no attention to power ups, so those
+        // aren't swept with them
+        sweep.update(enemyList);
+        sweep.collide();
+        
+        for (int p = 0; p < powerUpList.size(); p++) {
+            PowerUp powerUp = powerUpList.get(p);
+            if (activePlayer.isColliding(powerUp)) {
+                activePlayer.collisionAction(powerUp, null);
+            }
+        }
+        
+        // the world is saved at a checkpoint once the tick is over
+        for (int c = 0; c < checkpointList.size() && activePlayer.isAlive(); c++) {
+            Checkpoint checkpoint = checkpointList.get(c);
+            if (!checkpoint.isReached() && (activePlayer.isColliding(checkpoint)
+                    || activePlayer.isTouching(checkpoint))) {
+                checkpoint.reach();
+                newCheckpoint = checkpoint;
+            }
+        }
+    }
+    
+    // Pushes the enemies in [from, to) out of the terrain they've moved into and kills
+    // the ones that have fallen off the map. Touches nothing but those enemies, so it can
+    // run on several slices of the enemy list at once, given a buffer for each.
+    private void resolveEnemies(int from, int to, TerrainGrid.Candidates nearby) {
+        for (int e = from; e < to; e++) {
+            Enemy enemy = enemyList.get(e);
+            if (numSleeping > 0 && enemy.isAsleep()) {
+                continue;
+            }
+            // did an enemy collide with a block?
+            enemy.makeMovable();
+            terrainGrid.query(enemy, nearby);
+            for (int i = 0; i < nearby.size(); i++) {
+                TerrainBlock block = terrainGrid.getBlock(nearby.get(i));
+                CollisionDirection enemyCollisionDirection = enemy.getCollisionDirection(block);
+                if (enemy.isColliding(block)) {
+                    enemy.collisionAction(block, enemyCollisionDirection);
+                } else if (enemy.isTouching(block)) {
+                    enemy.touchAction(block, enemyCollisionDirection);
+                }
+            }
+            // did it fall off the map?
+            if (enemy.isAlive() && enemy.getPy() < FALL_DEATH_THRESHOLD) {
+                enemy.kill();
+            }
+        }
+    }
+    
+    // One slice of the enemy phase, reused every tick so that running it in parallel
+    // doesn't allocate
+    @SuppressWarnings("serial")
+    private class Slice extends RecursiveAction {
+        private final TerrainGrid.Candidates nearby = new TerrainGrid.Candidates();
+        private int part;
+        private int from;
+        private int to;
+        
+        @Override
+        protected void compute() {
+            if (part == INTEGRATE) {
+                store.integrate(LAND_GRAVITY, from, to);
+            } else {
+                resolveEnemies(from, to, nearby);
+            }
+        }
+    }
+    
+    // Runs one part of the enemy phase over count handles or enemies, split between the
+    // enemy pool's threads if there is one and there's enough to split
+    private void runEnemyPhase(int part, int count) {
+        int numSlices = (enemyPool == null) ? 1
+                : Math.min(slices.length, count / MIN_SLICE_SIZE);
+        if (numSlices <= 1) {
+            if (part == INTEGRATE) {
+                store.integrate(LAND_GRAVITY);
+            } else {
+                resolveEnemies(0, count, nearbyBlocks);
+            }
+            return;
+        }
+        for (int i = 0; i < numSlices; i++) {
+            Slice slice = slices[i];
+            slice.reinitialize();
+            slice.part = part;
+            slice.from = (int) ((long) count * i / numSlices);
+            slice.to = (int) ((long) count * (i + 1) / numSlices);
+        }
+        numActiveSlices = numSlices;
+        runSlices.reinitialize();
+        enemyPool.invoke(runSlices);
+    }
+    
+    /**
+     * Advances the world by one tick: removes dead enemies and claimed power ups, moves
+     * the player and camera according to the player's movement flags, applies gravity,
+     * resolves collisions and kills anything that fell off the map.
+     */
+    public void tick() {
+        tickCount++;
+        long time = profiler.start();
+        activePlayer.updateDeathAnimation();
+        
+        // Check which enemies have died and remove them from play. The survivors are
+        // shifted down in place so that they keep their order.
+        int numAlive = 0;
+        for (int i = 0; i < enemyList.size(); i++) {
+            Enemy enemy = enemyList.get(i);
+            if (enemy.isAlive()) {
+                enemyList.set(numAlive++, enemy);
+            } else {
+                enemy.release();
+                remainingEnemies--;
+            }
+        }
+        truncate(enemyList, numAlive);
+        
+        // Similarly, check used powerups
+        int numUnclaimed = 0;
+        for (int i = 0; i < powerUpList.size(); i++) {
+            PowerUp powerUp = powerUpList.get(i);
+            if (!powerUp.hasBeenClaimed()) {
+                powerUpList.set(numUnclaimed++, powerUp);
+            } else {
+                powerUp.release();
+            }
+        }
+        truncate(powerUpList, numUnclaimed);
+        time = profiler.lap(TickProfiler.Phase.REMOVE, time);
+        
+        if (streamer != null && streamChunks()) {
+            indexTerrain();
+            powerUpIndex = new IntervalIndex<>(powerUpList);
+        }
+        time = profiler.lap(TickProfiler.Phase.STREAM, time);
+        updateSleepingEnemies();
+        time = profiler.lap(TickProfiler.Phase.SLEEP, time);
+        
+        // Update player and camera positions
+        prevCameraOffsetX = cameraOffsetX;
+        if (activePlayer.isMovingLeft() && activePlayer.canMoveLeft()) {
+            activePlayer.setVx(-MOVE_VELOCITY);
+            if (activePlayer.getPx() + cameraOffsetX <= 3 * viewWidth / 8) {
+                cameraOffsetX += MOVE_VELOCITY;
+            }
+        } else if (activePlayer.isMovingRight() && activePlayer.canMoveRight()) {
+            activePlayer.setVx(MOVE_VELOCITY);
+            if (activePlayer.getPx() + cameraOffsetX >= 5  * viewWidth / 8) {
+                cameraOffsetX -= MOVE_VELOCITY;
+            }
+        } else {
+            activePlayer.setVx(0);
+        }
+        
+        // Make objects fall and move. The player and enemies have gravity; nothing
+        // depends on another object's position here, so one pass over the store does it.
+        runEnemyPhase(INTEGRATE, store.getHandleCount());
+        reindexTerrainIfMoved();
+        time = profiler.lap(TickProfiler.Phase.MOVE, time);
+        
+        checkCollisions();
+        time = profiler.lap(TickProfiler.Phase.COLLIDE, time);
+        
+        // Kill the player if they've fallen off the map. (checkCollisions() did the
+        // enemies.)
+        if (activePlayer.isAlive() && activePlayer.getPy() < FALL_DEATH_THRESHOLD) {
+            activePlayer.kill();
+        }
+        
+        if (newCheckpoint != null) {
+            lastCheckpoint = newCheckpoint;
+            newCheckpoint = null;
+            if (respawnAtCheckpoints && activePlayer.isAlive()) {
+                saveSnapshot(respawnPoint);
+            }
+        }
+        CollisionStats.countTick(terrainBlockList.size());
+        profiler.lap(TickProfiler.Phase.FALL_DEATHS, time);
+    }
+    
+    // Puts enemies that are too far from the player to sleep and wakes up the ones that
+    // are close enough again
+    private void updateSleepingEnemies() {
+        if (sleepDistance == ALWAYS_AWAKE && numSleeping == 0) {
+            return;
+        }
+        int playerCenter = activePlayer.getPx() + activePlayer.getWidth() / 2;
+        numSleeping = 0;
+        for (int i = 0; i < enemyList.size(); i++) {
+            Enemy enemy = enemyList.get(i);
+            int distance = Math.abs(enemy.getPx() + enemy.getWidth() / 2 - playerCenter);
+            boolean farAway = sleepDistance != ALWAYS_AWAKE && distance > sleepDistance;
+            if (enemy.isAsleep()) {
+                if (farAway) {
+                    numSleeping++;
+                } else {
+                    enemy.wake(tickCount, fastForwardSleepers);
+                }
+            } else if (farAway) {
+                enemy.sleep(tickCount);
+                numSleeping++;
+            }
+        }
+    }
+    
+    /**
+     * Removes everything past the first size elements of a list. Unlike
+     * subList().clear(), this doesn't allocate.
+     */
+    static void truncate(ArrayList<?> list, int size) {
+        for (int i = list.size() - 1; i >= size; i--) {
+            list.remove(i);
+        }
+    }
+    
+    /**
+     * Saves the state of everything in the world into a snapshot, replacing whatever the
+     * snapshot held before. Call it between ticks.
+     * @param snapshot where to save the state
+     */
+    public void saveSnapshot(WorldSnapshot snapshot) {
+        while (true) {
+            try {
+                writeSnapshot(snapshot.startSave(store, tickCount), snapshot);
+                snapshot.finishSave(store);
+                return;
+            } catch (BufferOverflowException e) {
+                snapshot.grow();
+            }
+        }
+    }
+    
+    private void writeSnapshot(ByteBuffer out, WorldSnapshot snapshot) {
+        out.putLong(tickCount);
+        out.putInt(cameraOffsetX);
+        out.putInt(prevCameraOffsetX);
+        out.putInt(remainingEnemies);
+        out.putInt(numSleeping);
+        store.save(out);
+        activePlayer.saveState(out);
+        out.putInt(terrainBlockList.size());
+        for (int i = 0; i < terrainBlockList.size(); i++) {
+            snapshot.addObject(terrainBlockList.get(i));
+        }
+        out.putInt(enemyList.size());
+        for (int i = 0; i < enemyList.size(); i++) {
+            snapshot.addObject(enemyList.get(i));
+            enemyList.get(i).saveState(out);
+        }
+        out.putInt(powerUpList.size());
+        for (int i = 0; i < powerUpList.size(); i++) {
+            snapshot.addObject(powerUpList.get(i));
+            powerUpList.get(i).saveState(out);
+        }
+        // always in play, so only whether they've been reached changes
+        for (int i = 0; i < checkpointList.size(); i++) {
+            checkpointList.get(i).saveState(out);
+        }
+        if (streamer != null) {
+            streamer.saveState(out, snapshot);
+        }
+    }
+    
+    /**
+     * Puts the world back the way it was when a snapshot was taken. The snapshot is left
+     * as it is, so it can be restored again.
+     * @param snapshot a snapshot taken from this world since its level was loaded
+     * @throws IllegalArgumentException if the snapshot is empty or was taken from another
+     * world or level
+     */
+    public void restoreSnapshot(WorldSnapshot snapshot) {
+        ByteBuffer in = snapshot.startRestore(store);
+        tickCount = in.getLong();
+        cameraOffsetX = in.getInt();
+        prevCameraOffsetX = in.getInt();
+        remainingEnemies = in.getInt();
+        numSleeping = in.getInt();
+        store.restore(in);
+        activePlayer.restoreState(in);
+        
+        int numTerrain = in.getInt();
+        boolean terrainChanged = numTerrain != terrainBlockList.size();
+        truncate(terrainBlockList, Math.min(numTerrain, terrainBlockList.size()));
+        for (int i = 0; i < numTerrain; i++) {
+            terrainChanged |= putAt(terrainBlockList, i, (TerrainBlock) snapshot.nextObject());
+        }
+        int numEnemies = in.getInt();
+        truncate(enemyList, Math.min(numEnemies, enemyList.size()));
+        for (int i = 0; i < numEnemies; i++) {
+            Enemy enemy = (Enemy) snapshot.nextObject();
+            putAt(enemyList, i, enemy);
+            enemy.restoreState(in);
+        }
+        int numPowerUps = in.getInt();
+        boolean powerUpsChanged = numPowerUps != powerUpList.size();
+        truncate(powerUpList, Math.min(numPowerUps, powerUpList.size()));
+        for (int i = 0; i < numPowerUps; i++) {
+            PowerUp powerUp = (PowerUp) snapshot.nextObject();
+            powerUpsChanged |= putAt(powerUpList, i, powerUp);
+            powerUp.restoreState(in);
+        }
+        for (int i = 0; i < checkpointList.size(); i++) {
+            checkpointList.get(i).restoreState(in);
+        }
+        
+        // The whole level's terrain and power ups never leave the indexes, so only a
+        // streamed level has to rebuild them, and only if different chunks were loaded
+        if (streamer != null) {
+            streamer.restoreState(in, snapshot);
+            if (terrainChanged) {
+                indexTerrain();
+            }
+            if (powerUpsChanged) {
+                powerUpIndex = new IntervalIndex<>(powerUpList);
+            }
+        }
+        // so that findEnemies() sees the enemies as they are now; the sweep's order only
+        // depends on where they are, so this doesn't change how later ticks play out
+        sweep.update(enemyList);
+    }
+    
+    // Sets or appends the object at a position in a list. Returns whether it was changed.
+    private static <T> boolean putAt(ArrayList<T> list, int i, T obj) {
+        if (i == list.size()) {
+            list.add(obj);
+            return true;
+        }
+        return list.set(i, obj) != obj;
+    }
+    
+    /**
+     * 
+     * @return a hash of the state of everything in the world, for checking that two
+     * runs of a level ended up in exactly the same state
+     */
+    public long getStateHash() {
+        long hash = store.getStateHash();
+        hash = hash * 31 + tickCount;
+        hash = hash * 31 + cameraOffsetX;
+        hash = hash * 31 + prevCameraOffsetX;
+        hash = hash * 31 + remainingEnemies;
+        hash = hash * 31 + numSleeping;
+        hash = hash * 31 + activePlayer.getNumLives();
+        hash = hash * 31 + activePlayer.getNumBananas();
+        hash = hash * 31 + (activePlayer.isAlive() ? 1 : 0);
+        hash = hash * 31 + (activePlayer.hasFinishedDying() ? 1 : 0);
+        hash = hash * 31 + (activePlayer.isMovingLeft() ? 1 : 0);
+        hash = hash * 31 + (activePlayer.isMovingRight() ? 1 : 0);
+        for (int i = 0; i < enemyList.size(); i++) {
+            hash = hash * 31 + (enemyList.get(i).isAlive() ? 1 : 0);
+        }
+        for (int i = 0; i < powerUpList.size(); i++) {
+            hash = hash * 31 + (powerUpList.get(i).hasBeenClaimed() ? 1 : 0);
+        }
+        for (int i = 0; i < checkpointList.size(); i++) {
+            hash = hash * 31 + (checkpointList.get(i).isReached() ? 1 : 0);
+        }
+        return hash;
+    }
+    
+    /**
+     * 
+     * @return a one-line description of the player and what is left in the level
+     */
+    public String getSummary() {
+        return "tick=" + tickCount
+                + " player=(" + activePlayer.getPx() + "," + activePlayer.getPy() + ")"
+                + " alive=" + activePlayer.isAlive()
+                + " lives=" + activePlayer.getNumLives()
+                + " bananas=" + activePlayer.getNumBananas()
+                + " enemies=" + remainingEnemies
+                + " powerUps=" + powerUpList.size()
+                + " cleared=" + isCleared();
+    }
+}
@@ -0,0 +1,59 @@
+import java.io.IOException;
+
+/**
+ * HeadlessRunner.java
+ * Runs a level without a window, images or sound: loads the level into a GameWorld,
+ * steps it with scripted input and reports the final state. Intended for level regression
+ * runs and automated playtesting on machines without a display.
+ * 
+ * Usage: java HeadlessRunner <level file> <ticks> [input script]
+ *    or: java HeadlessRunner <input recording>
+ * 
+ * The second form plays back a recording made by the game (see InputRecording) and
+ * reports whether it ended in the same state as when it was recorded.
+ * @author Jack Harkins
+ *
+ */
+public class HeadlessRunner {
+    
+    // Same as GameCourt, so the camera scrolls the same way
+    private static final int VIEW_WIDTH = 800;
+    private static final int DEFAULT_NUM_LIVES = 5;
+    
+    /**
+     * Loads a level and runs it for the given number of ticks, or until the level is
+     * cleared or the player's death animation finishes, whichever comes first.
+     * @param filename the level file
+     * @param ticks maximum number of ticks to run
+     * @param script input to apply on each tick
+     * @return the world in its final state
+     * @throws IOException if the level can't be read
+     */
+    public static GameWorld run(String filename, long ticks, InputScript script)
+            throws IOException {
+        GameWorld world = new GameWorld(VIEW_WIDTH);
+        world.load(filename, DEFAULT_NUM_LIVES);
+        world.runUntil(GameWorld.OVER, ticks, script);
+        return world;
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length == 1 && InputRecording.isRecording(args[0])) {
+            InputRecording recording = InputRecording.read(args[0]);
+            GameWorld world = recording.replay();
+            System.out.println(world.getSummary());
+            boolean matches = recording.matches(world);
+            System.out.println(matches ? "Replay matches the recording"
+                    : "Replay diverged from the recording");
+            System.exit(matches ? 0 : 1);
+        }
+        if (args.length < 2) {
+            System.err.println("Usage: java HeadlessRunner <level file> <ticks> [input script]");
+            System.err.println("   or: java HeadlessRunner <input recording>");
+            System.exit(2);
+        }
+        InputScript script = (args.length > 2) ? InputScript.read(args[2]) : new InputScript();
+        GameWorld world = run(args[0], Long.parseLong(args[1]), script);
+        System.out.println(world.getSummary());
+    }
+}
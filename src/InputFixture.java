@@ -0,0 +1,34 @@
+/**
+ * InputFixture.java
+ * Scripted input for tests that play a level with nobody at the keyboard, so that every
+ * test playing the same way uses the same script.
+ * @author Jack Harkins
+ *
+ */
+final class InputFixture {
+    
+    private InputFixture() {
+    }
+    
+    /**
+     * Walks right and keeps jumping, so that the player runs into terrain, enemies and
+     * power ups
+     * @param tick a tick number, counting from 0
+     * @return the controls held during that tick
+     */
+    static int runRightJumping(long tick) {
+        return (tick % 40 < 5) ? GameWorld.INPUT_RIGHT | GameWorld.INPUT_JUMP
+                : GameWorld.INPUT_RIGHT;
+    }
+    
+    /**
+     * Runs right for a while, then back left, jumping now and then, so that long levels
+     * are played over in both directions
+     * @param tick a tick number, counting from 0
+     * @return the controls held during that tick
+     */
+    static int runBackAndForth(long tick) {
+        int input = (tick % 4000 < 3000) ? GameWorld.INPUT_RIGHT : GameWorld.INPUT_LEFT;
+        return (tick % 90 < 10) ? input | GameWorld.INPUT_JUMP : input;
+    }
+}
@@ -0,0 +1,305 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * InputRecording.java
+ * The input for every tick of one attempt at a level, along with everything else needed
+ * to play the attempt back exactly: the level, the number of lives, and the settings of
+ * the GameWorld it was played in. The state of the world at the end of the attempt is
+ * recorded too, so that a replay can tell whether it ended up in the same place.
+ * 
+ * Recordings are saved in a compact binary format. After a header of big-endian ints
+ * ("DKCR", version) and the settings, each change of input is stored as two varints: the
+ * number of ticks since the previous change, and the bits that changed. A player holding
+ * a direction for seconds at a time takes a few bytes per second of play.
+ * @author Jack Harkins
+ *
+ */
+public class InputRecording {
+    
+    public static final int MAGIC = 0x444B4352; // "DKCR"
+    public static final int VERSION = 2;
+    // version 1 recordings have no respawnAtCheckpoints setting, since the player
+    // couldn't respawn then
+    private static final int FIRST_VERSION = 1;
+    
+    private final String levelFilename;
+    private final int numLives;
+    private final int viewWidth;
+    private final int activeWindow;
+    private final int sleepDistance;
+    private final boolean fastForwardSleepers;
+    private final boolean respawnAtCheckpoints;
+    private final InputScript script;
+    private int lastInput;
+    private long numTicks;
+    private boolean isFinished;
+    private long finalStateHash;
+    
+    /**
+     * Starts a recording of a level that has just been loaded into a world, before its
+     * first tick.
+     * @param levelFilename the level file
+     * @param numLives number of lives the level was loaded with
+     * @param world the world the level was loaded into
+     */
+    public InputRecording(String levelFilename, int numLives, GameWorld world) {
+        this(levelFilename, numLives, world.getViewWidth(), world.getActiveWindow(),
+                world.getSleepDistance(), world.isFastForwardSleepers(),
+                world.isRespawnAtCheckpoints(), new InputScript());
+    }
+    
+    private InputRecording(String levelFilename, int numLives, int viewWidth,
+            int activeWindow, int sleepDistance, boolean fastForwardSleepers,
+            boolean respawnAtCheckpoints, InputScript script) {
+        this.levelFilename = levelFilename;
+        this.numLives = numLives;
+        this.viewWidth = viewWidth;
+        this.activeWindow = activeWindow;
+        this.sleepDistance = sleepDistance;
+        this.fastForwardSleepers = fastForwardSleepers;
+        this.respawnAtCheckpoints = respawnAtCheckpoints;
+        this.script = script;
+    }
+    
+    /**
+     * Records the input for the next tick.
+     * @param input a combination of the GameWorld.INPUT_ bits
+     */
+    public void record(int input) {
+        if (isFinished) {
+            throw new IllegalStateException("recording has finished");
+        }
+        if (input != lastInput) {
+            script.set(numTicks, input);
+            lastInput = input;
+        }
+        numTicks++;
+    }
+    
+    /**
+     * Ends the recording.
+     * @param world the world being recorded, after its last tick
+     */
+    public void finish(GameWorld world) {
+        isFinished = true;
+        finalStateHash = world.getStateHash();
+    }
+    
+    public String getLevelFilename() {
+        return levelFilename;
+    }
+    
+    public int getNumLives() {
+        return numLives;
+    }
+    
+    /**
+     * 
+     * @return the input for each tick, starting from tick 0
+     */
+    public InputScript getScript() {
+        return script;
+    }
+    
+    /**
+     * 
+     * @return number of ticks recorded
+     */
+    public long getTickCount() {
+        return numTicks;
+    }
+    
+    /**
+     * 
+     * @return GameWorld.getStateHash() at the end of the recording, or 0 if it hasn't
+     * finished
+     */
+    public long getFinalStateHash() {
+        return finalStateHash;
+    }
+    
+    /**
+     * 
+     * @return a world set up the way the recorded one was, with the level loaded
+     * @throws IOException if the level can't be read
+     */
+    public GameWorld createWorld() throws IOException {
+        return createWorld(LevelTemplate.read(levelFilename));
+    }
+    
+    /**
+     * 
+     * @param template the recorded level, already read
+     * @return a world set up the way the recorded one was, with the level loaded
+     */
+    public GameWorld createWorld(LevelTemplate template) {
+        GameWorld world = new GameWorld(viewWidth);
+        world.setActiveWindow(activeWindow);
+        world.setSleepDistance(sleepDistance);
+        world.setFastForwardSleepers(fastForwardSleepers);
+        world.load(template, numLives);
+        world.setRespawnAtCheckpoints(respawnAtCheckpoints);
+        return world;
+    }
+    
+    /**
+     * Plays the whole recording back without a window.
+     * @return the world after the last recorded tick
+     * @throws IOException if the level can't be read
+     */
+    public GameWorld replay() throws IOException {
+        GameWorld world = createWorld();
+        for (long tick = 0; tick < numTicks; tick++) {
+            world.step(script.getInput(tick));
+        }
+        return world;
+    }
+    
+    /**
+     * 
+     * @param world a world that a replay of this recording has finished with
+     * @return is the world in the state the recorded one ended in?
+     */
+    public boolean matches(GameWorld world) {
+        return isFinished && world.getTickCount() == numTicks
+                && world.getStateHash() == finalStateHash;
+    }
+    
+    /**
+     * Saves a finished recording, replacing the file's contents.
+     * @param filename the file to write
+     * @throws IOException upon an error in writing
+     */
+    public void write(String filename) throws IOException {
+        if (!isFinished) {
+            throw new IllegalStateException("recording hasn't finished");
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(filename)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(levelFilename);
+            out.writeInt(numLives);
+            out.writeInt(viewWidth);
+            out.writeInt(activeWindow);
+            out.writeInt(sleepDistance);
+            out.writeBoolean(fastForwardSleepers);
+            out.writeBoolean(respawnAtCheckpoints);
+            out.writeLong(finalStateHash);
+            writeVarint(out, numTicks);
+            writeVarint(out, script.getChangeCount());
+            long prevTick = 0;
+            int prevInput = 0;
+            for (int i = 0; i < script.getChangeCount(); i++) {
+                writeVarint(out, script.getChangeTick(i) - prevTick);
+                writeVarint(out, script.getChangeInput(i) ^ prevInput);
+                prevTick = script.getChangeTick(i);
+                prevInput = script.getChangeInput(i);
+            }
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Reads a recording saved by write().
+     * @param filename the recording to read
+     * @return the recording, finished
+     * @throws IOException if the file can't be read or isn't a recording
+     */
+    public static InputRecording read(String filename) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(filename)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(filename + " is not an input recording");
+            }
+            int version = in.readInt();
+            if (version < FIRST_VERSION || version > VERSION) {
+                throw new IOException(filename + " is input recording version " + version
+                        + "; only versions " + FIRST_VERSION + " to " + VERSION
+                        + " are supported");
+            }
+            String levelFilename = in.readUTF();
+            int numLives = in.readInt();
+            int viewWidth = in.readInt();
+            int activeWindow = in.readInt();
+            int sleepDistance = in.readInt();
+            boolean fastForwardSleepers = in.readBoolean();
+            boolean respawnAtCheckpoints = (version >= 2) ? in.readBoolean() : false;
+            long finalStateHash = in.readLong();
+            long numTicks = readVarint(in);
+            long numChanges = readVarint(in);
+            InputScript script = new InputScript();
+            long tick = 0;
+            int input = 0;
+            for (long i = 0; i < numChanges; i++) {
+                tick += readVarint(in);
+                input ^= (int) readVarint(in);
+                script.set(tick, input);
+            }
+            
+            InputRecording recording = new InputRecording(levelFilename, numLives, viewWidth,
+                    activeWindow, sleepDistance, fastForwardSleepers, respawnAtCheckpoints,
+                    script);
+            recording.lastInput = input;
+            recording.numTicks = numTicks;
+            recording.isFinished = true;
+            recording.finalStateHash = finalStateHash;
+            return recording;
+        } catch (EOFException e) {
+            throw new IOException(filename + " is truncated", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(filename + " is corrupt", e);
+        } finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * 
+     * @param filename a file
+     * @return does the file start like an input recording? False if it can't be read.
+     */
+    public static boolean isRecording(String filename) {
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(filename));
+            try {
+                return in.readInt() == MAGIC;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    // Seven bits per byte, least significant first, high bit set on all but the last
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+    
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint too long");
+    }
+}
@@ -0,0 +1,122 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class InputRecordingTest {
+    
+    private static final String LEVEL = "sampleDKCLevel.txt";
+    
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("inputRecordingTest", ".dkcr");
+        file.deleteOnExit();
+        return file;
+    }
+    
+    /**
+     * Plays the sample level with input that changes every so often, recording it
+     */
+    private static InputRecording play(GameWorld world, int ticks, long seed) {
+        InputRecording recording = new InputRecording(LEVEL, 5, world);
+        Random random = new Random(seed);
+        int input = 0;
+        for (int tick = 0; tick < ticks && !world.isOver(); tick++) {
+            if (random.nextInt(20) == 0) {
+                input = random.nextInt(8);
+            }
+            recording.record(input);
+            world.step(input);
+        }
+        recording.finish(world);
+        return recording;
+    }
+    
+    private static GameWorld load() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.load(LEVEL, 5);
+        return world;
+    }
+    
+    @Test
+    public void testReplayEndsInTheRecordedState() throws IOException {
+        GameWorld world = load();
+        InputRecording recording = play(world, 3000, 1);
+        File file = tempFile();
+        recording.write(file.getPath());
+        
+        assertTrue(InputRecording.isRecording(file.getPath()));
+        InputRecording read = InputRecording.read(file.getPath());
+        assertEquals(LEVEL, read.getLevelFilename());
+        assertEquals(5, read.getNumLives());
+        assertEquals(world.getTickCount(), read.getTickCount());
+        for (long tick = 0; tick < read.getTickCount(); tick++) {
+            assertEquals(recording.getScript().getInput(tick), read.getScript().getInput(tick));
+        }
+        
+        GameWorld replayed = read.replay();
+        assertEquals(world.getSummary(), replayed.getSummary());
+        assertTrue(read.matches(replayed));
+        
+        // a different run doesn't match
+        GameWorld other = load();
+        play(other, 3000, 2);
+        assertFalse(read.matches(other));
+    }
+    
+    @Test
+    public void testWorldSettingsAreRecorded() throws IOException {
+        GameWorld world = new GameWorld(640);
+        world.setActiveWindow(400);
+        world.setSleepDistance(500);
+        world.setFastForwardSleepers(true);
+        world.load(LEVEL, 5);
+        InputRecording recording = play(world, 2000, 3);
+        File file = tempFile();
+        recording.write(file.getPath());
+        
+        GameWorld copy = InputRecording.read(file.getPath()).createWorld();
+        assertEquals(640, copy.getViewWidth());
+        assertEquals(400, copy.getActiveWindow());
+        assertEquals(500, copy.getSleepDistance());
+        assertTrue(copy.isFastForwardSleepers());
+        assertTrue(InputRecording.read(file.getPath()).matches(
+                InputRecording.read(file.getPath()).replay()));
+    }
+    
+    @Test
+    public void testRecordingsAreCompact() throws IOException {
+        GameWorld world = load();
+        InputRecording recording = new InputRecording(LEVEL, 5, world);
+        // hold right for a long time, jumping once a second
+        for (int tick = 0; tick < 10000; tick++) {
+            recording.record(GameWorld.INPUT_RIGHT | (tick % 67 == 0 ? GameWorld.INPUT_JUMP : 0));
+        }
+        recording.finish(world);
+        File file = tempFile();
+        recording.write(file.getPath());
+        // two changes per jump, a few bytes each, plus the header
+        assertEquals(2 * 150, recording.getScript().getChangeCount());
+        assertTrue("size " + file.length(), file.length() < 100 + 2 * 150 * 3);
+    }
+    
+    @Test(expected = IOException.class)
+    public void testLevelIsNotARecording() throws IOException {
+        assertFalse(InputRecording.isRecording(LEVEL));
+        InputRecording.read(LEVEL);
+    }
+    
+    @Test(expected = IOException.class)
+    public void testTruncatedRecording() throws IOException {
+        InputRecording recording = play(load(), 1000, 4);
+        File file = tempFile();
+        recording.write(file.getPath());
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 2);
+        raf.close();
+        InputRecording.read(file.getPath());
+    }
+}
@@ -0,0 +1,135 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * InputScript.java
+ * A scripted sequence of player inputs for running a GameWorld without a keyboard.
+ * The script is a list of changes: from a given tick on, a given set of controls is held.
+ * 
+ * Script files have one change per line, "<tick> <controls>", where controls is any
+ * combination of L (left), R (right) and J (jump), or - for nothing. Semicolons start
+ * comments. For example:
+ * 
+ * 0 R      ; run right
+ * 40 RJ    ; jump for one tick
+ * 41 R
+ * 200 -    ; stand still
+ * @author Jack Harkins
+ *
+ */
+public class InputScript {
+    
+    private long[] ticks = new long[16];
+    private int[] inputs = new int[16];
+    private int size;
+    
+    /**
+     * Holds the given controls from the given tick on. Changes must be added in
+     * increasing tick order.
+     * @param tick first tick the controls are held for
+     * @param input a combination of the GameWorld.INPUT_ bits
+     */
+    public void set(long tick, int input) {
+        if (size > 0 && tick <= ticks[size - 1]) {
+            throw new IllegalArgumentException("input changes must be in increasing tick order");
+        }
+        if (size == ticks.length) {
+            ticks = Arrays.copyOf(ticks, size * 2);
+            inputs = Arrays.copyOf(inputs, size * 2);
+        }
+        ticks[size] = tick;
+        inputs[size] = input;
+        size++;
+    }
+    
+    /**
+     * 
+     * @param tick a tick number, counting from 0
+     * @return the controls held during that tick
+     */
+    public int getInput(long tick) {
+        int found = Arrays.binarySearch(ticks, 0, size, tick);
+        int index = (found >= 0) ? found : -found - 2;
+        return (index < 0) ? 0 : inputs[index];
+    }
+    
+    /**
+     * 
+     * @return number of changes in the script
+     */
+    public int getChangeCount() {
+        return size;
+    }
+    
+    /**
+     * 
+     * @param i index of a change, in tick order
+     * @return the first tick of the change
+     */
+    public long getChangeTick(int i) {
+        return ticks[i];
+    }
+    
+    /**
+     * 
+     * @param i index of a change, in tick order
+     * @return the controls held from the change on
+     */
+    public int getChangeInput(int i) {
+        return inputs[i];
+    }
+    
+    /**
+     * Reads a script file in the format described above.
+     * @param filename the script to read
+     * @return the parsed script
+     * @throws IOException upon an error in reading
+     */
+    public static InputScript read(String filename) throws IOException {
+        InputScript script = new InputScript();
+        BufferedReader reader = new BufferedReader(new FileReader(filename));
+        try {
+            String line = reader.readLine();
+            while (line != null) {
+                int comment = line.indexOf(';');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length == 2) {
+                    script.set(Long.parseLong(fields[0]), parseControls(fields[1]));
+                } else if (!fields[0].isEmpty()) {
+                    throw new IOException("bad input script line: " + line);
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            reader.close();
+        }
+        return script;
+    }
+    
+    private static int parseControls(String controls) throws IOException {
+        int input = 0;
+        for (int i = 0; i < controls.length(); i++) {
+            switch (controls.charAt(i)) {
+            case 'L':
+                input |= GameWorld.INPUT_LEFT;
+                break;
+            case 'R':
+                input |= GameWorld.INPUT_RIGHT;
+                break;
+            case 'J':
+                input |= GameWorld.INPUT_JUMP;
+                break;
+            case '-':
+                break;
+            default:
+                throw new IOException("unknown control: " + controls.charAt(i));
+            }
+        }
+        return input;
+    }
+}
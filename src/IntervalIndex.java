@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * IntervalIndex.java
+ * The horizontal extents of a fixed set of objects, sorted by left edge, so that the
+ * objects overlapping a range of x coordinates can be found with a binary search instead
+ * of a scan over the whole level. Positions are recorded when the index is built; it is
+ * meant for objects that never move, such as terrain and power ups.
+ * 
+ * A query has to look back from the start of the range by as far as the widest object
+ * is wide, so objects wider than WIDE_WIDTH, such as a floor spanning the level, are kept
+ * in a list of their own. Then the rest of the objects only have to be looked back over
+ * as far as the widest of them, and a query costs about the same wherever it is.
+ * @author Jack Harkins
+ *
+ */
+public class IntervalIndex<T extends GameObj> {
+    
+    /**
+     * Objects wider than this, in pixels, are kept apart from the rest
+     */
+    public static final int WIDE_WIDTH = 2048;
+    
+    private final List<T> objs;
+    private final int[] left;
+    private final int[] right;
+    // positions in objs of the objects up to WIDE_WIDTH wide, and of the wider ones, each
+    // in order, along with the widest object of each, which bounds how far back a query
+    // has to look
+    private final int[] narrow;
+    private final int[] wide;
+    private final int maxNarrowWidth;
+    private final int maxWideWidth;
+    
+    /**
+     * @param objs the objects to index; the list itself is not modified
+     */
+    public IntervalIndex(List<T> objs) {
+        this.objs = new ArrayList<T>(objs);
+        // stable, so objects at the same x keep their order in the original list
+        Collections.sort(this.objs, new Comparator<T>() {
+            @Override
+            public int compare(T a, T b) {
+                return Integer.compare(a.getPx(), b.getPx());
+            }
+        });
+        left = new int[this.objs.size()];
+        right = new int[this.objs.size()];
+        int numWide = 0;
+        int widestNarrow = 0;
+        int widestWide = 0;
+        for (int i = 0; i < left.length; i++) {
+            T obj = this.objs.get(i);
+            left[i] = obj.getPx();
+            right[i] = obj.getPx() + obj.getWidth();
+            if (obj.getWidth() > WIDE_WIDTH) {
+                numWide++;
+                widestWide = Math.max(widestWide, obj.getWidth());
+            } else {
+                widestNarrow = Math.max(widestNarrow, obj.getWidth());
+            }
+        }
+        maxNarrowWidth = widestNarrow;
+        maxWideWidth = widestWide;
+        narrow = new int[left.length - numWide];
+        wide = new int[numWide];
+        int numNarrow = 0;
+        numWide = 0;
+        for (int i = 0; i < left.length; i++) {
+            if (right[i] - left[i] > WIDE_WIDTH) {
+                wide[numWide++] = i;
+            } else {
+                narrow[numNarrow++] = i;
+            }
+        }
+    }
+    
+    /**
+     * Finds every object whose extent overlaps [minX, maxX), in order of left edge.
+     * @param out receives the objects found; cleared first
+     */
+    public void query(int minX, int maxX, List<? super T> out) {
+        out.clear();
+        // anything starting before minX - maxNarrowWidth ends before minX, and likewise
+        // for the wide objects
+        int n = lowerBound(narrow, minX - maxNarrowWidth);
+        int w = lowerBound(wide, minX - maxWideWidth);
+        while (true) {
+            // whichever comes first of the two, so that the objects found stay in order
+            int nextNarrow = (n < narrow.length && left[narrow[n]] < maxX)
+                    ? narrow[n] : Integer.MAX_VALUE;
+            int nextWide = (w < wide.length && left[wide[w]] < maxX)
+                    ? wide[w] : Integer.MAX_VALUE;
+            int i;
+            if (nextNarrow < nextWide) {
+                i = nextNarrow;
+                n++;
+            } else if (nextWide != Integer.MAX_VALUE) {
+                i = nextWide;
+                w++;
+            } else {
+                break;
+            }
+            if (right[i] > minX) {
+                out.add(objs.get(i));
+            }
+        }
+    }
+    
+    /**
+     * 
+     * @return the number of objects indexed
+     */
+    public int size() {
+        return left.length;
+    }
+    
+    /**
+     * 
+     * @return the number of objects wider than WIDE_WIDTH
+     */
+    public int getWideCount() {
+        return wide.length;
+    }
+    
+    // first entry of positions whose object's left edge is >= x
+    private int lowerBound(int[] positions, int x) {
+        int lo = 0;
+        int hi = positions.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (left[positions[mid]] < x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,111 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntervalIndexTest {
+    
+    @Test
+    public void testEmpty() {
+        IntervalIndex<TerrainBlock> index = new IntervalIndex<>(new ArrayList<TerrainBlock>());
+        List<TerrainBlock> found = new ArrayList<>();
+        index.query(-1000, 1000, found);
+        assertTrue(found.isEmpty());
+    }
+    
+    @Test
+    public void testEdgesAreExclusive() {
+        List<TerrainBlock> blocks = new ArrayList<>();
+        blocks.add(new TerrainBlock(0, 0, 60, 60));
+        IntervalIndex<TerrainBlock> index = new IntervalIndex<>(blocks);
+        List<TerrainBlock> found = new ArrayList<>();
+        
+        index.query(60, 800, found);
+        assertTrue("range starting at right edge", found.isEmpty());
+        index.query(-800, 0, found);
+        assertTrue("range ending at left edge", found.isEmpty());
+        index.query(59, 800, found);
+        assertEquals(1, found.size());
+        index.query(-800, 1, found);
+        assertEquals(1, found.size());
+    }
+    
+    @Test
+    public void testMatchesFullScan() {
+        Random random = new Random(9);
+        List<TerrainBlock> blocks = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            blocks.add(new TerrainBlock(random.nextInt(100000) - 5000, 0,
+                    1 + random.nextInt(600), 60));
+        }
+        IntervalIndex<TerrainBlock> index = new IntervalIndex<>(blocks);
+        assertEquals(blocks.size(), index.size());
+        
+        List<TerrainBlock> found = new ArrayList<>();
+        for (int q = 0; q < 500; q++) {
+            int minX = random.nextInt(110000) - 10000;
+            int maxX = minX + random.nextInt(1600);
+            index.query(minX, maxX, found);
+            
+            int expected = 0;
+            for (TerrainBlock block : blocks) {
+                boolean overlaps = block.getPx() < maxX
+                        && block.getPx() + block.getWidth() > minX;
+                if (overlaps) {
+                    expected++;
+                    assertTrue(found.contains(block));
+                }
+            }
+            assertEquals(expected, found.size());
+            for (int i = 1; i < found.size(); i++) {
+                assertTrue("sorted by left edge",
+                        found.get(i - 1).getPx() <= found.get(i).getPx());
+            }
+        }
+    }
+    
+    @Test
+    public void testWideBlocksAreFoundInOrder() {
+        Random random = new Random(11);
+        List<TerrainBlock> blocks = new ArrayList<>();
+        // floors spanning most of the level, among ordinary blocks
+        blocks.add(new TerrainBlock(-500, 0, 100000, 60));
+        for (int i = 0; i < 2000; i++) {
+            int width = (i % 100 == 0) ? IntervalIndex.WIDE_WIDTH + random.nextInt(20000)
+                    : 1 + random.nextInt(600);
+            blocks.add(new TerrainBlock(random.nextInt(100000), 0, width, 60));
+        }
+        blocks.add(new TerrainBlock(0, 0, IntervalIndex.WIDE_WIDTH, 60));
+        IntervalIndex<TerrainBlock> index = new IntervalIndex<>(blocks);
+        assertEquals(21, index.getWideCount());
+        
+        // the same blocks in the same order as a full scan of the blocks sorted by left
+        // edge, which keeps blocks at the same x in list order
+        List<TerrainBlock> sorted = new ArrayList<>(blocks);
+        Collections.sort(sorted, new Comparator<TerrainBlock>() {
+            @Override
+            public int compare(TerrainBlock a, TerrainBlock b) {
+                return Integer.compare(a.getPx(), b.getPx());
+            }
+        });
+        List<TerrainBlock> found = new ArrayList<>();
+        List<TerrainBlock> expected = new ArrayList<>();
+        for (int q = 0; q < 500; q++) {
+            int minX = random.nextInt(110000) - 10000;
+            int maxX = minX + random.nextInt(1600);
+            index.query(minX, maxX, found);
+            expected.clear();
+            for (TerrainBlock block : sorted) {
+                if (block.getPx() < maxX && block.getPx() + block.getWidth() > minX) {
+                    expected.add(block);
+                }
+            }
+            assertEquals(expected, found);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.Arrays;
+
+/**
+ * LatencyHistogram.java
+ * Counts durations in buckets whose width grows with the value, in the style of
+ * HdrHistogram: every power of two is split into SUB_BUCKETS equal buckets, so any value
+ * is placed to within about 1.6% while a histogram covering nanoseconds to over a minute
+ * needs only a couple of thousand counters. Recording a value is a few shifts and an
+ * increment, and never allocates.
+ * 
+ * Not thread-safe; see TickProfiler for a synchronized wrapper.
+ * @author Jack Harkins
+ *
+ */
+public class LatencyHistogram {
+    
+    // Values below 2 * SUB_BUCKETS are counted exactly
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Larger values are counted as this, about 68 seconds in nanoseconds
+    public static final long MAX_VALUE = (1L << 36) - 1;
+    
+    private final long[] counts = new long[indexOf(MAX_VALUE) + 1];
+    private long totalCount;
+    private long sum;
+    private long max;
+    
+    // Values in [2^k, 2^(k+1)) for k > SUB_BUCKET_BITS are split into SUB_BUCKETS
+    // buckets of width 2^(k - SUB_BUCKET_BITS)
+    private static int indexOf(long value) {
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        if (msb <= SUB_BUCKET_BITS) {
+            return (int) value;
+        }
+        int shift = msb - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+    
+    // The largest value counted in a bucket
+    private static long highestValueIn(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long lowest = (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+    
+    /**
+     * Counts one value. Negative values are counted as 0, and values over MAX_VALUE as
+     * MAX_VALUE.
+     * @param value a duration, normally in nanoseconds
+     */
+    public void record(long value) {
+        long v = Math.min(Math.max(value, 0), MAX_VALUE);
+        counts[indexOf(v)]++;
+        totalCount++;
+        sum += v;
+        if (v > max) {
+            max = v;
+        }
+    }
+    
+    /**
+     * 
+     * @return number of values recorded
+     */
+    public long getCount() {
+        return totalCount;
+    }
+    
+    /**
+     * 
+     * @return the largest value recorded, exactly, or 0 if there are none
+     */
+    public long getMax() {
+        return max;
+    }
+    
+    /**
+     * 
+     * @return the mean of the values recorded, exactly, or 0 if there are none
+     */
+    public double getMean() {
+        return (totalCount == 0) ? 0 : (double) sum / totalCount;
+    }
+    
+    /**
+     * 
+     * @param percentile from 0 to 100
+     * @return a value that at least the given percentage of the values recorded are no
+     * larger than, accurate to the width of its bucket; 0 if there are none
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), max);
+            }
+        }
+        return max;
+    }
+    
+    /**
+     * Forgets every value recorded so far.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        max = 0;
+    }
+}
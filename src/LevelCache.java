@@ -0,0 +1,105 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LevelCache.java
+ * Keeps the most recently used levels in memory as LevelTemplates, so that restarting a
+ * level doesn't read its file again. A level is read again if its file has been modified
+ * since it was cached. When the cache is full, the least recently used level is dropped.
+ * Safe to use from several threads.
+ * @author Jack Harkins
+ *
+ */
+public class LevelCache {
+    
+    private static class Entry {
+        final long lastModified;
+        final long length;
+        final LevelTemplate template;
+        
+        Entry(long lastModified, long length, LevelTemplate template) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.template = template;
+        }
+    }
+    
+    private final Map<String, Entry> entries;
+    private int hits;
+    private int misses;
+    
+    /**
+     * @param maxLevels the most levels to keep at once
+     */
+    public LevelCache(final int maxLevels) {
+        // access order, so that iteration starts at the least recently used level
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxLevels;
+            }
+        };
+    }
+    
+    /**
+     * Returns a level, reading it if it isn't cached or its file has changed.
+     * @param filename the level file
+     * @return the level in the file
+     * @throws IOException if the file does not exist or can't be read
+     */
+    public LevelTemplate get(String filename) throws IOException {
+        File file = new File(filename);
+        String path = file.getCanonicalPath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        synchronized (entries) {
+            Entry entry = entries.get(path);
+            if (entry != null && entry.lastModified == lastModified
+                    && entry.length == length) {
+                hits++;
+                return entry.template;
+            }
+        }
+        // read outside the lock so that other levels can be fetched meanwhile
+        LevelTemplate template = LevelTemplate.read(filename);
+        synchronized (entries) {
+            misses++;
+            entries.put(path, new Entry(lastModified, length, template));
+        }
+        return template;
+    }
+    
+    /**
+     * 
+     * @return the number of levels currently cached
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    /**
+     * 
+     * @return the number of get() calls answered from memory
+     */
+    public int getHits() {
+        synchronized (entries) {
+            return hits;
+        }
+    }
+    
+    /**
+     * 
+     * @return the number of get() calls that had to read the file
+     */
+    public int getMisses() {
+        synchronized (entries) {
+            return misses;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Test;
+
+public class LevelCacheTest {
+    
+    private static File copyOfSampleLevel() throws IOException {
+        File file = File.createTempFile("levelCacheTest", ".txt");
+        file.deleteOnExit();
+        Files.copy(new File("sampleDKCLevel.txt").toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+    
+    private static String play(GameWorld world, int ticks) {
+        for (int tick = 0; tick < ticks; tick++) {
+            int input = (tick % 50 < 3) ? GameWorld.INPUT_RIGHT | GameWorld.INPUT_JUMP
+                    : GameWorld.INPUT_RIGHT;
+            world.step(input);
+        }
+        return world.getSummary();
+    }
+    
+    @Test
+    public void testRepeatedGetIsAHit() throws IOException {
+        LevelCache cache = new LevelCache(2);
+        LevelTemplate first = cache.get("sampleDKCLevel.txt");
+        assertSame(first, cache.get("sampleDKCLevel.txt"));
+        assertSame(first, cache.get(new File("sampleDKCLevel.txt").getAbsolutePath()));
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+    }
+    
+    @Test
+    public void testModifiedFileIsReread() throws IOException {
+        File file = copyOfSampleLevel();
+        LevelCache cache = new LevelCache(2);
+        LevelTemplate first = cache.get(file.getPath());
+        
+        Files.write(file.toPath(), "!Player\n60,60,dk.png,~\n".getBytes("UTF-8"));
+        assertTrue(file.setLastModified(file.lastModified() + 10000));
+        LevelTemplate second = cache.get(file.getPath());
+        assertNotSame(first, second);
+        assertEquals(1, second.getObjectCount());
+        assertEquals(1, cache.size());
+    }
+    
+    @Test
+    public void testLeastRecentlyUsedLevelIsEvicted() throws IOException {
+        File a = copyOfSampleLevel();
+        File b = copyOfSampleLevel();
+        File c = copyOfSampleLevel();
+        LevelCache cache = new LevelCache(2);
+        LevelTemplate templateA = cache.get(a.getPath());
+        cache.get(b.getPath());
+        cache.get(a.getPath()); // b is now the least recently used
+        cache.get(c.getPath());
+        assertEquals(2, cache.size());
+        
+        assertSame(templateA, cache.get(a.getPath()));
+        int misses = cache.getMisses();
+        cache.get(b.getPath());
+        assertEquals(misses + 1, cache.getMisses());
+    }
+    
+    @Test
+    public void testRespawnFromTemplatePlaysLikeAFreshLoad() throws IOException {
+        GameWorld fromFile = new GameWorld(800);
+        fromFile.load("sampleDKCLevel.txt", 5);
+        String expected = play(fromFile, 2000);
+        
+        LevelTemplate template = new LevelCache(1).get("sampleDKCLevel.txt");
+        GameWorld world = new GameWorld(800);
+        world.load(template, 5);
+        assertEquals(expected, play(world, 2000));
+        // playing must not have changed the template
+        world.load(template, 5);
+        assertEquals(expected, play(world, 2000));
+    }
+}
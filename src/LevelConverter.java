@@ -0,0 +1,36 @@
+import java.io.IOException;
+
+/**
+ * LevelConverter.java
+ * Converts a level from the text format to the binary format, which GameWorld loads
+ * several times faster.
+ * 
+ * Usage: java LevelConverter <text level> <binary level>
+ * @author Jack Harkins
+ *
+ */
+public class LevelConverter {
+    
+    /**
+     * Reads a text level and writes the same objects as a binary level.
+     * @param textFilename the level to convert
+     * @param binaryFilename the file to write
+     * @throws IOException upon an error in reading or writing
+     */
+    public static void convert(String textFilename, String binaryFilename)
+            throws IOException {
+        BinaryLevelWriter writer = new BinaryLevelWriter();
+        LevelParser parser = new LevelParser(textFilename);
+        parser.parse(writer);
+        parser.close();
+        writer.write(binaryFilename);
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java LevelConverter <text level> <binary level>");
+            System.exit(2);
+        }
+        convert(args[0], args[1]);
+    }
+}
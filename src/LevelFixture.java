@@ -0,0 +1,122 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LevelFixture.java
+ * Builds small text levels for tests. Each test declares only the objects it needs, and
+ * the fixture writes them out in the sections the level parser expects. The player
+ * starts at (60, 60) unless placed somewhere else.
+ * @author Jack Harkins
+ *
+ */
+final class LevelFixture {
+    
+    // InputFixture.runRightJumping() covers this much ground per tick
+    private static final int RUN_SPEED = 6;
+    
+    private String player = "60,60,dk.png";
+    private final List<String> terrainBlocks = new ArrayList<>();
+    private final List<String> enemies = new ArrayList<>();
+    private final List<String> powerUps = new ArrayList<>();
+    private final List<String> checkpoints = new ArrayList<>();
+    
+    /**
+     * A flat floor long enough to play InputFixture.runRightJumping() on for the given
+     * number of ticks, with a banana every five blocks and an enemy every fifty. The
+     * player picks up the bananas and stomps every enemy along the way without dying.
+     * @param ticks how long the level has to last
+     * @return the level, which more objects can be added to
+     */
+    static LevelFixture runway(int ticks) {
+        LevelFixture level = new LevelFixture();
+        int length = (ticks + 1000) * RUN_SPEED;
+        for (int x = 0; x < length; x += 60) {
+            level.terrain(x, 0, 60, 60);
+        }
+        for (int x = 600; x < length; x += 300) {
+            level.powerUp(x, 60);
+        }
+        for (int x = 1000; x < length; x += 3000) {
+            level.enemy(x, 60);
+        }
+        return level;
+    }
+    
+    LevelFixture player(int px, int py) {
+        return player(px, py, "dk.png");
+    }
+    
+    LevelFixture player(int px, int py, String image) {
+        player = px + "," + py + "," + image;
+        return this;
+    }
+    
+    LevelFixture terrain(int px, int py, int width, int height) {
+        terrainBlocks.add(px + "," + py + "," + width + "," + height);
+        return this;
+    }
+    
+    LevelFixture enemy(int px, int py) {
+        enemies.add(px + "," + py + ",diddy");
+        return this;
+    }
+    
+    LevelFixture powerUp(int px, int py) {
+        return powerUp(px, py, "banana");
+    }
+    
+    LevelFixture powerUp(int px, int py, String type) {
+        powerUps.add(px + "," + py + "," + type);
+        return this;
+    }
+    
+    LevelFixture checkpoint(int px, int py) {
+        checkpoints.add(px + "," + py);
+        return this;
+    }
+    
+    /**
+     * Writes the level to a temporary file, deleted when the tests finish
+     * @return the level's filename
+     * @throws IOException if the file can't be written
+     */
+    String write() throws IOException {
+        File file = File.createTempFile("levelFixture", ".txt");
+        return writeTo(file);
+    }
+    
+    /**
+     * Writes the level to the given file, deleted when the tests finish
+     * @param file where to write the level
+     * @return the level's filename
+     * @throws IOException if the file can't be written
+     */
+    String writeTo(File file) throws IOException {
+        file.deleteOnExit();
+        PrintWriter out = new PrintWriter(file, "UTF-8");
+        try {
+            out.println("!Player");
+            out.println(player + ",~");
+            writeSection(out, "!TerrainBlock", terrainBlocks);
+            writeSection(out, "!Enemy", enemies);
+            writeSection(out, "!PowerUp", powerUps);
+            writeSection(out, "!Checkpoint", checkpoints);
+        } finally {
+            out.close();
+        }
+        return file.getPath();
+    }
+    
+    private static void writeSection(PrintWriter out, String header, List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        out.println(header);
+        for (String line : lines) {
+            out.println(line + ",~");
+        }
+    }
+}
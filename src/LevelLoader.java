@@ -0,0 +1,407 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * LevelLoader.java
+ * Gets a level ready to play without blocking the thread that asked for it. The level is
+ * read (through a LevelCache) and turned into a GameWorld on a loader thread, while the
+ * sprites it uses and the game's sounds are decoded in parallel on a pool of decoder
+ * threads. The caller is told when everything is ready, and can follow the progress of
+ * the load in the meantime.
+ * @author Jack Harkins
+ *
+ */
+public class LevelLoader {
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    /**
+     * Told about a load as it happens. Called on loader and decoder threads, never on
+     * the thread that started the load.
+     */
+    public interface Listener {
+        /**
+         * Part of the load has finished; see Load.getProgress()
+         */
+        void progress(Load load);
+
+        /**
+         * Everything is ready; the new world is available from Load.getWorld()
+         */
+        void loaded(Load load);
+
+        /**
+         * The level or one of its sprites couldn't be read
+         */
+        void failed(Load load, Exception e);
+    }
+
+    /**
+     * One request to load a level, with how far along it is and how long it took.
+     * Besides the time spent loading, a Load reports the time from the request until the
+     * first frame of the level was shown, and how long the thread that owns the screen
+     * was kept busy by the load; the owner of the screen fills those in by calling
+     * addBlockedNanos() and firstFrameShown().
+     */
+    public static class Load {
+        private final String filename;
+        private final int numLives;
+        private final InputRecording recording;
+        private final Listener listener;
+        private final long requestNanos = System.nanoTime();
+        private final AtomicInteger totalSteps = new AtomicInteger();
+        private final AtomicInteger completedSteps = new AtomicInteger();
+        private volatile GameWorld world;
+        private volatile long readyNanos;
+        private volatile long firstFrameNanos;
+        private volatile long blockedNanos;
+
+        private Load(String filename, int numLives, InputRecording recording,
+                Listener listener) {
+            this.filename = filename;
+            this.numLives = numLives;
+            this.recording = recording;
+            this.listener = listener;
+        }
+
+        private void addSteps(int steps) {
+            totalSteps.addAndGet(steps);
+        }
+
+        private void completeStep() {
+            completedSteps.incrementAndGet();
+            listener.progress(this);
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+        
+        public int getNumLives() {
+            return numLives;
+        }
+
+        /**
+         *
+         * @return the fraction of the load finished so far, from 0 to 1
+         */
+        public double getProgress() {
+            int total = totalSteps.get();
+            return (total == 0) ? 0 : Math.min(1.0, (double) completedSteps.get() / total);
+        }
+
+        /**
+         *
+         * @return has everything finished loading?
+         */
+        public boolean isReady() {
+            return readyNanos != 0;
+        }
+
+        /**
+         *
+         * @return the loaded level, or null if it isn't ready yet
+         */
+        public GameWorld getWorld() {
+            return world;
+        }
+
+        /**
+         * Adds time that the thread drawing the screen spent on this load, e.g. starting
+         * it or handing its world over to the game loop.
+         * @param nanos time spent, in nanoseconds
+         */
+        public void addBlockedNanos(long nanos) {
+            blockedNanos += nanos;
+        }
+
+        /**
+         * Records that the first frame of the loaded level has been shown. Only the first
+         * call has any effect.
+         */
+        public void firstFrameShown() {
+            if (firstFrameNanos == 0) {
+                firstFrameNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         *
+         * @return time from the request until everything was loaded, or -1 if it hasn't
+         * finished
+         */
+        public long getLoadMillis() {
+            return isReady() ? (readyNanos - requestNanos) / NANOS_PER_MILLI : -1;
+        }
+
+        /**
+         *
+         * @return time from the request until the first frame was shown, or -1 if it
+         * hasn't been
+         */
+        public long getTimeToFirstFrameMillis() {
+            return (firstFrameNanos != 0) ? (firstFrameNanos - requestNanos) / NANOS_PER_MILLI
+                    : -1;
+        }
+
+        /**
+         *
+         * @return total time the thread drawing the screen spent on this load
+         */
+        public long getBlockedMillis() {
+            return blockedNanos / NANOS_PER_MILLI;
+        }
+
+        /**
+         *
+         * @return a one line summary of the times above
+         */
+        public String getReport() {
+            return String.format("Loaded %s in %d ms, first frame after %d ms, EDT blocked %d ms",
+                    filename, getLoadMillis(), getTimeToFirstFrameMillis(), getBlockedMillis());
+        }
+    }
+
+    private final LevelCache levelCache;
+    private final int viewWidth;
+    private final int activeWindow;
+    private final List<String> imageFiles;
+    private final List<String> soundFiles;
+    private final Map<String, Clip> clips = new ConcurrentHashMap<>();
+    private List<Future<?>> soundTasks; // guarded by this
+
+    // Loads run one at a time on the loader thread, which hands decoding to the decoders
+    private final ExecutorService loaderThread;
+    private final ExecutorService decoders;
+
+    /**
+     * @param levelCache where to read levels from
+     * @param viewWidth width of the visible part of the level, passed to each GameWorld
+     * @param activeWindow active window of each GameWorld (see
+     * GameWorld.setActiveWindow())
+     * @param imageFiles images to have decoded by the end of every load, besides the
+     * sprites in the level itself, e.g. backgrounds
+     * @param soundFiles sounds to open, either when loadSounds() is called or during the
+     * first load, available afterwards from getClip()
+     */
+    public LevelLoader(LevelCache levelCache, int viewWidth, int activeWindow,
+            List<String> imageFiles, List<String> soundFiles) {
+        this.levelCache = levelCache;
+        this.viewWidth = viewWidth;
+        this.activeWindow = activeWindow;
+        this.imageFiles = new ArrayList<>(imageFiles);
+        this.soundFiles = new ArrayList<>(soundFiles);
+        loaderThread = Executors.newSingleThreadExecutor(daemonThreads("Level loader"));
+        decoders = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()),
+                daemonThreads("Asset decoder"));
+    }
+
+    // Loader threads shouldn't keep the game running once its window is closed
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + " " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Starts loading a level and returns straight away.
+     * @param filename the level file
+     * @param numLives number of lives the player starts with
+     * @param listener told about the progress and result of the load
+     * @return the load, which can be checked on at any time
+     */
+    public Load load(String filename, int numLives, Listener listener) {
+        return start(new Load(filename, numLives, null, listener));
+    }
+
+    /**
+     * Starts loading the level of a recording into a world set up the way the recorded
+     * one was (see InputRecording.createWorld()), ignoring the view width and active
+     * window passed to the constructor, and returns straight away.
+     * @param recording the recording to be played back
+     * @param listener told about the progress and result of the load
+     * @return the load, which can be checked on at any time
+     */
+    public Load load(InputRecording recording, Listener listener) {
+        return start(new Load(recording.getLevelFilename(), recording.getNumLives(),
+                recording, listener));
+    }
+
+    private Load start(final Load load) {
+        loaderThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                runLoad(load);
+            }
+        });
+        return load;
+    }
+
+    /**
+     * Starts opening the sounds passed to the constructor in the background, so that e.g.
+     * music can play before the first level is loaded. Only the first call does anything.
+     * @param whenDone run on a decoder thread once every sound has been opened or has
+     * failed to open; may be null
+     */
+    public synchronized void loadSounds(final Runnable whenDone) {
+        if (soundTasks != null) {
+            return;
+        }
+        soundTasks = new ArrayList<>();
+        final AtomicInteger remaining = new AtomicInteger(soundFiles.size());
+        for (final String sound : soundFiles) {
+            soundTasks.add(decoders.submit(new Runnable() {
+                @Override
+                public void run() {
+                    openClip(sound);
+                    if (remaining.decrementAndGet() == 0 && whenDone != null) {
+                        whenDone.run();
+                    }
+                }
+            }));
+        }
+    }
+    
+    private synchronized List<Future<?>> getSoundTasks() {
+        return soundTasks;
+    }
+
+    /**
+     *
+     * @param filename a sound file passed to the constructor
+     * @return the opened sound, or null if it hasn't been loaded or couldn't be
+     */
+    public Clip getClip(String filename) {
+        return clips.get(filename);
+    }
+
+    private void runLoad(Load load) {
+        List<Future<?>> pending = new ArrayList<>();
+        Exception failure = null;
+        try {
+            // reading the level, building its world and opening the sounds are one step
+            // each
+            load.addSteps(3);
+            loadSounds(null);
+            load.addSteps(imageFiles.size());
+            for (String image : imageFiles) {
+                pending.add(decoders.submit(decodeImage(image, load)));
+            }
+
+            LevelTemplate template = levelCache.get(load.filename);
+            load.completeStep();
+            load.addSteps(template.getImageNames().size());
+            for (String image : template.getImageNames()) {
+                pending.add(decoders.submit(decodeImage(image, load)));
+            }
+            GameWorld world;
+            if (load.recording != null) {
+                world = load.recording.createWorld(template);
+            } else {
+                world = new GameWorld(viewWidth);
+                world.setActiveWindow(activeWindow);
+                world.load(template, load.numLives);
+            }
+            load.completeStep();
+            load.world = world;
+            for (Future<?> task : getSoundTasks()) {
+                task.get();
+            }
+            load.completeStep();
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        // Even if the load has failed, let the decoders finish so that nothing from this
+        // load is still running once the listener has been told
+        for (Future<?> task : pending) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (failure == null) {
+                    failure = (cause instanceof Exception) ? (Exception) cause : e;
+                }
+            } catch (InterruptedException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        // the sprites are all decoded by now, so the world only has to look them up
+        if (failure == null) {
+            try {
+                load.world.loadSprites();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            load.world = null;
+            load.listener.failed(load, failure);
+        } else {
+            load.readyNanos = System.nanoTime();
+            load.listener.loaded(load);
+        }
+    }
+
+    private static Callable<Void> decodeImage(final String filename, final Load load) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                try {
+                    SpriteCache.get(filename);
+                } catch (IOException e) {
+                    throw new IOException("can't read image " + filename, e);
+                }
+                load.completeStep();
+                return null;
+            }
+        };
+    }
+
+    // The game can be played without sound, so a sound that can't be opened doesn't fail
+    // the load
+    private void openClip(String filename) {
+        try {
+            AudioInputStream stream = AudioSystem.getAudioInputStream(new File(filename));
+            Clip clip = AudioSystem.getClip();
+            clip.open(stream);
+            clips.put(filename, clip);
+        } catch (UnsupportedAudioFileException e) {
+            e.printStackTrace();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (LineUnavailableException e) {
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            // no audio device to play it on
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LevelLoaderTest {
+    
+    // Remembers how a load ended
+    private static class WaitingListener implements LevelLoader.Listener {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile int progressCalls;
+        volatile Exception failure;
+        
+        @Override
+        public void progress(LevelLoader.Load load) {
+            progressCalls++;
+        }
+        
+        @Override
+        public void loaded(LevelLoader.Load load) {
+            done.countDown();
+        }
+        
+        @Override
+        public void failed(LevelLoader.Load load, Exception e) {
+            failure = e;
+            done.countDown();
+        }
+        
+        void await() throws InterruptedException {
+            assertTrue("load didn't finish", done.await(30, TimeUnit.SECONDS));
+        }
+    }
+    
+    // A level drawn only with images that ship with the game
+    private static String writeLevel(String playerImage) throws IOException {
+        LevelFixture level = new LevelFixture().player(60, 60, playerImage);
+        for (int i = 0; i < 100; i++) {
+            level.terrain(i * 60, 0, 60, 60);
+        }
+        for (int i = 0; i < 20; i++) {
+            level.powerUp(i * 300, 100, (i % 2 == 0) ? "banana" : "bananaBunch");
+        }
+        return level.write();
+    }
+    
+    private static LevelLoader newLoader(String... soundFiles) {
+        return new LevelLoader(new LevelCache(2), 800, GameWorld.WHOLE_LEVEL,
+                Collections.singletonList("jungleBackground.png"), Arrays.asList(soundFiles));
+    }
+    
+    @Test
+    public void testLoadedWorldMatchesASynchronousLoad() throws Exception {
+        String level = writeLevel("redBalloon.png");
+        SpriteCache.clear();
+        WaitingListener listener = new WaitingListener();
+        LevelLoader.Load load = newLoader().load(level, 5, listener);
+        listener.await();
+        
+        assertNull(listener.failure);
+        assertTrue(load.isReady());
+        assertEquals(1.0, load.getProgress(), 0);
+        assertTrue(listener.progressCalls > 0);
+        assertTrue(load.getLoadMillis() >= 0);
+        // the player's, both power ups' and the background
+        assertEquals(4, SpriteCache.size());
+        
+        GameWorld expected = new GameWorld(800);
+        expected.load(level, 5);
+        for (int tick = 0; tick < 500; tick++) {
+            expected.step(GameWorld.INPUT_RIGHT);
+            load.getWorld().step(GameWorld.INPUT_RIGHT);
+        }
+        assertEquals(expected.getSummary(), load.getWorld().getSummary());
+    }
+    
+    @Test
+    public void testRecordingIsLoadedWithItsOwnSettings() throws Exception {
+        String level = writeLevel("banana.png");
+        GameWorld recorded = new GameWorld(600);
+        recorded.setActiveWindow(400);
+        recorded.setSleepDistance(300);
+        recorded.setFastForwardSleepers(true);
+        recorded.load(level, 3);
+        InputRecording recording = new InputRecording(level, 3, recorded);
+        for (int tick = 0; tick < 300; tick++) {
+            recording.record(GameWorld.INPUT_RIGHT);
+            recorded.step(GameWorld.INPUT_RIGHT);
+        }
+        recording.finish(recorded);
+        
+        // the loader's own view width and active window don't apply
+        WaitingListener listener = new WaitingListener();
+        LevelLoader.Load load = newLoader().load(recording, listener);
+        listener.await();
+        assertNull(listener.failure);
+        GameWorld world = load.getWorld();
+        assertEquals(600, world.getViewWidth());
+        assertEquals(400, world.getActiveWindow());
+        assertEquals(300, world.getSleepDistance());
+        assertTrue(world.isFastForwardSleepers());
+        assertFalse(world.isRespawnAtCheckpoints());
+        assertEquals(3, world.getPlayer().getNumLives());
+        for (int tick = 0; tick < 300; tick++) {
+            world.step(recording.getScript().getInput(tick));
+        }
+        assertTrue(recording.matches(world));
+    }
+    
+    @Test
+    public void testMissingSpriteFailsTheLoad() throws Exception {
+        WaitingListener listener = new WaitingListener();
+        LevelLoader.Load load = newLoader().load(writeLevel("noSuchImage.png"), 5, listener);
+        listener.await();
+        assertTrue(listener.failure instanceof IOException);
+        assertFalse(load.isReady());
+        assertNull(load.getWorld());
+    }
+    
+    @Test
+    public void testMissingLevelFailsTheLoad() throws Exception {
+        WaitingListener listener = new WaitingListener();
+        newLoader().load("noSuchLevel.txt", 5, listener);
+        listener.await();
+        assertTrue(listener.failure instanceof IOException);
+    }
+    
+    @Test
+    public void testMissingSoundDoesNotFailTheLoad() throws Exception {
+        LevelLoader loader = newLoader("noSuchSound.wav");
+        WaitingListener listener = new WaitingListener();
+        LevelLoader.Load load = loader.load(writeLevel("banana.png"), 5, listener);
+        listener.await();
+        assertNull(listener.failure);
+        assertTrue(load.isReady());
+        assertNull(loader.getClip("noSuchSound.wav"));
+    }
+    
+    @Test
+    public void testReportedTimes() throws Exception {
+        WaitingListener listener = new WaitingListener();
+        LevelLoader.Load load = newLoader().load(writeLevel("banana.png"), 5, listener);
+        assertEquals(-1, load.getTimeToFirstFrameMillis());
+        listener.await();
+        load.addBlockedNanos(3000000);
+        load.addBlockedNanos(2000000);
+        load.firstFrameShown();
+        assertEquals(5, load.getBlockedMillis());
+        assertTrue(load.getTimeToFirstFrameMillis() >= load.getLoadMillis());
+        assertTrue(load.getReport(), load.getReport().contains("EDT blocked 5 ms"));
+    }
+}
@@ -1,45 +1,128 @@
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Scanner;
-
-import javax.swing.JOptionPane;
 
 /**
  * LevelParser.java
  * Reads in an input level file and provides collections of tokens that
  * can be used to initialize various game objects.
+ * 
+ * The whole file is read into memory at once and tokenized where it lies: tokens are
+ * recorded as offsets into the file's bytes and numbers are parsed straight from them, so
+ * parse() hands each game object to a Loader without creating a String per token.
+ * readNextTokens() still provides the tokens of one line at a time as Strings.
  * @author Jack Harkins
  *
  */
 public class LevelParser {
     
-    private Scanner sc;
+    /**
+     * Receives the game objects described by a level file, in the order they appear.
+     */
+    public interface Loader {
+        void addTerrainBlock(int px, int py, int width, int height);
+        
+        void addPlayer(int px, int py, String imageName);
+        
+        void addEnemy(int px, int py, Enemy.EnemyType type);
+        
+        void addPowerUp(int px, int py, PowerUp.PowerUpType type);
+        
+        void addCheckpoint(int px, int py);
+    }
+    
+    // Reading modes, set by lines starting with !
+    private static final int MODE_NONE = 0;
+    private static final int MODE_UNKNOWN = 1;
+    private static final int MODE_TERRAIN_BLOCK = 2;
+    private static final int MODE_PLAYER = 3;
+    private static final int MODE_ENEMY = 4;
+    private static final int MODE_POWER_UP = 5;
+    private static final int MODE_CHECKPOINT = 6;
+    
+    private static final byte[] DIDDY = ascii("diddy");
+    private static final byte[][] POWER_UP_NAMES = {
+        ascii("banana"), ascii("bananaBunch"), ascii("redBalloon"), ascii("blueBalloon"),
+        ascii("greenBalloon"), ascii("kongLetterK"), ascii("kongLetterO"),
+        ascii("kongLetterN"), ascii("kongLetterG")
+    };
+    private static final PowerUp.PowerUpType[] POWER_UP_TYPES = {
+        PowerUp.PowerUpType.BANANA, PowerUp.PowerUpType.BANANA_BUNCH,
+        PowerUp.PowerUpType.RED_BALLOON, PowerUp.PowerUpType.BLUE_BALLOON,
+        PowerUp.PowerUpType.GREEN_BALLOON, PowerUp.PowerUpType.KONG_LETTER_K,
+        PowerUp.PowerUpType.KONG_LETTER_O, PowerUp.PowerUpType.KONG_LETTER_N,
+        PowerUp.PowerUpType.KONG_LETTER_G
+    };
+    
+    private final byte[] data;
+    private int pos;
+    private int lineNumber;
+    
+    // Bounds of the tokens on the current line
+    private int[] tokenStart = new int[8];
+    private int[] tokenEnd = new int[8];
+    private int numTokens;
     
     /**
      * 
      * @param filename the name of the file to be read
-     * @throws IOException upon an error in reading
+     * @throws IOException if the file does not exist or can't be read
      */
-    public LevelParser(String filename) {
+    public LevelParser(String filename) throws IOException {
+        FileInputStream in = new FileInputStream(filename);
         try {
-            sc = new Scanner(new BufferedReader(new FileReader(filename)));
-        } catch (FileNotFoundException e) {
-            JOptionPane.showMessageDialog(null, "Error reading input level file!", 
-                    "File read error", JOptionPane.ERROR_MESSAGE);
-            System.exit(1);
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(filename + " is too large to be a level");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the buffer is full or the file ends
+            }
+            data = buffer.array();
+        } finally {
+            in.close();
         }
     }
     
+    /**
+     * 
+     * @return an upper bound on the number of game objects in the file, for sizing
+     * collections before parsing it
+     */
+    public int getMaxObjectCount() {
+        int lines = 1;
+        for (int i = 0; i < data.length; i++) {
+            // \r\n is counted once, at the \n
+            if (data[i] == '\n' || (data[i] == '\r'
+                    && (i + 1 == data.length || data[i + 1] != '\n'))) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+    
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+    
     /**
      * 
      * @return does the file being read have another line of text?
      */
     public boolean hasNext() {
-        return sc.hasNext();
+        for (int i = pos; i < data.length; i++) {
+            if (!isBlank(data[i])) {
+                return true;
+            }
+        }
+        return false;
     }
     
     /**
@@ -48,36 +131,211 @@ public class LevelParser {
      * initial state
      */
     public List<String> readNextTokens() {
-        List<String> lineTokens = new ArrayList<>();
-        String line = sc.nextLine();
-        String currentToken = "";
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            if (c == '!' && line.length() > 1) {
-                String mode = line.substring(i + 1).trim();
-                lineTokens.add(mode);
-                return lineTokens;
+        nextLine();
+        List<String> lineTokens = new ArrayList<>(numTokens);
+        for (int t = 0; t < numTokens; t++) {
+            lineTokens.add(tokenString(t));
+        }
+        return lineTokens;
+    }
+    
+    /**
+     * Reads the rest of the file, passing each game object in it to the loader.
+     * Objects of unknown types, and objects under a mode other than TerrainBlock, Player,
+     * Enemy, PowerUp or Checkpoint, are skipped. A Checkpoint is just its position.
+     * @throws NumberFormatException if a coordinate or size isn't a number
+     * @throws IllegalArgumentException if an object is missing fields or comes before
+     * any mode has been set
+     */
+    public void parse(Loader loader) {
+        int mode = MODE_NONE;
+        while (pos < data.length) {
+            nextLine();
+            if (numTokens == 0) {
+                continue;
             }
-            if (c == ';') {
-                return lineTokens;
+            if (numTokens == 1) {
+                mode = toMode(tokenString(0));
+                continue;
             }
-            if (c == '~') {
-                return lineTokens;
+            if (mode == MODE_NONE) {
+                throw new IllegalArgumentException("line " + lineNumber
+                        + ": object before the first !mode line");
+            }
+            int px = parseInt(0);
+            int py = parseInt(1);
+            switch (mode) {
+            case MODE_TERRAIN_BLOCK:
+                requireTokens(4);
+                loader.addTerrainBlock(px, py, parseInt(2), parseInt(3));
+                break;
+            case MODE_PLAYER:
+                requireTokens(3);
+                loader.addPlayer(px, py, tokenString(2));
+                break;
+            case MODE_ENEMY:
+                requireTokens(3);
+                if (tokenEquals(2, DIDDY)) {
+                    loader.addEnemy(px, py, Enemy.EnemyType.DIDDY);
+                }
+                break;
+            case MODE_POWER_UP:
+                requireTokens(3);
+                for (int i = 0; i < POWER_UP_NAMES.length; i++) {
+                    if (tokenEquals(2, POWER_UP_NAMES[i])) {
+                        loader.addPowerUp(px, py, POWER_UP_TYPES[i]);
+                        break;
+                    }
+                }
+                break;
+            case MODE_CHECKPOINT:
+                loader.addCheckpoint(px, py);
+                break;
+            default:
             }
-            if (c == ',') {
-                lineTokens.add(currentToken.trim());
-                currentToken = "";
-            } else {
-                currentToken += c;
-            }     
         }
-        return lineTokens;
+    }
+    
+    private static int toMode(String name) {
+        switch (name) {
+        case "TerrainBlock":
+            return MODE_TERRAIN_BLOCK;
+        case "Player":
+            return MODE_PLAYER;
+        case "Enemy":
+            return MODE_ENEMY;
+        case "PowerUp":
+            return MODE_POWER_UP;
+        case "Checkpoint":
+            return MODE_CHECKPOINT;
+        default:
+            return MODE_UNKNOWN;
+        }
     }
     
     /**
      * Closes the parser and frees system resources associated with it
      */
     public void close() {
-        sc.close();
+        // the file was closed once it had been read
+    }
+    
+    // Tokenizes the next line. A token ends at a comma, so anything after the last
+    // comma is ignored; ; and ~ end the line; ! makes the rest of the line a single
+    // mode token, unless it is the only character on the line.
+    private void nextLine() {
+        int start = pos;
+        int end = start;
+        while (end < data.length && data[end] != '\n' && data[end] != '\r') {
+            end++;
+        }
+        pos = end;
+        if (pos < data.length && data[pos] == '\r') {
+            pos++;
+        }
+        if (pos < data.length && data[pos] == '\n') {
+            pos++;
+        }
+        lineNumber++;
+        
+        numTokens = 0;
+        int begin = start;
+        for (int i = start; i < end; i++) {
+            byte c = data[i];
+            if (c == '!' && end - start > 1) {
+                addToken(i + 1, end);
+                return;
+            }
+            if (c == ';' || c == '~') {
+                return;
+            }
+            if (c == ',') {
+                addToken(begin, i);
+                begin = i + 1;
+            }
+        }
+    }
+    
+    // Records a token, trimmed the same way as String.trim()
+    private void addToken(int begin, int end) {
+        while (begin < end && isBlank(data[begin])) {
+            begin++;
+        }
+        while (end > begin && isBlank(data[end - 1])) {
+            end--;
+        }
+        if (numTokens == tokenStart.length) {
+            tokenStart = Arrays.copyOf(tokenStart, numTokens * 2);
+            tokenEnd = Arrays.copyOf(tokenEnd, numTokens * 2);
+        }
+        tokenStart[numTokens] = begin;
+        tokenEnd[numTokens] = end;
+        numTokens++;
+    }
+    
+    private static boolean isBlank(byte b) {
+        return (b & 0xff) <= ' ';
+    }
+    
+    private String tokenString(int t) {
+        return new String(data, tokenStart[t], tokenEnd[t] - tokenStart[t],
+                StandardCharsets.UTF_8);
+    }
+    
+    private boolean tokenEquals(int t, byte[] expected) {
+        if (tokenEnd[t] - tokenStart[t] != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (data[tokenStart[t] + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void requireTokens(int count) {
+        if (numTokens < count) {
+            throw new IllegalArgumentException("line " + lineNumber + ": expected "
+                    + count + " fields but found " + numTokens);
+        }
+    }
+    
+    // Parses a token the same way as Integer.parseInt()
+    private int parseInt(int t) {
+        int i = tokenStart[t];
+        int end = tokenEnd[t];
+        boolean negative = false;
+        int limit = -Integer.MAX_VALUE;
+        if (i < end && (data[i] == '-' || data[i] == '+')) {
+            if (data[i] == '-') {
+                negative = true;
+                limit = Integer.MIN_VALUE;
+            }
+            i++;
+        }
+        if (i == end) {
+            throw notANumber(t);
+        }
+        // accumulate negatively so that MIN_VALUE doesn't overflow
+        int multmin = limit / 10;
+        int result = 0;
+        for (; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9 || result < multmin) {
+                throw notANumber(t);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw notANumber(t);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+    
+    private NumberFormatException notANumber(int t) {
+        return new NumberFormatException("line " + lineNumber + ": For input string: \""
+                + tokenString(t) + "\"");
     }
 }
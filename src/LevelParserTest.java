@@ -0,0 +1,198 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.junit.Test;
+
+public class LevelParserTest {
+    
+    // The original Scanner-based tokenizer
+    private static List<List<String>> referenceTokens(File file) throws IOException {
+        List<List<String>> lines = new ArrayList<>();
+        Scanner sc = new Scanner(file, "UTF-8");
+        while (sc.hasNext()) {
+            List<String> lineTokens = new ArrayList<>();
+            String line = sc.nextLine();
+            String currentToken = "";
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '!' && line.length() > 1) {
+                    lineTokens.add(line.substring(i + 1).trim());
+                    break;
+                }
+                if (c == ';' || c == '~') {
+                    break;
+                }
+                if (c == ',') {
+                    lineTokens.add(currentToken.trim());
+                    currentToken = "";
+                } else {
+                    currentToken += c;
+                }
+            }
+            lines.add(lineTokens);
+        }
+        sc.close();
+        return lines;
+    }
+    
+    private static List<List<String>> tokens(File file) throws IOException {
+        List<List<String>> lines = new ArrayList<>();
+        LevelParser parser = new LevelParser(file.getPath());
+        while (parser.hasNext()) {
+            lines.add(parser.readNextTokens());
+        }
+        parser.close();
+        return lines;
+    }
+    
+    private static File write(String contents) throws IOException {
+        File file = File.createTempFile("levelParserTest", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+    
+    // Records what a Loader is given, one line per object
+    private static class RecordingLoader implements LevelParser.Loader {
+        final List<String> objects = new ArrayList<>();
+        
+        @Override
+        public void addTerrainBlock(int px, int py, int width, int height) {
+            objects.add("TerrainBlock " + px + " " + py + " " + width + " " + height);
+        }
+        
+        @Override
+        public void addPlayer(int px, int py, String imageName) {
+            objects.add("Player " + px + " " + py + " " + imageName);
+        }
+        
+        @Override
+        public void addEnemy(int px, int py, Enemy.EnemyType type) {
+            objects.add("Enemy " + px + " " + py + " " + type);
+        }
+        
+        @Override
+        public void addPowerUp(int px, int py, PowerUp.PowerUpType type) {
+            objects.add("PowerUp " + px + " " + py + " " + type);
+        }
+        
+        @Override
+        public void addCheckpoint(int px, int py) {
+            objects.add("Checkpoint " + px + " " + py);
+        }
+    }
+    
+    private static List<String> parse(File file) throws IOException {
+        RecordingLoader loader = new RecordingLoader();
+        LevelParser parser = new LevelParser(file.getPath());
+        parser.parse(loader);
+        parser.close();
+        return loader.objects;
+    }
+    
+    @Test
+    public void testSampleLevelTokens() throws IOException {
+        File file = new File("sampleDKCLevel.txt");
+        assertEquals(referenceTokens(file), tokens(file));
+    }
+    
+    @Test
+    public void testRandomLinesTokenizeLikeScanner() throws IOException {
+        String alphabet = "0123456789,,,;~!  \tabc-+";
+        String[] newlines = {"\n", "\r\n", "\r"};
+        Random random = new Random(11);
+        for (int f = 0; f < 200; f++) {
+            StringBuilder contents = new StringBuilder();
+            int numLines = random.nextInt(20);
+            for (int l = 0; l < numLines; l++) {
+                int length = random.nextInt(12);
+                for (int i = 0; i < length; i++) {
+                    contents.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                if (l < numLines - 1 || random.nextBoolean()) {
+                    contents.append(newlines[random.nextInt(newlines.length)]);
+                }
+            }
+            File file = write(contents.toString());
+            assertEquals(contents.toString(), referenceTokens(file), tokens(file));
+        }
+    }
+    
+    @Test
+    public void testSampleLevelObjects() throws IOException {
+        List<String> objects = parse(new File("sampleDKCLevel.txt"));
+        assertEquals("Player 200 560 dk.png", objects.get(0));
+        assertEquals("Enemy 500 500 DIDDY", objects.get(1));
+        
+        GameWorld world = new GameWorld(800);
+        world.load("sampleDKCLevel.txt", 5);
+        int expected = 1 + world.getTerrainBlocks().size() + world.getEnemies().size()
+                + world.getPowerUps().size();
+        assertEquals(expected, objects.size());
+    }
+    
+    @Test
+    public void testFormatDetails() throws IOException {
+        File file = write("; comment\n"
+                + "!TerrainBlock\n"
+                + " 1 , -2 ,+3,2147483647,~ trailing\n"
+                + "4,5,6,7,8\n"
+                + "!Unknown\n"
+                + "9,9,9,9,~\n"
+                + "! PowerUp \r\n"
+                + "10,-2147483648,banana,~\r\n"
+                + "11,12,noSuchPowerUp,~\r\n"
+                + "13,14,kongLetterG,\r\n"
+                + "!Enemy\r"
+                + "15,16,diddy,~\n"
+                + "!Checkpoint\n"
+                + "17,-18,~");
+        List<String> expected = new ArrayList<>();
+        expected.add("TerrainBlock 1 -2 3 2147483647");
+        expected.add("TerrainBlock 4 5 6 7");
+        expected.add("PowerUp 10 -2147483648 BANANA");
+        expected.add("PowerUp 13 14 KONG_LETTER_G");
+        expected.add("Enemy 15 16 DIDDY");
+        expected.add("Checkpoint 17 -18");
+        assertEquals(expected, parse(file));
+    }
+    
+    @Test(expected = NumberFormatException.class)
+    public void testOverflow() throws IOException {
+        parse(write("!TerrainBlock\n2147483648,0,1,1,~\n"));
+    }
+    
+    @Test(expected = NumberFormatException.class)
+    public void testNotANumber() throws IOException {
+        parse(write("!Enemy\n1x,0,diddy,~\n"));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingFields() throws IOException {
+        parse(write("!TerrainBlock\n1,2,3,~\n"));
+    }
+    
+    @Test
+    public void testLargeLevel() throws IOException {
+        File file = File.createTempFile("levelParserTest", ".txt");
+        file.deleteOnExit();
+        PrintWriter out = new PrintWriter(file, "UTF-8");
+        out.println("!TerrainBlock");
+        for (int i = 0; i < 100000; i++) {
+            out.println(i * 60 + ",0,60,60,~");
+        }
+        out.close();
+        List<String> objects = parse(file);
+        assertEquals(100000, objects.size());
+        assertEquals("TerrainBlock 5999940 0 60 60", objects.get(99999));
+    }
+}
@@ -0,0 +1,405 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * LevelStreamer.java
+ * Keeps only the part of a level around the camera in play, so that the number of live
+ * game objects depends on the size of the view rather than the length of the level.
+ * The level is divided into chunks CHUNK_WIDTH pixels wide. Chunks within the active
+ * window of the view are created from the level's template as the camera approaches
+ * them, and released again once the camera has moved well past them.
+ *
+ * A chunk that is loaded again comes back the way the level started, except that
+ * enemies that were defeated and power ups that were claimed stay gone. Enemies belong
+ * to the chunk they started in, even if they have walked out of it since. Terrain is
+ * kept in play one chunk further out than enemies and power ups, so that an enemy near
+ * the edge of the window doesn't walk off the end of the world into a chunk that hasn't
+ * been loaded yet. Terrain blocks stay in play as long as any chunk they overlap has its
+ * terrain loaded.
+ * @author Jack Harkins
+ *
+ */
+public class LevelStreamer {
+
+    public static final int CHUNK_WIDTH = 1024;
+
+    /**
+     * The objects belonging to each chunk, stored like TerrainGrid's cells: the objects
+     * in chunk c are items[start[c]] ... items[start[c + 1] - 1], as indices into the
+     * template.
+     */
+    private static class ChunkIndex {
+        final int[] start;
+        final int[] items;
+
+        /**
+         * @param firstChunks first chunk each object belongs to
+         * @param lastChunks last chunk each object belongs to
+         * @param numChunks number of chunks in the level
+         */
+        ChunkIndex(int[] firstChunks, int[] lastChunks, int numChunks) {
+            // First pass counts the objects in each chunk, second pass fills them in
+            start = new int[numChunks + 1];
+            for (int i = 0; i < firstChunks.length; i++) {
+                for (int c = firstChunks[i]; c <= lastChunks[i]; c++) {
+                    start[c + 1]++;
+                }
+            }
+            for (int c = 0; c < numChunks; c++) {
+                start[c + 1] += start[c];
+            }
+            items = new int[start[numChunks]];
+            int[] fill = new int[numChunks];
+            System.arraycopy(start, 0, fill, 0, numChunks);
+            for (int i = 0; i < firstChunks.length; i++) {
+                for (int c = firstChunks[i]; c <= lastChunks[i]; c++) {
+                    items[fill[c]++] = i;
+                }
+            }
+        }
+    }
+
+    private final LevelTemplate template;
+    private final int activeWindow;
+    private final int minChunk; // the leftmost chunk, which is chunk 0 below
+    private final int numChunks;
+
+    private final ChunkIndex terrainChunks;
+    private final ChunkIndex enemyChunks;
+    private final ChunkIndex powerUpChunks;
+
+    // Objects currently in play, by template index. Maps rather than arrays, so that
+    // they're only as big as the part of the level in play.
+    private final Map<Integer, TerrainBlock> terrainBlocks = new HashMap<>();
+    private final Map<Integer, Enemy> enemies = new HashMap<>();
+    private final Map<Integer, PowerUp> powerUps = new HashMap<>();
+    // objects that mustn't come back when their chunk is loaded again
+    private final BitSet defeatedEnemies = new BitSet();
+    private final BitSet claimedPowerUps = new BitSet();
+
+    private final boolean[] objectsLoaded;
+    private final boolean[] terrainLoaded;
+    private int numLoaded;
+    // Chunks with terrain loaded are always a contiguous range, and chunks with objects
+    // loaded lie within it
+    private int loadedFirst = 0;
+    private int loadedLast = -1;
+    private int windowFirst = Integer.MIN_VALUE;
+    private int windowLast = Integer.MIN_VALUE;
+
+    /**
+     * @param template the level to stream
+     * @param activeWindow how far beyond each edge of the view to keep the level in
+     * play, in pixels
+     */
+    public LevelStreamer(LevelTemplate template, int activeWindow) {
+        this.template = template;
+        this.activeWindow = activeWindow;
+
+        int numTerrain = template.getTerrainBlockCount();
+        int numEnemies = template.getEnemyCount();
+        int numPowerUps = template.getPowerUpCount();
+        int[] terrainFirst = new int[numTerrain];
+        int[] terrainLast = new int[numTerrain];
+        int[] enemyChunk = new int[numEnemies];
+        int[] powerUpChunk = new int[numPowerUps];
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < numTerrain; i++) {
+            int left = template.getTerrainBlockLeft(i);
+            terrainFirst[i] = toChunk(left);
+            terrainLast[i] = toChunk(Math.max(left, template.getTerrainBlockRight(i) - 1));
+            min = Math.min(min, terrainFirst[i]);
+            max = Math.max(max, terrainLast[i]);
+        }
+        for (int i = 0; i < numEnemies; i++) {
+            enemyChunk[i] = toChunk(template.getEnemyX(i));
+            min = Math.min(min, enemyChunk[i]);
+            max = Math.max(max, enemyChunk[i]);
+        }
+        for (int i = 0; i < numPowerUps; i++) {
+            powerUpChunk[i] = toChunk(template.getPowerUpX(i));
+            min = Math.min(min, powerUpChunk[i]);
+            max = Math.max(max, powerUpChunk[i]);
+        }
+        minChunk = (max < min) ? 0 : min;
+        numChunks = (max < min) ? 0 : max - min + 1;
+
+        shift(terrainFirst);
+        shift(terrainLast);
+        shift(enemyChunk);
+        shift(powerUpChunk);
+        terrainChunks = new ChunkIndex(terrainFirst, terrainLast, numChunks);
+        enemyChunks = new ChunkIndex(enemyChunk, enemyChunk, numChunks);
+        powerUpChunks = new ChunkIndex(powerUpChunk, powerUpChunk, numChunks);
+
+        objectsLoaded = new boolean[numChunks];
+        terrainLoaded = new boolean[numChunks];
+    }
+
+    private static int toChunk(int x) {
+        return Math.floorDiv(x, CHUNK_WIDTH);
+    }
+
+    private void shift(int[] chunks) {
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] -= minChunk;
+        }
+    }
+
+    /**
+     *
+     * @return the number of chunks the level is divided into
+     */
+    public int getChunkCount() {
+        return numChunks;
+    }
+
+    /**
+     *
+     * @return the number of chunks whose enemies and power ups are currently in play
+     */
+    public int getLoadedChunkCount() {
+        return numLoaded;
+    }
+
+    /**
+     * Brings the chunks near the view into play and takes those far from it out. New
+     * objects are created through the loader, which must add them to the end of the
+     * matching list; objects taken out of play are released and removed from the lists.
+     * Call it only when every defeated enemy and claimed power up has already been
+     * released and removed from the lists, as GameWorld.tick() does first thing.
+     * @param viewLeft x coordinate of the left edge of the view
+     * @param viewRight x coordinate of the right edge of the view
+     * @param loader creates objects and adds them to the lists below
+     * @return whether anything was brought into or taken out of play
+     */
+    public boolean update(int viewLeft, int viewRight, LevelParser.Loader loader,
+            ArrayList<TerrainBlock> terrainList, ArrayList<Enemy> enemyList,
+            ArrayList<PowerUp> powerUpList) {
+        int first = toChunk(viewLeft - activeWindow) - minChunk;
+        int last = toChunk(viewRight + activeWindow) - minChunk;
+        if (first == windowFirst && last == windowLast) {
+            return false;
+        }
+        windowFirst = first;
+        windowLast = last;
+
+        // Chunks are unloaded one chunk further out than they're loaded, so that walking
+        // back and forth over a chunk boundary doesn't load and unload the same chunk
+        // over and over
+        boolean unloadedAny = false;
+        for (int c = loadedFirst; c <= loadedLast; c++) {
+            if (objectsLoaded[c] && (c < first - 1 || c > last + 1)) {
+                unloadObjects(c);
+                unloadedAny = true;
+            }
+            if (terrainLoaded[c] && (c < first - 2 || c > last + 2)) {
+                unloadTerrain(c);
+                unloadedAny = true;
+            }
+        }
+        if (unloadedAny) {
+            // must happen before anything new is created, since new objects may be given
+            // the handles just released
+            removeReleased(terrainList);
+            removeReleased(enemyList);
+            removeReleased(powerUpList);
+        }
+        boolean loadedAny = false;
+        for (int c = Math.max(first - 1, 0); c <= Math.min(last + 1, numChunks - 1); c++) {
+            if (!terrainLoaded[c]) {
+                loadTerrain(c, loader, terrainList);
+                loadedAny = true;
+            }
+        }
+        for (int c = Math.max(first, 0); c <= Math.min(last, numChunks - 1); c++) {
+            if (!objectsLoaded[c]) {
+                loadObjects(c, loader, enemyList, powerUpList);
+                loadedAny = true;
+            }
+        }
+
+        loadedFirst = 0;
+        loadedLast = -1;
+        for (int c = Math.max(first - 2, 0); c <= Math.min(last + 2, numChunks - 1); c++) {
+            if (terrainLoaded[c]) {
+                if (loadedLast < loadedFirst) {
+                    loadedFirst = c;
+                }
+                loadedLast = c;
+            }
+        }
+        return unloadedAny || loadedAny;
+    }
+
+    private void loadTerrain(int chunk, LevelParser.Loader loader,
+            ArrayList<TerrainBlock> terrainList) {
+        for (int i = terrainChunks.start[chunk]; i < terrainChunks.start[chunk + 1]; i++) {
+            int block = terrainChunks.items[i];
+            if (!terrainBlocks.containsKey(block)) {
+                template.instantiateTerrainBlock(block, loader);
+                terrainBlocks.put(block, terrainList.get(terrainList.size() - 1));
+            }
+        }
+        terrainLoaded[chunk] = true;
+    }
+
+    private void unloadTerrain(int chunk) {
+        terrainLoaded[chunk] = false;
+        for (int i = terrainChunks.start[chunk]; i < terrainChunks.start[chunk + 1]; i++) {
+            int block = terrainChunks.items[i];
+            if (!isTerrainLoadedUnder(block)) {
+                terrainBlocks.remove(block).release();
+            }
+        }
+    }
+    
+    // Is the terrain of any chunk the block overlaps loaded?
+    private boolean isTerrainLoadedUnder(int block) {
+        int left = template.getTerrainBlockLeft(block);
+        int first = toChunk(left) - minChunk;
+        int last = toChunk(Math.max(left, template.getTerrainBlockRight(block) - 1)) - minChunk;
+        for (int c = first; c <= last; c++) {
+            if (terrainLoaded[c]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void loadObjects(int chunk, LevelParser.Loader loader, ArrayList<Enemy> enemyList,
+            ArrayList<PowerUp> powerUpList) {
+        for (int i = enemyChunks.start[chunk]; i < enemyChunks.start[chunk + 1]; i++) {
+            int enemy = enemyChunks.items[i];
+            if (!defeatedEnemies.get(enemy)) {
+                template.instantiateEnemy(enemy, loader);
+                enemies.put(enemy, enemyList.get(enemyList.size() - 1));
+            }
+        }
+        for (int i = powerUpChunks.start[chunk]; i < powerUpChunks.start[chunk + 1]; i++) {
+            int powerUp = powerUpChunks.items[i];
+            if (!claimedPowerUps.get(powerUp)) {
+                template.instantiatePowerUp(powerUp, loader);
+                powerUps.put(powerUp, powerUpList.get(powerUpList.size() - 1));
+            }
+        }
+        objectsLoaded[chunk] = true;
+        numLoaded++;
+    }
+
+    private void unloadObjects(int chunk) {
+        for (int i = enemyChunks.start[chunk]; i < enemyChunks.start[chunk + 1]; i++) {
+            Enemy enemy = enemies.remove(enemyChunks.items[i]);
+            if (enemy == null) {
+                continue;
+            }
+            if (enemy.isAlive()) {
+                enemy.release();
+            } else {
+                defeatedEnemies.set(enemyChunks.items[i]); // already released by GameWorld
+            }
+        }
+        for (int i = powerUpChunks.start[chunk]; i < powerUpChunks.start[chunk + 1]; i++) {
+            PowerUp powerUp = powerUps.remove(powerUpChunks.items[i]);
+            if (powerUp == null) {
+                continue;
+            }
+            if (powerUp.hasBeenClaimed()) {
+                claimedPowerUps.set(powerUpChunks.items[i]);
+            } else {
+                powerUp.release();
+            }
+        }
+        objectsLoaded[chunk] = false;
+        numLoaded--;
+    }
+
+    /**
+     * Writes which chunks are loaded, which objects are in play and which are gone for
+     * good, for restoreState() to read back. Used by WorldSnapshot, which keeps the
+     * objects themselves.
+     */
+    void saveState(ByteBuffer out, WorldSnapshot snapshot) {
+        out.putInt(numLoaded);
+        out.putInt(loadedFirst);
+        out.putInt(loadedLast);
+        out.putInt(windowFirst);
+        out.putInt(windowLast);
+        for (int c = 0; c < numChunks; c++) {
+            out.put((byte) ((objectsLoaded[c] ? 1 : 0) | (terrainLoaded[c] ? 2 : 0)));
+        }
+        saveBits(out, defeatedEnemies);
+        saveBits(out, claimedPowerUps);
+        saveObjects(out, snapshot, terrainBlocks);
+        saveObjects(out, snapshot, enemies);
+        saveObjects(out, snapshot, powerUps);
+    }
+
+    void restoreState(ByteBuffer in, WorldSnapshot snapshot) {
+        numLoaded = in.getInt();
+        loadedFirst = in.getInt();
+        loadedLast = in.getInt();
+        windowFirst = in.getInt();
+        windowLast = in.getInt();
+        for (int c = 0; c < numChunks; c++) {
+            int bits = in.get();
+            objectsLoaded[c] = (bits & 1) != 0;
+            terrainLoaded[c] = (bits & 2) != 0;
+        }
+        restoreBits(in, defeatedEnemies);
+        restoreBits(in, claimedPowerUps);
+        restoreObjects(in, snapshot, terrainBlocks, TerrainBlock.class);
+        restoreObjects(in, snapshot, enemies, Enemy.class);
+        restoreObjects(in, snapshot, powerUps, PowerUp.class);
+    }
+
+    private static void saveBits(ByteBuffer out, BitSet bits) {
+        out.putInt(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            out.putInt(i);
+        }
+    }
+
+    private static void restoreBits(ByteBuffer in, BitSet bits) {
+        bits.clear();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            bits.set(in.getInt());
+        }
+    }
+
+    private static <T extends GameObj> void saveObjects(ByteBuffer out,
+            WorldSnapshot snapshot, Map<Integer, T> objects) {
+        out.putInt(objects.size());
+        for (Map.Entry<Integer, T> entry : objects.entrySet()) {
+            out.putInt(entry.getKey());
+            snapshot.addObject(entry.getValue());
+        }
+    }
+
+    private static <T extends GameObj> void restoreObjects(ByteBuffer in,
+            WorldSnapshot snapshot, Map<Integer, T> objects, Class<T> type) {
+        objects.clear();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            int index = in.getInt();
+            objects.put(index, type.cast(snapshot.nextObject()));
+        }
+    }
+
+    // Removes objects whose handles have been freed, keeping the rest in order
+    private static <T extends GameObj> void removeReleased(ArrayList<T> list) {
+        int numKept = 0;
+        for (int i = 0; i < list.size(); i++) {
+            T obj = list.get(i);
+            if (obj.getStore().hasFlags(obj.getHandle(), EntityStore.LIVE)) {
+                list.set(numKept++, obj);
+            }
+        }
+        GameWorld.truncate(list, numKept);
+    }
+}
@@ -0,0 +1,115 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class LevelStreamerTest {
+    
+    private static final int FLOOR_BLOCKS = 2000;
+    private static final int LEVEL_WIDTH = FLOOR_BLOCKS * 60;
+    private static final int NUM_CAGES = 100;
+    private static final int DOOMED_ENEMY_X = 3000;
+    
+    /**
+     * A long, flat floor with a banana every ten blocks, over a single block as long as
+     * the level. Above the floor, out of reach, are cages with an enemy pacing in each.
+     * One more enemy starts below the floor, so it dies as soon as it comes into play.
+     */
+    private static String writeLongLevel() throws IOException {
+        LevelFixture level = new LevelFixture().terrain(0, -200, LEVEL_WIDTH, 60);
+        for (int i = 0; i < FLOOR_BLOCKS; i++) {
+            level.terrain(i * 60, 0, 60, 60);
+        }
+        for (int i = 0; i < NUM_CAGES; i++) {
+            int x = i * LEVEL_WIDTH / NUM_CAGES;
+            level.terrain(x, 800, 360, 60).terrain(x, 860, 60, 120)
+                    .terrain(x + 300, 860, 60, 120).enemy(x + 120, 860);
+        }
+        level.enemy(DOOMED_ENEMY_X, -100);
+        for (int i = 1; i < FLOOR_BLOCKS / 10; i++) {
+            level.powerUp(i * 600, 60);
+        }
+        return level.write();
+    }
+    
+    private static GameWorld loadStreamed(String level, int activeWindow) throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.setActiveWindow(activeWindow);
+        world.load(level, 5);
+        return world;
+    }
+    
+    private static int countLongBlocks(GameWorld world) {
+        int count = 0;
+        for (TerrainBlock block : world.getTerrainBlocks()) {
+            if (block.getWidth() == LEVEL_WIDTH) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    @Test
+    public void testOnlyTheWindowIsInPlay() throws IOException {
+        String level = writeLongLevel();
+        GameWorld whole = new GameWorld(800);
+        whole.load(level, 5);
+        int levelObjects = whole.getEntityStore().getLiveCount();
+        
+        GameWorld world = loadStreamed(level, 800);
+        LevelStreamer streamer = world.getStreamer();
+        assertTrue(streamer.getChunkCount() > 100);
+        int maxInPlay = 0;
+        int maxChunks = 0;
+        for (int tick = 0; tick < 15000; tick++) {
+            world.step(GameWorld.INPUT_RIGHT);
+            maxInPlay = Math.max(maxInPlay, world.getEntityStore().getLiveCount());
+            maxChunks = Math.max(maxChunks, streamer.getLoadedChunkCount());
+            assertEquals(1, countLongBlocks(world));
+        }
+        assertTrue(world.getSummary(), world.getPlayer().getPx() > LEVEL_WIDTH / 2);
+        // the view and a screen either side span at most four chunks, plus one of slack
+        // on each side
+        assertTrue("chunks in play: " + maxChunks, maxChunks <= 6);
+        assertTrue(maxInPlay + " of " + levelObjects, maxInPlay * 10 < levelObjects);
+    }
+    
+    @Test
+    public void testDefeatedEnemiesAndClaimedPowerUpsStayGone() throws IOException {
+        String level = writeLongLevel();
+        GameWorld world = loadStreamed(level, 800);
+        int numEnemies = world.getRemainingEnemies();
+        assertEquals(NUM_CAGES + 1, numEnemies);
+        
+        // past the doomed enemy and out of range of it
+        for (int tick = 0; tick < 2000; tick++) {
+            world.step(GameWorld.INPUT_RIGHT);
+        }
+        assertEquals(numEnemies - 1, world.getRemainingEnemies());
+        int bananas = world.getPlayer().getNumBananas();
+        assertTrue(bananas > 0);
+        
+        // and back to the start, past it again
+        for (int tick = 0; tick < 2000; tick++) {
+            world.step(GameWorld.INPUT_LEFT);
+        }
+        assertTrue(world.getSummary(), world.getPlayer().getPx() < DOOMED_ENEMY_X - 1600);
+        assertEquals(numEnemies - 1, world.getRemainingEnemies());
+        assertEquals(bananas, world.getPlayer().getNumBananas());
+        assertFalse(world.isCleared());
+    }
+    
+    @Test
+    public void testWindowCoveringTheLevelLoadsEverything() throws IOException {
+        String level = writeLongLevel();
+        GameWorld whole = new GameWorld(800);
+        whole.load(level, 5);
+        GameWorld world = loadStreamed(level, 2 * LEVEL_WIDTH);
+        assertEquals(world.getStreamer().getChunkCount(),
+                world.getStreamer().getLoadedChunkCount());
+        assertEquals(whole.getTerrainBlocks().size(), world.getTerrainBlocks().size());
+        assertEquals(whole.getEnemies().size(), world.getEnemies().size());
+        assertEquals(whole.getPowerUps().size(), world.getPowerUps().size());
+    }
+}
@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * LevelTemplate.java
+ * A level as it was read from its file, before any game objects have been created from
+ * it. Templates never change once built, so one can be kept in memory (see LevelCache)
+ * and used to set up the same level any number of times without reading the file again.
+ * @author Jack Harkins
+ *
+ */
+public class LevelTemplate {
+    
+    // Records packed the same way as in the binary level format
+    private final int[] terrainBlocks; // px, py, width, height
+    private final int[] enemies; // px, py, type ordinal
+    private final int[] powerUps; // px, py, type ordinal
+    private final int[] checkpoints; // px, py
+    private final int[] players; // px, py
+    private final String[] playerImageNames;
+    
+    private static final Enemy.EnemyType[] ENEMY_TYPES = Enemy.EnemyType.values();
+    private static final PowerUp.PowerUpType[] POWER_UP_TYPES = PowerUp.PowerUpType.values();
+    
+    /**
+     * Collects the objects read by a parser
+     */
+    private static class Builder implements LevelParser.Loader {
+        private int[] terrainBlocks = new int[64];
+        private int numTerrainInts;
+        private int[] enemies = new int[64];
+        private int numEnemyInts;
+        private int[] powerUps = new int[64];
+        private int numPowerUpInts;
+        private int[] checkpoints = new int[8];
+        private int numCheckpointInts;
+        private final List<Integer> players = new ArrayList<>();
+        private final List<String> playerImageNames = new ArrayList<>();
+        
+        private static int[] ensureRoom(int[] values, int size, int needed) {
+            return (size + needed <= values.length) ? values
+                    : Arrays.copyOf(values, Math.max(values.length * 2, size + needed));
+        }
+        
+        @Override
+        public void addTerrainBlock(int px, int py, int width, int height) {
+            terrainBlocks = ensureRoom(terrainBlocks, numTerrainInts, 4);
+            terrainBlocks[numTerrainInts++] = px;
+            terrainBlocks[numTerrainInts++] = py;
+            terrainBlocks[numTerrainInts++] = width;
+            terrainBlocks[numTerrainInts++] = height;
+        }
+        
+        @Override
+        public void addPlayer(int px, int py, String imageName) {
+            players.add(px);
+            players.add(py);
+            playerImageNames.add(imageName);
+        }
+        
+        @Override
+        public void addEnemy(int px, int py, Enemy.EnemyType type) {
+            enemies = ensureRoom(enemies, numEnemyInts, 3);
+            enemies[numEnemyInts++] = px;
+            enemies[numEnemyInts++] = py;
+            enemies[numEnemyInts++] = type.ordinal();
+        }
+        
+        @Override
+        public void addPowerUp(int px, int py, PowerUp.PowerUpType type) {
+            powerUps = ensureRoom(powerUps, numPowerUpInts, 3);
+            powerUps[numPowerUpInts++] = px;
+            powerUps[numPowerUpInts++] = py;
+            powerUps[numPowerUpInts++] = type.ordinal();
+        }
+        
+        @Override
+        public void addCheckpoint(int px, int py) {
+            checkpoints = ensureRoom(checkpoints, numCheckpointInts, 2);
+            checkpoints[numCheckpointInts++] = px;
+            checkpoints[numCheckpointInts++] = py;
+        }
+    }
+    
+    private LevelTemplate(Builder builder) {
+        terrainBlocks = Arrays.copyOf(builder.terrainBlocks, builder.numTerrainInts);
+        enemies = Arrays.copyOf(builder.enemies, builder.numEnemyInts);
+        powerUps = Arrays.copyOf(builder.powerUps, builder.numPowerUpInts);
+        checkpoints = Arrays.copyOf(builder.checkpoints, builder.numCheckpointInts);
+        players = new int[builder.players.size()];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = builder.players.get(i);
+        }
+        playerImageNames = builder.playerImageNames.toArray(
+                new String[builder.playerImageNames.size()]);
+    }
+    
+    /**
+     * Reads a level file in either the text or the binary format.
+     * @param filename the level file to read
+     * @return the level in the file
+     * @throws IOException if the file does not exist or can't be read
+     */
+    public static LevelTemplate read(String filename) throws IOException {
+        Builder builder = new Builder();
+        if (BinaryLevelParser.isBinaryLevel(filename)) {
+            BinaryLevelParser parser = new BinaryLevelParser(filename);
+            parser.parse(builder);
+            parser.close();
+        } else {
+            LevelParser parser = new LevelParser(filename);
+            parser.parse(builder);
+            parser.close();
+        }
+        return new LevelTemplate(builder);
+    }
+    
+    /**
+     * 
+     * @return the number of game objects in the level
+     */
+    public int getObjectCount() {
+        return terrainBlocks.length / 4 + enemies.length / 3 + powerUps.length / 3
+                + checkpoints.length / 2 + playerImageNames.length;
+    }
+    
+    /**
+     * 
+     * @return the image files used to draw the objects in the level, each listed once
+     */
+    public Set<String> getImageNames() {
+        Set<String> names = new LinkedHashSet<>(Arrays.asList(playerImageNames));
+        for (int i = 2; i < enemies.length; i += 3) {
+            names.add(ENEMY_TYPES[enemies[i]].getFilename());
+        }
+        for (int i = 2; i < powerUps.length; i += 3) {
+            names.add(POWER_UP_TYPES[powerUps[i]].getFilename());
+        }
+        return names;
+    }
+    
+    public int getTerrainBlockCount() {
+        return terrainBlocks.length / 4;
+    }
+    
+    public int getEnemyCount() {
+        return enemies.length / 3;
+    }
+    
+    public int getPowerUpCount() {
+        return powerUps.length / 3;
+    }
+    
+    public int getCheckpointCount() {
+        return checkpoints.length / 2;
+    }
+    
+    /**
+     * 
+     * @param i index of a terrain block, in file order
+     * @return the x coordinate of its left edge
+     */
+    public int getTerrainBlockLeft(int i) {
+        return terrainBlocks[4 * i];
+    }
+    
+    /**
+     * 
+     * @param i index of a terrain block, in file order
+     * @return the x coordinate of its right edge
+     */
+    public int getTerrainBlockRight(int i) {
+        return terrainBlocks[4 * i] + terrainBlocks[4 * i + 2];
+    }
+    
+    /**
+     * 
+     * @param i index of an enemy, in file order
+     * @return the x coordinate it starts at
+     */
+    public int getEnemyX(int i) {
+        return enemies[3 * i];
+    }
+    
+    /**
+     * 
+     * @param i index of a power up, in file order
+     * @return its x coordinate
+     */
+    public int getPowerUpX(int i) {
+        return powerUps[3 * i];
+    }
+    
+    /**
+     * Passes every object in the level to the loader: the player, then terrain, enemies,
+     * power ups and checkpoints, each in the order they appeared in the file.
+     */
+    public void instantiate(LevelParser.Loader loader) {
+        instantiatePlayers(loader);
+        for (int i = 0; i < getTerrainBlockCount(); i++) {
+            instantiateTerrainBlock(i, loader);
+        }
+        for (int i = 0; i < getEnemyCount(); i++) {
+            instantiateEnemy(i, loader);
+        }
+        for (int i = 0; i < getPowerUpCount(); i++) {
+            instantiatePowerUp(i, loader);
+        }
+        instantiateCheckpoints(loader);
+    }
+    
+    /**
+     * Passes only the level's player to the loader; see LevelStreamer for the rest.
+     */
+    public void instantiatePlayers(LevelParser.Loader loader) {
+        for (int i = 0; i < playerImageNames.length; i++) {
+            loader.addPlayer(players[2 * i], players[2 * i + 1], playerImageNames[i]);
+        }
+    }
+    
+    /**
+     * Passes every checkpoint in the level to the loader. A streamed level keeps them
+     * all in play, since there are only ever a few.
+     */
+    public void instantiateCheckpoints(LevelParser.Loader loader) {
+        for (int i = 0; i < checkpoints.length; i += 2) {
+            loader.addCheckpoint(checkpoints[i], checkpoints[i + 1]);
+        }
+    }
+    
+    public void instantiateTerrainBlock(int i, LevelParser.Loader loader) {
+        loader.addTerrainBlock(terrainBlocks[4 * i], terrainBlocks[4 * i + 1],
+                terrainBlocks[4 * i + 2], terrainBlocks[4 * i + 3]);
+    }
+    
+    public void instantiateEnemy(int i, LevelParser.Loader loader) {
+        loader.addEnemy(enemies[3 * i], enemies[3 * i + 1], ENEMY_TYPES[enemies[3 * i + 2]]);
+    }
+    
+    public void instantiatePowerUp(int i, LevelParser.Loader loader) {
+        loader.addPowerUp(powerUps[3 * i], powerUps[3 * i + 1],
+                POWER_UP_TYPES[powerUps[3 * i + 2]]);
+    }
+}
@@ -0,0 +1,405 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * LevelValidator.java
+ * Checks levels for mistakes that are easy to make by hand. It runs each level without
+ * a window, as fast as it will go, with the player standing still, until every enemy
+ * has either landed on terrain or died by falling off the map, and reports the ones that
+ * do neither within a time limit. It also checks that every power up is within a jump of
+ * something the player can stand on. A directory of levels is checked in parallel, one
+ * level per core, and each report gives the ticks per second the level ran at.
+ * 
+ * Usage: java LevelValidator <level file or directory> [max ticks]
+ * 
+ * Files in a directory are checked if they are binary levels or end in .txt. Exits with
+ * status 1 if any level fails.
+ * @author Jack Harkins
+ *
+ */
+public class LevelValidator {
+    
+    // Same as GameCourt, so the camera scrolls the same way
+    private static final int VIEW_WIDTH = 800;
+    private static final int NUM_LIVES = 5;
+    public static final long DEFAULT_MAX_TICKS = 2000;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int MAX_PROBLEMS_SHOWN = 10;
+    
+    /**
+     * The outcome of checking one level
+     */
+    public static class Report {
+        private final String filename;
+        private Exception error;
+        private int numEnemies;
+        private int numLanded;
+        private int numFell;
+        private final List<Enemy> unsettledEnemies = new ArrayList<>();
+        private int numPowerUps;
+        private final List<PowerUp> unreachablePowerUps = new ArrayList<>();
+        private long ticks;
+        private long nanos;
+        
+        private Report(String filename) {
+            this.filename = filename;
+        }
+        
+        public String getFilename() {
+            return filename;
+        }
+        
+        /**
+         * 
+         * @return why the level couldn't be checked, or null if it could
+         */
+        public Exception getError() {
+            return error;
+        }
+        
+        /**
+         * 
+         * @return did every check pass?
+         */
+        public boolean isValid() {
+            return error == null && unsettledEnemies.isEmpty()
+                    && unreachablePowerUps.isEmpty();
+        }
+        
+        /**
+         * 
+         * @return enemies that were still in the air when the time limit ran out
+         */
+        public List<Enemy> getUnsettledEnemies() {
+            return unsettledEnemies;
+        }
+        
+        /**
+         * 
+         * @return power ups that are not within a jump of anything the player can stand on
+         */
+        public List<PowerUp> getUnreachablePowerUps() {
+            return unreachablePowerUps;
+        }
+        
+        public int getNumLanded() {
+            return numLanded;
+        }
+        
+        public int getNumFell() {
+            return numFell;
+        }
+        
+        /**
+         * 
+         * @return ticks run before every enemy had landed or fallen, or the time limit
+         * ran out
+         */
+        public long getTicks() {
+            return ticks;
+        }
+        
+        /**
+         * 
+         * @return ticks run per second, not counting loading the level
+         */
+        public double getTicksPerSecond() {
+            return (nanos == 0) ? 0 : (double) ticks * NANOS_PER_SECOND / nanos;
+        }
+        
+        /**
+         * 
+         * @return a summary of the report, with a line for each problem found
+         */
+        public String getText() {
+            if (error != null) {
+                return "ERROR " + filename + ": " + error;
+            }
+            StringBuilder text = new StringBuilder();
+            text.append(String.format(Locale.ROOT,
+                    "%s %s: %d enemies (%d landed, %d fell), %d power ups, %d ticks at %.0f ticks/s",
+                    isValid() ? "OK  " : "FAIL", filename, numEnemies, numLanded, numFell,
+                    numPowerUps, ticks, getTicksPerSecond()));
+            appendProblems(text, unsettledEnemies, "enemy never landed, now");
+            appendProblems(text, unreachablePowerUps, "power up out of reach");
+            return text.toString();
+        }
+        
+        // A line for each of the first few objects with a problem
+        private static void appendProblems(StringBuilder text, List<? extends GameObj> objects,
+                String problem) {
+            for (int i = 0; i < objects.size() && i < MAX_PROBLEMS_SHOWN; i++) {
+                text.append(String.format("%n    %s at (%d,%d)", problem,
+                        objects.get(i).getPx(), objects.get(i).getPy()));
+            }
+            if (objects.size() > MAX_PROBLEMS_SHOWN) {
+                text.append(String.format("%n    ... and %d more",
+                        objects.size() - MAX_PROBLEMS_SHOWN));
+            }
+        }
+    }
+    
+    // Holds once every enemy in play at the start has landed or died
+    private static class EnemiesSettled implements GameWorld.Condition {
+        private final Enemy[] enemies;
+        private final boolean[] settled;
+        private int numUnsettled;
+        private int numLanded;
+        private int numFell;
+        
+        EnemiesSettled(List<Enemy> enemies) {
+            this.enemies = enemies.toArray(new Enemy[enemies.size()]);
+            settled = new boolean[this.enemies.length];
+            numUnsettled = this.enemies.length;
+        }
+        
+        @Override
+        public boolean holds(GameWorld world) {
+            for (int i = 0; i < enemies.length; i++) {
+                if (settled[i]) {
+                    continue;
+                }
+                if (!enemies[i].isAlive()) {
+                    settled[i] = true;
+                    numFell++;
+                    numUnsettled--;
+                } else if (!enemies[i].canMoveDown()) {
+                    settled[i] = true;
+                    numLanded++;
+                    numUnsettled--;
+                }
+            }
+            return numUnsettled == 0;
+        }
+    }
+    
+    /**
+     * Checks one level.
+     * @param filename the level file
+     * @param maxTicks how long enemies have to land or fall
+     * @return what was found; never throws, but reports the error instead
+     */
+    public static Report validate(String filename, long maxTicks) {
+        Report report = new Report(filename);
+        try {
+            GameWorld world = new GameWorld(VIEW_WIDTH);
+            world.load(filename, NUM_LIVES);
+            report.numPowerUps = world.getPowerUps().size();
+            findUnreachablePowerUps(world, report.unreachablePowerUps);
+            
+            report.numEnemies = world.getEnemies().size();
+            EnemiesSettled enemies = new EnemiesSettled(world.getEnemies());
+            long start = System.nanoTime();
+            report.ticks = world.runUntil(enemies, maxTicks, null);
+            enemies.holds(world); // for the last tick
+            report.nanos = System.nanoTime() - start;
+            report.numLanded = enemies.numLanded;
+            report.numFell = enemies.numFell;
+            for (int i = 0; i < enemies.enemies.length; i++) {
+                if (!enemies.settled[i]) {
+                    report.unsettledEnemies.add(enemies.enemies[i]);
+                }
+            }
+        } catch (IOException e) {
+            report.error = e;
+        } catch (RuntimeException e) {
+            report.error = e;
+        }
+        return report;
+    }
+    
+    /**
+     * Finds the power ups the player can't reach by walking and jumping from any
+     * terrain block, or from where they start. Only the arc of the jump is followed:
+     * terrain that would be in the way isn't checked, and neither is bouncing off
+     * enemies.
+     */
+    static void findUnreachablePowerUps(GameWorld world, List<PowerUp> unreachable) {
+        Player player = world.getPlayer();
+        List<TerrainBlock> blocks = world.getTerrainBlocks();
+        // follow every jump down to where the player would die, even from the highest
+        // block
+        int highest = player.getPy();
+        for (int i = 0; i < blocks.size(); i++) {
+            TerrainBlock block = blocks.get(i);
+            highest = Math.max(highest, block.getPy() + block.getHeight());
+        }
+        JumpArc arc = new JumpArc(player,
+                GameWorld.getJumpArc(highest - GameWorld.FALL_DEATH_THRESHOLD));
+        // only blocks within a jump sideways of a power up can matter to it
+        IntervalIndex<TerrainBlock> blockIndex = new IntervalIndex<>(blocks);
+        List<TerrainBlock> nearby = new ArrayList<>();
+        
+        for (PowerUp powerUp : world.getPowerUps()) {
+            boolean reachable = arc.canReach(powerUp, player.getPx(),
+                    player.getPx() + player.getWidth(), player.getPy());
+
+            blockIndex.query(powerUp.getPx() - arc.playerWidth - arc.maxDrift,
+                    powerUp.getPx() + powerUp.getWidth() + arc.maxDrift, nearby);
+            for (int i = 0; i < nearby.size(); i++) {
+                TerrainBlock block = nearby.get(i);
+                if (isInside(powerUp, block)) {
+                    reachable = false;
+                    break;
+                }
+                if (!reachable) {
+                    reachable = arc.canReach(powerUp, block.getPx(),
+                            block.getPx() + block.getWidth(), block.getPy() + block.getHeight());
+                }
+            }
+            if (!reachable) {
+                unreachable.add(powerUp);
+            }
+        }
+    }
+    
+    private static boolean isInside(GameObj inner, GameObj outer) {
+        return inner.getPx() >= outer.getPx() && inner.getPy() >= outer.getPy()
+                && inner.getPx() + inner.getWidth() <= outer.getPx() + outer.getWidth()
+                && inner.getPy() + inner.getHeight() <= outer.getPy() + outer.getHeight();
+    }
+    
+    // Everywhere the player can be while jumping from a surface and moving sideways
+    private static class JumpArc {
+        private final int playerWidth;
+        private final int playerHeight;
+        private final int[] heights; // see GameWorld.getJumpArc()
+        private final int apex;
+        private final int maxDrift;
+        
+        JumpArc(Player player, int[] heights) {
+            playerWidth = player.getWidth();
+            playerHeight = player.getHeight();
+            this.heights = heights;
+            int max = 0;
+            for (int height : heights) {
+                max = Math.max(max, height);
+            }
+            apex = max;
+            maxDrift = GameWorld.MOVE_VELOCITY * (heights.length - 1);
+        }
+        
+        /**
+         * Could a player standing on a surface from left to right at height top touch
+         * the power up, jumping if need be?
+         */
+        boolean canReach(PowerUp powerUp, int left, int right, int top) {
+            int px = powerUp.getPx();
+            int py = powerUp.getPy();
+            if (py >= top + playerHeight + apex
+                    || px + powerUp.getWidth() <= left - playerWidth - maxDrift
+                    || px >= right + maxDrift) {
+                return false;
+            }
+            for (int t = 0; t < heights.length; t++) {
+                int y = top + heights[t];
+                if (y < GameWorld.FALL_DEATH_THRESHOLD) {
+                    break;
+                }
+                int drift = GameWorld.MOVE_VELOCITY * t;
+                if (py < y + playerHeight && py + powerUp.getHeight() > y
+                        && px + powerUp.getWidth() > left - playerWidth - drift
+                        && px < right + drift) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Checks several levels at once, one per core.
+     * @param filenames the level files
+     * @param maxTicks how long enemies have to land or fall in each level
+     * @return a report for each level, in the same order
+     */
+    public static List<Report> validateAll(List<String> filenames, final long maxTicks) {
+        int numThreads = Math.max(1, Math.min(filenames.size(),
+                Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Report>> futures = new ArrayList<>();
+            for (final String filename : filenames) {
+                futures.add(pool.submit(new Callable<Report>() {
+                    @Override
+                    public Report call() {
+                        return validate(filename, maxTicks);
+                    }
+                }));
+            }
+            List<Report> reports = new ArrayList<>();
+            for (Future<Report> future : futures) {
+                try {
+                    reports.add(future.get());
+                } catch (ExecutionException e) {
+                    // validate() reports its own errors, so this is a bug
+                    throw new IllegalStateException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+            return reports;
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * 
+     * @param directory a directory of levels
+     * @return the binary levels and .txt files in it, sorted by name
+     */
+    public static List<String> findLevels(File directory) {
+        File[] files = directory.listFiles();
+        List<String> levels = new ArrayList<>();
+        if (files == null) {
+            return levels;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isFile() && (file.getName().endsWith(".txt")
+                    || BinaryLevelParser.isBinaryLevel(file.getPath()))) {
+                levels.add(file.getPath());
+            }
+        }
+        return levels;
+    }
+    
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java LevelValidator <level file or directory> [max ticks]");
+            System.exit(2);
+        }
+        long maxTicks = (args.length > 1) ? Long.parseLong(args[1]) : DEFAULT_MAX_TICKS;
+        File target = new File(args[0]);
+        List<String> filenames = target.isDirectory() ? findLevels(target)
+                : Arrays.asList(args[0]);
+        
+        long start = System.nanoTime();
+        List<Report> reports = validateAll(filenames, maxTicks);
+        long totalTicks = 0;
+        int numFailed = 0;
+        for (Report report : reports) {
+            System.out.println(report.getText());
+            totalTicks += report.getTicks();
+            if (!report.isValid()) {
+                numFailed++;
+            }
+        }
+        double seconds = (double) (System.nanoTime() - start) / NANOS_PER_SECOND;
+        System.out.println(String.format(Locale.ROOT,
+                "%d levels, %d failed, %d ticks in %.2f s (%.0f ticks/s)", reports.size(),
+                numFailed, totalTicks, seconds, totalTicks / seconds));
+        System.exit((numFailed == 0) ? 0 : 1);
+    }
+}
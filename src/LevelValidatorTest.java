@@ -0,0 +1,142 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LevelValidatorTest {
+    
+    private static final int FLOOR_TOP = 200;
+    
+    // A floor with an enemy on it, and an enemy over nothing that falls to its death. Of
+    // the power ups, one is a short jump from the floor, one is far above anything, and
+    // one is buried in the floor.
+    private static String writeLevel(File directory, String name) throws IOException {
+        return new LevelFixture().player(100, FLOOR_TOP)
+                .terrain(0, 0, 1000, FLOOR_TOP)
+                .enemy(400, FLOOR_TOP).enemy(2000, 300)
+                .powerUp(500, FLOOR_TOP + 40).powerUp(500, 800).powerUp(300, 20)
+                .writeTo(new File(directory, name));
+    }
+    
+    private static File makeDirectory() throws IOException {
+        File directory = File.createTempFile("levelValidatorTest", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        directory.deleteOnExit();
+        return directory;
+    }
+    
+    @Test
+    public void testRunUntil() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.load("sampleDKCLevel.txt", 5);
+        assertEquals(100, world.runUntil(null, 100, null));
+        assertEquals(100, world.getTickCount());
+        
+        GameWorld.Condition past150 = new GameWorld.Condition() {
+            @Override
+            public boolean holds(GameWorld world) {
+                return world.getTickCount() >= 150;
+            }
+        };
+        assertEquals(50, world.runUntil(past150, 1000, null));
+        assertEquals(0, world.runUntil(past150, 1000, null));
+        
+        // input is looked up by the world's tick count
+        InputScript script = new InputScript();
+        script.set(150, GameWorld.INPUT_RIGHT);
+        int px = world.getPlayer().getPx();
+        assertEquals(10, world.runUntil(null, 10, script));
+        assertTrue(world.getPlayer().getPx() > px);
+    }
+    
+    @Test
+    public void testJumpArcMatchesAJump() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.load(writeLevel(makeDirectory(), "jump.txt"), 5);
+        world.runUntil(null, 5, null);
+        Player player = world.getPlayer();
+        assertTrue(player.canJump());
+        int start = player.getPy();
+        
+        int[] arc = GameWorld.getJumpArc(0);
+        world.step(GameWorld.INPUT_JUMP);
+        for (int t = 1; t < arc.length && player.getPy() > start; t++) {
+            assertEquals("tick " + t, arc[t], player.getPy() - start);
+            world.step(0);
+        }
+        assertTrue(arc[arc.length - 1] < 0);
+    }
+    
+    @Test
+    public void testValidate() throws IOException {
+        String level = writeLevel(makeDirectory(), "level.txt");
+        LevelValidator.Report report = LevelValidator.validate(level, 500);
+        assertNull(report.getError());
+        assertEquals(1, report.getNumLanded());
+        assertEquals(1, report.getNumFell());
+        assertTrue(report.getUnsettledEnemies().isEmpty());
+        assertTrue(report.getTicks() > 1 && report.getTicks() < 500);
+        assertTrue(report.getTicksPerSecond() > 0);
+        
+        List<PowerUp> unreachable = report.getUnreachablePowerUps();
+        assertEquals(2, unreachable.size());
+        assertEquals(800, unreachable.get(0).getPy());
+        assertEquals(20, unreachable.get(1).getPy());
+        assertFalse(report.isValid());
+        assertTrue(report.getText(), report.getText().startsWith("FAIL " + level));
+    }
+    
+    @Test
+    public void testEnemyStillFallingWhenTimeRunsOut() throws IOException {
+        LevelValidator.Report report = LevelValidator.validate(
+                writeLevel(makeDirectory(), "level.txt"), 3);
+        assertEquals(3, report.getTicks());
+        assertEquals(1, report.getNumLanded());
+        assertEquals(1, report.getUnsettledEnemies().size());
+        assertTrue(report.getUnsettledEnemies().get(0).getPy() > FLOOR_TOP);
+    }
+    
+    @Test
+    public void testSampleLevelEnemiesAllLand() {
+        LevelValidator.Report report = LevelValidator.validate("sampleDKCLevel.txt",
+                LevelValidator.DEFAULT_MAX_TICKS);
+        assertNull(report.getError());
+        assertTrue(report.getUnsettledEnemies().isEmpty());
+        assertEquals(9, report.getNumLanded() + report.getNumFell());
+    }
+    
+    @Test
+    public void testValidateDirectoryInParallel() throws IOException {
+        File directory = makeDirectory();
+        writeLevel(directory, "a.txt");
+        writeLevel(directory, "b.txt");
+        File broken = new File(directory, "c.txt");
+        broken.deleteOnExit();
+        PrintWriter out = new PrintWriter(broken, "UTF-8");
+        out.println("!Enemy");
+        out.println("not a number,~");
+        out.close();
+        File notALevel = new File(directory, "notes.md");
+        notALevel.deleteOnExit();
+        assertTrue(notALevel.createNewFile());
+        
+        List<String> levels = LevelValidator.findLevels(directory);
+        assertEquals(Arrays.asList(new File(directory, "a.txt").getPath(),
+                new File(directory, "b.txt").getPath(), broken.getPath()), levels);
+        List<LevelValidator.Report> reports = LevelValidator.validateAll(levels, 500);
+        assertEquals(3, reports.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(levels.get(i), reports.get(i).getFilename());
+        }
+        assertNull(reports.get(0).getError());
+        assertEquals(reports.get(0).getTicks(), reports.get(1).getTicks());
+        assertNotNull(reports.get(2).getError());
+        assertTrue(reports.get(2).getText().startsWith("ERROR "));
+    }
+}
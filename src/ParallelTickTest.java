@@ -0,0 +1,87 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ParallelTickTest {
+    
+    private static final int NUM_PENS = 200;
+    private static final int ENEMIES_PER_PEN = 8;
+    
+    private static ForkJoinPool pool;
+    private static String level;
+    
+    /**
+     * Pens along a floor with several enemies in each, bumping into each other and the
+     * walls, and a gap in the floor every tenth pen that the enemies there fall through
+     */
+    @BeforeClass
+    public static void setUp() throws IOException {
+        pool = new ForkJoinPool(4);
+        LevelFixture fixture = new LevelFixture();
+        for (int pen = 0; pen < NUM_PENS; pen++) {
+            int x = pen * 1200;
+            fixture.terrain(x, 60, 60, 120);
+            if (pen % 10 == 9) {
+                fixture.terrain(x, 0, 500, 60).terrain(x + 700, 0, 500, 60);
+            } else {
+                fixture.terrain(x, 0, 1200, 60);
+            }
+            if (pen > 0) {
+                for (int i = 0; i < ENEMIES_PER_PEN; i++) {
+                    fixture.enemy(x + 100 + i * 130, 60);
+                }
+            }
+            fixture.powerUp(x + 300, 90);
+        }
+        level = fixture.write();
+    }
+    
+    @AfterClass
+    public static void tearDown() {
+        pool.shutdown();
+    }
+    
+    private static GameWorld load(ForkJoinPool enemyPool) throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.setEnemyPool(enemyPool);
+        world.load(level, 5);
+        return world;
+    }
+    
+    @Test
+    public void testParallelTicksMatchSerialTicks() throws IOException {
+        GameWorld serial = load(null);
+        GameWorld parallel = load(pool);
+        assertTrue(serial.getEnemies().size() > 1000);
+        for (int tick = 0; tick < 10000; tick++) {
+            serial.step(InputFixture.runBackAndForth(tick));
+            parallel.step(InputFixture.runBackAndForth(tick));
+            if (tick % 1000 == 999) {
+                assertEquals("tick " + tick, serial.getStateHash(), parallel.getStateHash());
+            }
+        }
+        assertEquals(serial.getSummary(), parallel.getSummary());
+        // something happened along the way
+        assertTrue(serial.getRemainingEnemies() < (NUM_PENS - 1) * ENEMIES_PER_PEN);
+    }
+    
+    @Test
+    public void testParallelTicksMatchSerialTicksWithSleepingEnemies() throws IOException {
+        GameWorld serial = load(null);
+        GameWorld parallel = load(pool);
+        for (GameWorld world : new GameWorld[] { serial, parallel }) {
+            world.setSleepDistance(2000);
+            world.setFastForwardSleepers(true);
+        }
+        for (int tick = 0; tick < 3000; tick++) {
+            serial.step(InputFixture.runBackAndForth(tick));
+            parallel.step(InputFixture.runBackAndForth(tick));
+        }
+        assertEquals(serial.getStateHash(), parallel.getStateHash());
+    }
+}
@@ -1,12 +1,7 @@
 import java.awt.*;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
-import javax.swing.Timer;
-
-import javax.imageio.ImageIO;
+import java.nio.ByteBuffer;
 
 /**
  * Player.java
@@ -23,8 +18,9 @@ public class Player extends GameObj implements Collidable {
     private int numBananas;
     private int numLives;
     private boolean canJump;
+    private final String imageName;
     private BufferedImage image;
-    private Timer deathTimer;
+    private int deathTicksRemaining;
     private boolean isAlive;
     private boolean hasFinishedDying;
     private boolean acquiredLetterK;
@@ -37,24 +33,28 @@ public class Player extends GameObj implements Collidable {
     private boolean isMovingLeft;
     private boolean isMovingRight;
     
-    private static final int DEATH_DELAY = 1000;
+    // About one second at 15 ms per tick
+    private static final int DEATH_DELAY_TICKS = 67;
     
     public Player(int px, int py, int numLives, String imageName) {
-        super(px, py, 0, 0, 60, 60);
+        this(new EntityStore(1), px, py, numLives, imageName);
+    }
+    
+    public Player(EntityStore store, int px, int py, int numLives, String imageName) {
+        super(store, px, py, 0, 0, 60, 60);
         this.numLives = numLives;
-        try {
-            image = ImageIO.read(new File(imageName));
-        } catch (IOException e) {
-            throw new IllegalArgumentException("image file not found");
-        }
+        this.imageName = imageName;
         canJump = true;
         isAlive = true;
-        deathTimer = new Timer(DEATH_DELAY, new ActionListener() {
-            @Override
-            public void actionPerformed(ActionEvent e) {
-                hasFinishedDying = true;
-            }
-        });
+        setHasGravity(true);
+    }
+    
+    /**
+     * 
+     * @return the name of the image file used to draw the player
+     */
+    public String getImageName() {
+        return imageName;
     }
     
     /**
@@ -106,7 +106,7 @@ public class Player extends GameObj implements Collidable {
     }
     
     /**
-     * @return has the player's death animation timer expired?
+     * @return has the player's death animation finished?
      */
     public boolean hasFinishedDying() {
         return hasFinishedDying;
@@ -121,6 +121,13 @@ public class Player extends GameObj implements Collidable {
         return numLives;
     }
     
+    /**
+     * Sets the number of lives, e.g. to carry them over when respawning
+     */
+    void setNumLives(int numLives) {
+        this.numLives = numLives;
+    }
+    
     /**
      * 
      * @return is the player alive?
@@ -130,14 +137,26 @@ public class Player extends GameObj implements Collidable {
     }
     
     /**
-     * Decrements the player's number of lives and starts the death timer.
+     * Decrements the player's number of lives and starts the death animation.
      */
     public void kill() {
         numLives--;
         isAlive = false;
         setVx(0);
         setVy(0);
-        deathTimer.start();
+        deathTicksRemaining = DEATH_DELAY_TICKS;
+    }
+    
+    /**
+     * Counts down the death animation. Called once per tick.
+     */
+    public void updateDeathAnimation() {
+        if (!isAlive && !hasFinishedDying) {
+            deathTicksRemaining--;
+            if (deathTicksRemaining <= 0) {
+                hasFinishedDying = true;
+            }
+        }
     }
     
     /**
@@ -156,6 +175,14 @@ public class Player extends GameObj implements Collidable {
         this.canJump = canJump;
     }
     
+    /**
+     * 
+     * @return the upward velocity the player jumps with
+     */
+    static int getJumpVelocity() {
+        return JUMP_VELOCITY;
+    }
+    
     /**
      * Sets the player's velocity in the upward direction to 15
      */
@@ -163,6 +190,43 @@ public class Player extends GameObj implements Collidable {
         setVy(JUMP_VELOCITY);
     }
     
+    /**
+     * Writes what the player knows about itself, beyond what is in its EntityStore, for
+     * restoreState() to read back. Used by WorldSnapshot.
+     */
+    void saveState(ByteBuffer out) {
+        out.putInt(numBananas);
+        out.putInt(numLives);
+        out.putInt(deathTicksRemaining);
+        int bits = 0;
+        bits |= canJump ? 1 : 0;
+        bits |= isAlive ? 2 : 0;
+        bits |= hasFinishedDying ? 4 : 0;
+        bits |= acquiredLetterK ? 8 : 0;
+        bits |= acquiredLetterO ? 16 : 0;
+        bits |= acquiredLetterN ? 32 : 0;
+        bits |= acquiredLetterG ? 64 : 0;
+        bits |= isMovingLeft ? 128 : 0;
+        bits |= isMovingRight ? 256 : 0;
+        out.putShort((short) bits);
+    }
+    
+    void restoreState(ByteBuffer in) {
+        numBananas = in.getInt();
+        numLives = in.getInt();
+        deathTicksRemaining = in.getInt();
+        int bits = in.getShort();
+        canJump = (bits & 1) != 0;
+        isAlive = (bits & 2) != 0;
+        hasFinishedDying = (bits & 4) != 0;
+        acquiredLetterK = (bits & 8) != 0;
+        acquiredLetterO = (bits & 16) != 0;
+        acquiredLetterN = (bits & 32) != 0;
+        acquiredLetterG = (bits & 64) != 0;
+        isMovingLeft = (bits & 128) != 0;
+        isMovingRight = (bits & 256) != 0;
+    }
+    
     private boolean hasAcquiredKong() {
         return acquiredLetterK && acquiredLetterO && acquiredLetterN && acquiredLetterG;
     }
@@ -179,6 +243,7 @@ public class Player extends GameObj implements Collidable {
      */
     @Override
     public void touchAction(GameObj other, CollisionDirection direction) {
+        CollisionStats.countAction(false);
         if (other instanceof TerrainBlock) {
             if (direction == CollisionDirection.DOWN) {
                 setMovableDown(false);
@@ -206,6 +271,7 @@ public class Player extends GameObj implements Collidable {
      */
     @Override
     public void collisionAction(GameObj other, CollisionDirection direction) {
+        CollisionStats.countAction(true);
         if (other instanceof Enemy) {
             Enemy enemy = (Enemy) other;
             if (direction == CollisionDirection.DOWN) {
@@ -274,6 +340,11 @@ public class Player extends GameObj implements Collidable {
         }
     }
     
+    @Override
+    public void loadSprite() throws IOException {
+        image = SpriteCache.get(imageName);
+    }
+    
     /**
      * Draws the player's sprite on the canvas, according to the player's movement direction
      */
@@ -1,10 +1,7 @@
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
-
-import javax.imageio.ImageIO;
-import javax.swing.JOptionPane;
+import java.nio.ByteBuffer;
 
 
 /**
@@ -56,13 +53,11 @@ public class PowerUp extends GameObj {
     private boolean isClaimed;
     
     public PowerUp(int px, int py, PowerUpType type) {
-        super(px, py, 0, 0, type.getWidth(), type.getHeight());
-        try {
-            image = ImageIO.read(new File(type.getFilename()));
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, "Powerup image file not found!");
-            System.exit(1);
-        }
+        this(new EntityStore(1), px, py, type);
+    }
+    
+    public PowerUp(EntityStore store, int px, int py, PowerUpType type) {
+        super(store, px, py, 0, 0, type.getWidth(), type.getHeight());
         this.type = type;
     }
     
@@ -81,6 +76,18 @@ public class PowerUp extends GameObj {
         isClaimed = true;
     }
     
+    /**
+     * Writes whether the power up has been claimed, for restoreState() to read back. Used
+     * by WorldSnapshot.
+     */
+    void saveState(ByteBuffer out) {
+        out.put((byte) (isClaimed ? 1 : 0));
+    }
+    
+    void restoreState(ByteBuffer in) {
+        isClaimed = in.get() != 0;
+    }
+    
     /**
      * 
      * @return the enumerated type of this power up
@@ -89,6 +96,11 @@ public class PowerUp extends GameObj {
         return type;
     }
 
+    @Override
+    public void loadSprite() throws IOException {
+        image = SpriteCache.get(type.getFilename());
+    }
+
     @Override
     public void draw(Graphics2D g, int cameraOffsetX) {
         int x = GameCourt.getCartesianX(getPx(), getWidth()) + cameraOffsetX;
@@ -0,0 +1,83 @@
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+/**
+ * SpriteCache.java
+ * Decodes each image file once and shares the result between every object drawn with it,
+ * so a level with hundreds of bananas holds one banana image rather than hundreds.
+ * Images are converted to the screen's pixel format when they are loaded, so that drawing
+ * them doesn't have to convert every pixel on every frame.
+ * @author Jack Harkins
+ *
+ */
+public class SpriteCache {
+    
+    private static final Map<String, BufferedImage> images =
+            new ConcurrentHashMap<String, BufferedImage>();
+    
+    private SpriteCache() {
+    }
+    
+    /**
+     * Returns the image in a file, reading it the first time it is asked for. Safe to
+     * call from several threads; two threads asking for the same new image at once may
+     * both read it, but only one copy is kept.
+     * @param filename the image file
+     * @return the shared image
+     * @throws IOException if the file can't be read
+     */
+    public static BufferedImage get(String filename) throws IOException {
+        BufferedImage image = images.get(filename);
+        if (image == null) {
+            BufferedImage decoded = ImageIO.read(new File(filename));
+            if (decoded == null) {
+                throw new IOException("not a readable image: " + filename);
+            }
+            BufferedImage compatible = toCompatible(decoded);
+            BufferedImage existing = images.putIfAbsent(filename, compatible);
+            image = (existing != null) ? existing : compatible;
+        }
+        return image;
+    }
+    
+    /**
+     * 
+     * @return the number of images currently cached
+     */
+    public static int size() {
+        return images.size();
+    }
+    
+    /**
+     * Forgets every cached image, e.g. to measure loading from scratch.
+     */
+    public static void clear() {
+        images.clear();
+    }
+    
+    // Copies the image into the default screen's preferred format, if there is a screen
+    private static BufferedImage toCompatible(BufferedImage image) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return image;
+        }
+        GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+        if (image.getColorModel().equals(config.getColorModel())) {
+            return image;
+        }
+        BufferedImage compatible = config.createCompatibleImage(image.getWidth(),
+                image.getHeight(), image.getTransparency());
+        Graphics2D g = compatible.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return compatible;
+    }
+}
@@ -0,0 +1,48 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class SpriteCacheTest {
+    
+    @Test
+    public void testImageIsDecodedOnce() throws IOException {
+        SpriteCache.clear();
+        assertSame(SpriteCache.get("banana.png"), SpriteCache.get("banana.png"));
+        assertEquals(1, SpriteCache.size());
+    }
+    
+    @Test
+    public void testDifferentFilesAreCachedSeparately() throws IOException {
+        SpriteCache.clear();
+        assertNotSame(SpriteCache.get("banana.png"), SpriteCache.get("bananaBunch.png"));
+        assertEquals(2, SpriteCache.size());
+    }
+    
+    @Test(expected = IOException.class)
+    public void testMissingFile() throws IOException {
+        SpriteCache.get("noSuchSprite.png");
+    }
+    
+    @Test
+    public void testWorldReadsEverySpriteInTheLevel() throws IOException {
+        // the balloon is far outside the active window, so it isn't in play yet
+        String level = new LevelFixture().player(60, 60, "banana.png").terrain(0, 0, 60, 60)
+                .powerUp(300, 60, "bananaBunch").powerUp(100000, 60, "redBalloon").write();
+        GameWorld world = new GameWorld(800);
+        world.setActiveWindow(800);
+        world.load(level, 5);
+        assertEquals(1, world.getPowerUps().size());
+        SpriteCache.clear();
+        world.loadSprites();
+        assertEquals(3, SpriteCache.size());
+    }
+    
+    @Test(expected = IOException.class)
+    public void testWorldWithMissingSprite() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.load(new LevelFixture().player(60, 60, "noSuchSprite.png").write(), 5);
+        world.loadSprites();
+    }
+}
@@ -0,0 +1,197 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SweepAndPrune.java
+ * Finds the pairs of moving objects that are colliding or touching each other without
+ * testing every pair. The objects are kept sorted by left edge, so sweeping from each
+ * object to the right only meets the objects whose extents overlap it horizontally.
+ * 
+ * Objects move a few pixels per tick, so the order from the last tick is nearly right
+ * and an insertion sort puts it back in order in close to linear time. Objects that have
+ * left the list since the last update are dropped and new ones are inserted, so the
+ * list passed in can change freely from one tick to the next.
+ * @author Jack Harkins
+ *
+ */
+public class SweepAndPrune {
+    
+    private GameObj[] objs = new GameObj[64];
+    private int[] left = new int[64];
+    private int size;
+    // no object is wider than this, which bounds how far back query() has to look
+    private int maxWidth;
+    
+    // Indexed by handle: the object last seen with that handle, and the update it was
+    // last seen in. Handles are reused, so an entry only counts if the object matches.
+    private GameObj[] members = new GameObj[64];
+    private int[] seenIn = new int[64];
+    private int updateCount;
+    
+    private long pairsTested;
+    
+    /**
+     * Brings the set of objects and their order up to date. Every object must belong to
+     * the same EntityStore.
+     * @param list the objects to check against each other, e.g. the enemies in play
+     */
+    public void update(List<? extends GameObj> list) {
+        updateCount++;
+        addNew(list);
+        
+        // Drop whatever wasn't in the list this time, keeping the rest in order
+        int kept = 0;
+        maxWidth = 0;
+        for (int i = 0; i < size; i++) {
+            GameObj obj = objs[i];
+            int handle = obj.getHandle();
+            if (members[handle] == obj && seenIn[handle] == updateCount) {
+                objs[kept] = obj;
+                left[kept++] = obj.getPx();
+                maxWidth = Math.max(maxWidth, obj.getWidth());
+            } else if (members[handle] == obj) {
+                members[handle] = null;
+            }
+        }
+        Arrays.fill(objs, kept, size, null);
+        size = kept;
+        
+        insertionSort();
+    }
+    
+    // Adds the objects that weren't in the last update and marks every one as seen
+    private void addNew(List<? extends GameObj> list) {
+        for (int i = 0; i < list.size(); i++) {
+            GameObj obj = list.get(i);
+            int handle = obj.getHandle();
+            if (handle >= members.length) {
+                int capacity = Math.max(handle + 1, members.length * 2);
+                members = Arrays.copyOf(members, capacity);
+                seenIn = Arrays.copyOf(seenIn, capacity);
+            }
+            if (members[handle] != obj) {
+                members[handle] = obj;
+                add(obj);
+            }
+            seenIn[handle] = updateCount;
+        }
+    }
+    
+    private void add(GameObj obj) {
+        if (size == objs.length) {
+            objs = Arrays.copyOf(objs, size * 2);
+            left = Arrays.copyOf(left, size * 2);
+        }
+        objs[size++] = obj;
+    }
+    
+    // Ties are broken by handle, so that the order, and with it the order collisions are
+    // handled in, depends only on where the objects are now and not on where they were.
+    // A world restored from a WorldSnapshot then carries on exactly as it did the first
+    // time.
+    private void insertionSort() {
+        for (int i = 1; i < size; i++) {
+            GameObj obj = objs[i];
+            int key = left[i];
+            int handle = obj.getHandle();
+            int j = i - 1;
+            while (j >= 0 && (left[j] > key
+                    || (left[j] == key && objs[j].getHandle() > handle))) {
+                objs[j + 1] = objs[j];
+                left[j + 1] = left[j];
+                j--;
+            }
+            objs[j + 1] = obj;
+            left[j + 1] = key;
+        }
+    }
+    
+    /**
+     * Calls collisionAction() on both objects of every pair that is colliding, and
+     * touchAction() on both objects of every pair that is touching, for whichever of the
+     * two are Collidable. Pairs where neither object is Collidable, or either is asleep,
+     * are skipped. Uses the positions from the last update().
+     */
+    public void collide() {
+        for (int i = 0; i < size; i++) {
+            GameObj a = objs[i];
+            int right = left[i] + a.getWidth();
+            // touching objects share an edge, so include the ones starting at our right
+            for (int j = i + 1; j < size && left[j] <= right; j++) {
+                GameObj b = objs[j];
+                pairsTested++;
+                if (!(a instanceof Collidable) && !(b instanceof Collidable)) {
+                    continue;
+                }
+                if (isAsleep(a) || isAsleep(b)) {
+                    continue;
+                }
+                if (a.isColliding(b)) {
+                    CollisionDirection aDirection = a.getCollisionDirection(b);
+                    CollisionDirection bDirection = b.getCollisionDirection(a);
+                    if (a instanceof Collidable) {
+                        ((Collidable) a).collisionAction(b, aDirection);
+                    }
+                    if (b instanceof Collidable) {
+                        ((Collidable) b).collisionAction(a, bDirection);
+                    }
+                } else if (a.isTouching(b)) {
+                    CollisionDirection aDirection = a.getCollisionDirection(b);
+                    CollisionDirection bDirection = b.getCollisionDirection(a);
+                    if (a instanceof Collidable) {
+                        ((Collidable) a).touchAction(b, aDirection);
+                    }
+                    if (b instanceof Collidable) {
+                        ((Collidable) b).touchAction(a, bDirection);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Finds every object whose extent overlapped [minX, maxX) at the last update(), in
+     * order of left edge. Only the objects near the range are looked at.
+     * @param out receives the objects found; cleared first
+     */
+    public void query(int minX, int maxX, List<? super GameObj> out) {
+        out.clear();
+        // anything starting before minX - maxWidth ends before minX
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (left[mid] < minX - maxWidth) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < size && left[i] < maxX; i++) {
+            if (left[i] + objs[i].getWidth() > minX) {
+                out.add(objs[i]);
+            }
+        }
+    }
+    
+    private static boolean isAsleep(GameObj obj) {
+        return obj.getStore().hasFlags(obj.getHandle(), EntityStore.ASLEEP);
+    }
+    
+    /**
+     * 
+     * @return number of objects being swept
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * 
+     * @return total number of pairs whose extents overlapped horizontally, i.e. that had
+     * to be looked at more closely, since this was created
+     */
+    public long getPairsTested() {
+        return pairsTested;
+    }
+}
@@ -0,0 +1,163 @@
+import static org.junit.Assert.*;
+
+import java.awt.Graphics2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class SweepAndPruneTest {
+    
+    /**
+     * Records every collision and touch it is told about, as "collide a b" or
+     * "touch a b" with a being this object's id
+     */
+    private static class Recorder extends GameObj implements Collidable {
+        private final int id;
+        private final Set<String> log;
+        
+        Recorder(EntityStore store, int id, int px, int py, int size, Set<String> log) {
+            super(store, px, py, 0, 0, size, size);
+            this.id = id;
+            this.log = log;
+        }
+        
+        @Override
+        public void collisionAction(GameObj other, CollisionDirection direction) {
+            log.add("collide " + id + " " + ((Recorder) other).id + " " + direction);
+        }
+        
+        @Override
+        public void touchAction(GameObj other, CollisionDirection direction) {
+            log.add("touch " + id + " " + ((Recorder) other).id + " " + direction);
+        }
+        
+        @Override
+        public void draw(Graphics2D g, int cameraOffsetX) {
+        }
+    }
+    
+    private static Set<String> bruteForce(List<Recorder> objs) {
+        Set<String> log = new HashSet<>();
+        for (Recorder a : objs) {
+            for (Recorder b : objs) {
+                if (a == b) {
+                    continue;
+                }
+                if (a.isColliding(b)) {
+                    log.add("collide " + a.id + " " + b.id + " " + a.getCollisionDirection(b));
+                } else if (a.isTouching(b)) {
+                    log.add("touch " + a.id + " " + b.id + " " + a.getCollisionDirection(b));
+                }
+            }
+        }
+        return log;
+    }
+    
+    @Test
+    public void testFindsTheSamePairsAsTestingEveryPair() {
+        Random random = new Random(17);
+        EntityStore store = new EntityStore(0);
+        Set<String> log = new HashSet<>();
+        List<Recorder> movers = new ArrayList<>();
+        List<Recorder> others = new ArrayList<>();
+        int nextId = 0;
+        SweepAndPrune sweep = new SweepAndPrune();
+        
+        for (int tick = 0; tick < 200; tick++) {
+            // wander around on a small grid so that plenty of objects touch exactly
+            for (Recorder obj : movers) {
+                store.setPx(obj.getHandle(), obj.getPx() + 10 * (random.nextInt(5) - 2));
+                store.setPy(obj.getHandle(), obj.getPy() + 10 * (random.nextInt(3) - 1));
+            }
+            // objects come and go, and their handles are reused
+            while (movers.size() < 150) {
+                movers.add(new Recorder(store, nextId++, 10 * random.nextInt(200),
+                        10 * random.nextInt(10), 30, log));
+            }
+            while (others.size() < 50) {
+                others.add(new Recorder(store, nextId++, 10 * random.nextInt(200),
+                        10 * random.nextInt(10), 20, log));
+            }
+            for (int i = 0; i < 5; i++) {
+                List<Recorder> list = random.nextBoolean() ? movers : others;
+                list.remove(random.nextInt(list.size())).release();
+            }
+            
+            // the ones that don't move are swept along with the rest
+            List<Recorder> all = new ArrayList<>(movers);
+            all.addAll(others);
+            log.clear();
+            sweep.update(all);
+            sweep.collide();
+            assertEquals(all.size(), sweep.size());
+            assertEquals("tick " + tick, bruteForce(all), log);
+        }
+        assertTrue(sweep.getPairsTested() > 0);
+    }
+    
+    @Test
+    public void testQueryMatchesFullScan() {
+        Random random = new Random(23);
+        EntityStore store = new EntityStore(0);
+        Set<String> log = new HashSet<>();
+        List<Recorder> movers = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            movers.add(new Recorder(store, i, random.nextInt(20000) - 2000, 0,
+                    1 + random.nextInt(100), log));
+        }
+        SweepAndPrune sweep = new SweepAndPrune();
+        sweep.update(movers);
+        
+        List<GameObj> found = new ArrayList<>();
+        for (int q = 0; q < 500; q++) {
+            int minX = random.nextInt(22000) - 3000;
+            int maxX = minX + random.nextInt(1000);
+            sweep.query(minX, maxX, found);
+            int expected = 0;
+            for (Recorder obj : movers) {
+                if (obj.getPx() < maxX && obj.getPx() + obj.getWidth() > minX) {
+                    expected++;
+                    assertTrue(found.contains(obj));
+                }
+            }
+            assertEquals(expected, found.size());
+            for (int i = 1; i < found.size(); i++) {
+                assertTrue(found.get(i - 1).getPx() <= found.get(i).getPx());
+            }
+        }
+    }
+    
+    @Test
+    public void testEnemiesTurnAroundAtEachOther() throws IOException {
+        String level = new LevelFixture()
+                .terrain(0, 0, 3000, 60).terrain(1000, 60, 60, 120).terrain(2000, 60, 60, 120)
+                .enemy(1200, 60).enemy(1500, 60)
+                .write();
+        GameWorld world = new GameWorld(800);
+        world.load(level, 5);
+        Enemy first = world.getEnemies().get(0);
+        Enemy second = world.getEnemies().get(1);
+        // found for drawing from the moment the level is loaded
+        List<GameObj> found = new ArrayList<>();
+        world.findEnemies(1100, 1300, found);
+        assertEquals(1, found.size());
+        assertSame(first, found.get(0));
+        boolean firstReachedWall = false;
+        boolean secondReachedWall = false;
+        for (int tick = 0; tick < 2000; tick++) {
+            world.tick();
+            // they may overlap by a tick's worth of movement each before turning
+            assertTrue("tick " + tick, first.getPx() + first.getWidth() <= second.getPx() + 6);
+            firstReachedWall |= tick > 1000 && first.getPx() == 1060;
+            secondReachedWall |= tick > 1000 && second.getPx() + second.getWidth() == 2000;
+        }
+        // still pacing back and forth between the walls rather than stuck together
+        assertTrue(firstReachedWall);
+        assertTrue(secondReachedWall);
+    }
+}
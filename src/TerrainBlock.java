@@ -9,7 +9,12 @@ import java.awt.*;
 public class TerrainBlock extends GameObj {
 
     public TerrainBlock(int px, int py, int width, int height) {
-        super(px, py, 0, 0, width, height);
+        this(new EntityStore(1), px, py, width, height);
+    }
+    
+    public TerrainBlock(EntityStore store, int px, int py, int width, int height) {
+        super(store, px, py, 0, 0, width, height);
+        setStatic(true);
     }
     
     @Override
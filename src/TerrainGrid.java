@@ -0,0 +1,190 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TerrainGrid.java
+ * A uniform grid over the static terrain of a level. Each cell stores the indices of the
+ * terrain blocks that overlap it, so a moving object only needs to be tested against the
+ * blocks in the cells around it instead of every block in the level. The grid is built
+ * when a level is loaded and records where the terrain was at that time; GameWorld builds
+ * a new one if terrain moves.
+ * @author Jack Harkins
+ *
+ */
+public class TerrainGrid {
+
+    // Roughly two sprites wide, so a 60x60 sprite usually spans at most 2x2 cells
+    public static final int DEFAULT_CELL_SIZE = 128;
+
+    // Queries are padded so that blocks the object is merely touching, or that it
+    // could be clipped into while being pushed out of another block, are still returned.
+    // Nothing moves faster than GameObj's maximum velocity in a single tick.
+    private static final int QUERY_MARGIN = 20;
+
+    private final TerrainBlock[] blocks;
+    private final int cellSize;
+    private final int minCellX;
+    private final int minCellY;
+    private final int numCols;
+    private final int numRows;
+
+    // Compressed cell storage: the blocks in cell c are
+    // cellItems[cellStart[c]] ... cellItems[cellStart[c + 1] - 1]
+    private final int[] cellStart;
+    private final int[] cellItems;
+
+    /**
+     * A reusable, growable buffer of candidate block indices filled in by query().
+     * Each thread querying the grid should use its own instance.
+     */
+    public static class Candidates {
+        private int[] items = new int[64];
+        private int size;
+
+        /**
+         *
+         * @return the number of candidate blocks found by the last query
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         *
+         * @param i position in the candidate list
+         * @return index of the candidate block in the list the grid was built from
+         */
+        public int get(int i) {
+            return items[i];
+        }
+
+        private void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+    }
+
+    public TerrainGrid(List<TerrainBlock> blocks) {
+        this(blocks, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Builds the grid from the given terrain. Block indices refer to positions in this list.
+     * @param blocks the level's terrain blocks
+     * @param cellSize width and height of a grid cell, in pixels
+     */
+    public TerrainGrid(List<TerrainBlock> blocks, int cellSize) {
+        this.blocks = blocks.toArray(new TerrainBlock[blocks.size()]);
+        this.cellSize = cellSize;
+
+        if (blocks.isEmpty()) {
+            minCellX = 0;
+            minCellY = 0;
+            numCols = 0;
+            numRows = 0;
+            cellStart = new int[1];
+            cellItems = new int[0];
+            return;
+        }
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (TerrainBlock block : blocks) {
+            minX = Math.min(minX, block.getPx());
+            minY = Math.min(minY, block.getPy());
+            maxX = Math.max(maxX, block.getPx() + block.getWidth());
+            maxY = Math.max(maxY, block.getPy() + block.getHeight());
+        }
+        minCellX = toCell(minX);
+        minCellY = toCell(minY);
+        numCols = toCell(maxX) - minCellX + 1;
+        numRows = toCell(maxY) - minCellY + 1;
+
+        // First pass counts the blocks in each cell, second pass fills them in
+        cellStart = new int[numCols * numRows + 1];
+        for (TerrainBlock block : blocks) {
+            int x0 = toCell(block.getPx()) - minCellX;
+            int x1 = toCell(block.getPx() + block.getWidth()) - minCellX;
+            int y0 = toCell(block.getPy()) - minCellY;
+            int y1 = toCell(block.getPy() + block.getHeight()) - minCellY;
+            for (int row = y0; row <= y1; row++) {
+                for (int col = x0; col <= x1; col++) {
+                    cellStart[row * numCols + col + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < numCols * numRows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellItems = new int[cellStart[numCols * numRows]];
+        int[] fill = Arrays.copyOf(cellStart, numCols * numRows);
+        int index = 0;
+        for (TerrainBlock block : blocks) {
+            int x0 = toCell(block.getPx()) - minCellX;
+            int x1 = toCell(block.getPx() + block.getWidth()) - minCellX;
+            int y0 = toCell(block.getPy()) - minCellY;
+            int y1 = toCell(block.getPy() + block.getHeight()) - minCellY;
+            for (int row = y0; row <= y1; row++) {
+                for (int col = x0; col <= x1; col++) {
+                    cellItems[fill[row * numCols + col]++] = index;
+                }
+            }
+            index++;
+        }
+    }
+
+    private int toCell(int coord) {
+        return Math.floorDiv(coord, cellSize);
+    }
+
+    /**
+     *
+     * @param index index of a block returned by a query
+     * @return the terrain block with that index
+     */
+    public TerrainBlock getBlock(int index) {
+        return blocks[index];
+    }
+
+    /**
+     * Finds every terrain block that the given object could be colliding with or touching.
+     * Candidates are returned once each, in the same order as the list the grid was built
+     * from, so collision actions are applied in the same order as a full scan would.
+     * @param obj the moving object
+     * @param out buffer that receives the candidate block indices
+     */
+    public void query(GameObj obj, Candidates out) {
+        out.size = 0;
+        if (numCols == 0) {
+            return;
+        }
+        int x0 = Math.max(toCell(obj.getPx() - QUERY_MARGIN) - minCellX, 0);
+        int x1 = Math.min(toCell(obj.getPx() + obj.getWidth() + QUERY_MARGIN) - minCellX,
+                numCols - 1);
+        int y0 = Math.max(toCell(obj.getPy() - QUERY_MARGIN) - minCellY, 0);
+        int y1 = Math.min(toCell(obj.getPy() + obj.getHeight() + QUERY_MARGIN) - minCellY,
+                numRows - 1);
+        for (int row = y0; row <= y1; row++) {
+            for (int col = x0; col <= x1; col++) {
+                int cell = row * numCols + col;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    out.add(cellItems[i]);
+                }
+            }
+        }
+
+        // Blocks spanning several cells show up more than once
+        Arrays.sort(out.items, 0, out.size);
+        int unique = 0;
+        for (int i = 0; i < out.size; i++) {
+            if (unique == 0 || out.items[unique - 1] != out.items[i]) {
+                out.items[unique++] = out.items[i];
+            }
+        }
+        out.size = unique;
+    }
+}
@@ -0,0 +1,113 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TerrainGridTest {
+    
+    // How far around an object query() promises to look
+    private static final int MARGIN = 20;
+    
+    private static boolean isNear(TerrainBlock block, GameObj obj) {
+        return block.getPx() <= obj.getPx() + obj.getWidth() + MARGIN
+                && block.getPx() + block.getWidth() >= obj.getPx() - MARGIN
+                && block.getPy() <= obj.getPy() + obj.getHeight() + MARGIN
+                && block.getPy() + block.getHeight() >= obj.getPy() - MARGIN;
+    }
+    
+    // Every block a full scan finds must be a candidate, once, in list order
+    private static void checkQuery(List<TerrainBlock> blocks, TerrainGrid grid, GameObj obj,
+            TerrainGrid.Candidates candidates) {
+        grid.query(obj, candidates);
+        for (int i = 1; i < candidates.size(); i++) {
+            assertTrue(candidates.get(i - 1) < candidates.get(i));
+        }
+        int next = 0;
+        for (int index = 0; index < blocks.size(); index++) {
+            if (!isNear(blocks.get(index), obj)) {
+                continue;
+            }
+            while (next < candidates.size() && candidates.get(next) < index) {
+                next++;
+            }
+            assertTrue("missed block " + index, next < candidates.size()
+                    && candidates.get(next) == index);
+            assertSame(blocks.get(index), grid.getBlock(index));
+        }
+        if (candidates.size() > 0) {
+            assertTrue(candidates.get(0) >= 0);
+            assertTrue(candidates.get(candidates.size() - 1) < blocks.size());
+        }
+    }
+    
+    private static List<TerrainBlock> randomBlocks(Random random, int count, int maxSize) {
+        List<TerrainBlock> blocks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            blocks.add(new TerrainBlock(random.nextInt(20000) - 10000,
+                    random.nextInt(4000) - 2000, 1 + random.nextInt(maxSize),
+                    1 + random.nextInt(maxSize)));
+        }
+        return blocks;
+    }
+    
+    @Test
+    public void testEmptyGrid() {
+        TerrainGrid grid = new TerrainGrid(new ArrayList<TerrainBlock>());
+        TerrainGrid.Candidates candidates = new TerrainGrid.Candidates();
+        grid.query(new TerrainBlock(0, 0, 60, 60), candidates);
+        assertEquals(0, candidates.size());
+    }
+    
+    @Test
+    public void testTouchingBlockIsACandidate() {
+        List<TerrainBlock> blocks = new ArrayList<>();
+        blocks.add(new TerrainBlock(0, 0, 60, 60));
+        TerrainGrid grid = new TerrainGrid(blocks, 128);
+        TerrainGrid.Candidates candidates = new TerrainGrid.Candidates();
+        grid.query(new TerrainBlock(0, 60, 60, 60), candidates);
+        assertEquals(1, candidates.size());
+        assertEquals(0, candidates.get(0));
+        grid.query(new TerrainBlock(1000, 1000, 60, 60), candidates);
+        assertEquals(0, candidates.size());
+    }
+    
+    @Test
+    public void testMatchesFullScan() {
+        Random random = new Random(3);
+        TerrainGrid.Candidates candidates = new TerrainGrid.Candidates();
+        for (int cellSize : new int[] { 16, 128, 1000 }) {
+            List<TerrainBlock> blocks = randomBlocks(random, 1500, 300);
+            TerrainGrid grid = new TerrainGrid(blocks, cellSize);
+            for (int q = 0; q < 500; q++) {
+                // some of these fall partly or wholly outside the grid
+                GameObj obj = new TerrainBlock(random.nextInt(24000) - 12000,
+                        random.nextInt(6000) - 3000, 1 + random.nextInt(200),
+                        1 + random.nextInt(200));
+                checkQuery(blocks, grid, obj, candidates);
+            }
+        }
+    }
+    
+    @Test
+    public void testBlocksSpanningManyCellsAreReturnedOnce() {
+        Random random = new Random(4);
+        // a floor as long as the level and a wall as tall, across hundreds of cells
+        List<TerrainBlock> blocks = randomBlocks(random, 200, 60);
+        blocks.add(new TerrainBlock(-10000, -2100, 20000, 60));
+        blocks.add(new TerrainBlock(-10100, -2100, 60, 4000));
+        TerrainGrid grid = new TerrainGrid(blocks, 32);
+        TerrainGrid.Candidates candidates = new TerrainGrid.Candidates();
+        for (int q = 0; q < 300; q++) {
+            // objects much larger than a cell, near the floor or the wall
+            GameObj obj = new TerrainBlock(random.nextInt(20000) - 10200,
+                    -2150 + random.nextInt(300), 60 + random.nextInt(500),
+                    60 + random.nextInt(500));
+            checkQuery(blocks, grid, obj, candidates);
+        }
+        grid.query(new TerrainBlock(-10100, -2100, 20000, 4000), candidates);
+        assertEquals(blocks.size(), candidates.size());
+    }
+}
@@ -0,0 +1,159 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TerrainTileCache.java
+ * Terrain never changes, so rather than filling every block in view on every frame, the
+ * terrain is drawn once into off-screen strips STRIP_WIDTH pixels wide, and a frame copies
+ * the two or three strips in view with one drawImage each. Only the strips around the
+ * view are kept; the rest are drawn again when they come back into view. Everything is
+ * redrawn if the world's static terrain changes.
+ * 
+ * This pays off when images are copied by the graphics card. Without acceleration,
+ * blending a strip's pixels costs more than filling the few blocks in view, so
+ * WorldRenderer only uses the cache when isAccelerated() says so.
+ * @author Jack Harkins
+ *
+ */
+public class TerrainTileCache {
+    
+    public static final int STRIP_WIDTH = 512;
+    
+    // enough for a screen's worth of strips on either side of the view
+    private static final int MAX_STRIPS = 8;
+    
+    private final int height;
+    private final BufferedImage[] images = new BufferedImage[MAX_STRIPS];
+    // which strip each image holds, valid only where hasStrip is set
+    private final int[] strips = new int[MAX_STRIPS];
+    // rows of each image that have terrain in them; only these are copied
+    private final int[] tops = new int[MAX_STRIPS];
+    private final int[] bottoms = new int[MAX_STRIPS];
+    private final boolean[] hasStrip = new boolean[MAX_STRIPS];
+    private final List<TerrainBlock> stripBlocks = new ArrayList<>();
+    
+    // what the cached strips were drawn from
+    private EntityStore store;
+    private long staticVersion;
+    private int stripsDrawn;
+    
+    /**
+     * @param height height of the view, and of every strip
+     */
+    public TerrainTileCache(int height) {
+        this.height = height;
+    }
+    
+    /**
+     * 
+     * @return can images on the default screen be accelerated by the graphics card?
+     */
+    public static boolean isAccelerated() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return false;
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().getImageCapabilities().isAccelerated();
+    }
+    
+    /**
+     * Draws the world's terrain between level x coordinates minX and maxX.
+     * @param camera horizontal offset applied to every object when drawing
+     */
+    public void draw(Graphics2D g, GameWorld world, int camera, int minX, int maxX) {
+        EntityStore worldStore = world.getEntityStore();
+        if (worldStore != store || worldStore.getStaticVersion() != staticVersion) {
+            store = worldStore;
+            staticVersion = worldStore.getStaticVersion();
+            for (int i = 0; i < MAX_STRIPS; i++) {
+                hasStrip[i] = false;
+            }
+        }
+        int first = Math.floorDiv(minX, STRIP_WIDTH);
+        int last = Math.floorDiv(maxX - 1, STRIP_WIDTH);
+        for (int strip = first; strip <= last; strip++) {
+            int slot = getStrip(world, strip, first, last);
+            int x = strip * STRIP_WIDTH + camera;
+            if (tops[slot] < bottoms[slot]) {
+                g.drawImage(images[slot], x, tops[slot], x + STRIP_WIDTH, bottoms[slot],
+                        0, tops[slot], STRIP_WIDTH, bottoms[slot], null);
+            }
+        }
+    }
+    
+    /**
+     * 
+     * @return the number of strips drawn from scratch so far
+     */
+    public int getStripsDrawn() {
+        return stripsDrawn;
+    }
+    
+    // returns the slot holding the strip, drawing it first if needed
+    private int getStrip(GameWorld world, int strip, int first, int last) {
+        int slot = -1;
+        for (int i = 0; i < MAX_STRIPS; i++) {
+            if (hasStrip[i] && strips[i] == strip) {
+                return i;
+            }
+            if (slot < 0 && !hasStrip[i]) {
+                slot = i;
+            }
+        }
+        if (slot < 0) {
+            // replace whichever strip is furthest from the view
+            int furthest = -1;
+            for (int i = 0; i < MAX_STRIPS; i++) {
+                int distance = Math.max(first - strips[i], strips[i] - last);
+                if (distance > furthest) {
+                    furthest = distance;
+                    slot = i;
+                }
+            }
+        }
+        if (images[slot] == null) {
+            images[slot] = createImage(STRIP_WIDTH, height);
+        }
+        drawStrip(slot, world, strip);
+        strips[slot] = strip;
+        hasStrip[slot] = true;
+        stripsDrawn++;
+        return slot;
+    }
+    
+    private void drawStrip(int slot, GameWorld world, int strip) {
+        int minX = strip * STRIP_WIDTH;
+        Graphics2D g = images[slot].createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, STRIP_WIDTH, height);
+        g.setComposite(AlphaComposite.SrcOver);
+        int top = height;
+        int bottom = 0;
+        world.getTerrainIndex().query(minX, minX + STRIP_WIDTH, stripBlocks);
+        for (int i = 0; i < stripBlocks.size(); i++) {
+            TerrainBlock block = stripBlocks.get(i);
+            block.draw(g, -minX);
+            int y = GameCourt.getCartesianY(block.getPy(), block.getHeight());
+            top = Math.min(top, Math.max(y, 0));
+            bottom = Math.max(bottom, Math.min(y + block.getHeight(), height));
+        }
+        g.dispose();
+        tops[slot] = top;
+        bottoms[slot] = bottom;
+    }
+    
+    private static BufferedImage createImage(int width, int height) {
+        if (GraphicsEnvironment.isHeadless()) {
+            // premultiplied pixels are the cheapest to blend in software
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().createCompatibleImage(width, height,
+                        Transparency.TRANSLUCENT);
+    }
+}
@@ -0,0 +1,87 @@
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TerrainTileCacheTest {
+    
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    
+    private GameWorld world;
+    private TerrainTileCache cache;
+    
+    @Before
+    public void setUp() throws Exception {
+        world = new GameWorld(WIDTH);
+        world.load("sampleDKCLevel.txt", 5);
+        cache = new TerrainTileCache(HEIGHT);
+    }
+    
+    private BufferedImage drawCached(int camera) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        cache.draw(g, world, camera, -camera, WIDTH - camera);
+        g.dispose();
+        return image;
+    }
+    
+    private BufferedImage drawEveryBlock(int camera) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        for (TerrainBlock block : world.getTerrainBlocks()) {
+            block.draw(g, camera);
+        }
+        g.dispose();
+        return image;
+    }
+    
+    private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                    fail("pixel (" + x + ", " + y + ") differs");
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testMatchesDrawingEveryBlock() {
+        for (int camera = 400; camera > -6000; camera -= 733) {
+            assertSameImage(drawEveryBlock(camera), drawCached(camera));
+        }
+    }
+    
+    @Test
+    public void testStripsAreReused() {
+        drawCached(0);
+        int drawn = cache.getStripsDrawn();
+        assertTrue(drawn > 0);
+        drawCached(0);
+        drawCached(-6);
+        assertEquals(drawn, cache.getStripsDrawn());
+    }
+    
+    @Test
+    public void testMovingTerrainInvalidatesStrips() {
+        drawCached(0);
+        int drawn = cache.getStripsDrawn();
+        
+        TerrainBlock block = world.getTerrainBlocks().get(0);
+        block.setVx(25);
+        block.move();
+        block.stop();
+        
+        assertSameImage(drawEveryBlock(0), drawCached(0));
+        assertTrue("strips redrawn", cache.getStripsDrawn() > drawn);
+    }
+}
@@ -0,0 +1,217 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * TickProfiler.java
+ * Times the phases of each tick and frame into a LatencyHistogram per phase, so that the
+ * median, 99th percentile and worst case of each can be shown on screen or saved to a
+ * file. Code being profiled brackets each phase like this:
+ * 
+ *     long time = profiler.start();
+ *     ... first phase ...
+ *     time = profiler.lap(Phase.FIRST, time);
+ *     ... second phase ...
+ *     time = profiler.lap(Phase.SECOND, time);
+ * 
+ * A disabled profiler doesn't read the clock or record anything, so the cost of leaving
+ * the calls in is a field read and a branch per phase. Phases can be recorded from any
+ * thread.
+ * @author Jack Harkins
+ *
+ */
+public class TickProfiler {
+    
+    /**
+     * The parts of a tick and a frame that are timed
+     */
+    public enum Phase {
+        // GameWorld.tick()
+        REMOVE("remove"), // taking defeated enemies and claimed power ups out of play
+        STREAM("stream"), // bringing chunks of a streamed level into and out of play
+        SLEEP("sleep"), // putting far away enemies to sleep and waking near ones
+        MOVE("move"), // moving the player, the camera and everything with gravity
+        COLLIDE("collide"), // checkCollisions()
+        FALL_DEATHS("fallDeaths"), // the player falling off the map, and checkpoints
+        // GameCourt
+        TICK("tick"), // the whole of a step of the game loop, including the above
+        DRAW("draw"), // drawing a frame off-screen on the game loop thread
+        HUD("hud"), // updating the status bar on the EDT
+        PAINT("paint"); // copying the frame to the screen on the EDT
+        
+        private final String label;
+        
+        Phase(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    private static final Phase[] PHASES = Phase.values();
+    private static final double NANOS_PER_MICRO = 1000.0;
+    
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+    private volatile boolean enabled;
+    
+    public TickProfiler() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+    
+    /**
+     * Turns recording on or off. What has been recorded so far is kept either way.
+     * @param enabled should phases be timed?
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * 
+     * @return the time the first phase starts, or 0 if the profiler is disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+    
+    /**
+     * Records the time since start, or since the last lap, as the time a phase took.
+     * @param phase the phase that just finished
+     * @param since what start() or the last lap() returned
+     * @return the time the next phase starts, or 0 if the profiler is disabled
+     */
+    public long lap(Phase phase, long since) {
+        if (!enabled || since == 0) {
+            return start();
+        }
+        long now = System.nanoTime();
+        synchronized (this) {
+            histograms[phase.ordinal()].record(now - since);
+        }
+        return now;
+    }
+    
+    /**
+     * 
+     * @return number of times a phase has been recorded
+     */
+    public synchronized long getCount(Phase phase) {
+        return histograms[phase.ordinal()].getCount();
+    }
+    
+    /**
+     * 
+     * @param percentile from 0 to 100
+     * @return the time within which the given percentage of a phase's recordings
+     * finished, in nanoseconds
+     */
+    public synchronized long getNanosAtPercentile(Phase phase, double percentile) {
+        return histograms[phase.ordinal()].getValueAtPercentile(percentile);
+    }
+    
+    /**
+     * 
+     * @return the longest a phase has taken, in nanoseconds
+     */
+    public synchronized long getMaxNanos(Phase phase) {
+        return histograms[phase.ordinal()].getMax();
+    }
+    
+    /**
+     * Forgets everything recorded so far.
+     */
+    public synchronized void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+    
+    /**
+     * 
+     * @return one line per phase that has been recorded, with its count, median, 99th
+     * percentile and maximum in microseconds, e.g. for an on-screen overlay
+     */
+    public synchronized String[] getSummaryLines() {
+        int numRecorded = 0;
+        for (LatencyHistogram histogram : histograms) {
+            if (histogram.getCount() > 0) {
+                numRecorded++;
+            }
+        }
+        String[] lines = new String[numRecorded + 1];
+        lines[0] = String.format(Locale.ROOT, "%-10s %8s %8s %8s %8s", "phase (us)", "count",
+                "p50", "p99", "max");
+        int line = 1;
+        for (Phase phase : PHASES) {
+            LatencyHistogram h = histograms[phase.ordinal()];
+            if (h.getCount() > 0) {
+                lines[line++] = String.format(Locale.ROOT, "%-10s %8d %8.1f %8.1f %8.1f",
+                        phase.getLabel(), h.getCount(), micros(h.getValueAtPercentile(50)),
+                        micros(h.getValueAtPercentile(99)), micros(h.getMax()));
+            }
+        }
+        return lines;
+    }
+    
+    private static double micros(long nanos) {
+        return nanos / NANOS_PER_MICRO;
+    }
+    
+    /**
+     * Saves the statistics of every phase, replacing the file's contents. A file whose
+     * name ends in .json gets a JSON object with an entry per phase; anything else gets
+     * CSV with a header line. Times are in nanoseconds.
+     * @param filename the file to write
+     * @throws IOException upon an error in writing
+     */
+    public synchronized void write(String filename) throws IOException {
+        PrintWriter out = new PrintWriter(filename, "UTF-8");
+        try {
+            if (filename.toLowerCase(Locale.ROOT).endsWith(".json")) {
+                writeJson(out);
+            } else {
+                writeCsv(out);
+            }
+            if (out.checkError()) {
+                throw new IOException("error writing " + filename);
+            }
+        } finally {
+            out.close();
+        }
+    }
+    
+    private void writeCsv(PrintWriter out) {
+        out.print("phase,count,meanNanos,p50Nanos,p90Nanos,p99Nanos,p999Nanos,maxNanos\n");
+        for (Phase phase : PHASES) {
+            LatencyHistogram h = histograms[phase.ordinal()];
+            out.print(phase.getLabel() + "," + h.getCount() + "," + Math.round(h.getMean())
+                    + "," + h.getValueAtPercentile(50) + "," + h.getValueAtPercentile(90)
+                    + "," + h.getValueAtPercentile(99) + "," + h.getValueAtPercentile(99.9)
+                    + "," + h.getMax() + "\n");
+        }
+    }
+    
+    private void writeJson(PrintWriter out) {
+        out.print("{\n");
+        for (int i = 0; i < PHASES.length; i++) {
+            LatencyHistogram h = histograms[i];
+            out.print("  \"" + PHASES[i].getLabel() + "\": {\"count\": " + h.getCount()
+                    + ", \"meanNanos\": " + Math.round(h.getMean())
+                    + ", \"p50Nanos\": " + h.getValueAtPercentile(50)
+                    + ", \"p90Nanos\": " + h.getValueAtPercentile(90)
+                    + ", \"p99Nanos\": " + h.getValueAtPercentile(99)
+                    + ", \"p999Nanos\": " + h.getValueAtPercentile(99.9)
+                    + ", \"maxNanos\": " + h.getMax() + "}"
+                    + ((i < PHASES.length - 1) ? "," : "") + "\n");
+        }
+        out.print("}\n");
+    }
+}
@@ -0,0 +1,166 @@
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TickProfilerTest {
+    
+    private static final TickProfiler.Phase[] WORLD_PHASES = {
+        TickProfiler.Phase.REMOVE, TickProfiler.Phase.STREAM, TickProfiler.Phase.SLEEP,
+        TickProfiler.Phase.MOVE, TickProfiler.Phase.COLLIDE, TickProfiler.Phase.FALL_DEATHS
+    };
+    
+    @Test
+    public void testHistogramSmallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int v = 1; v <= 100; v++) {
+            h.record(v);
+        }
+        assertEquals(100, h.getCount());
+        assertEquals(50, h.getValueAtPercentile(50));
+        assertEquals(99, h.getValueAtPercentile(99));
+        assertEquals(100, h.getValueAtPercentile(100));
+        assertEquals(100, h.getMax());
+        assertEquals(50.5, h.getMean(), 1e-9);
+    }
+    
+    @Test
+    public void testHistogramPercentilesWithinPrecision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            h.record(i * 1000L);
+        }
+        assertEquals(10_000_000, h.getMax());
+        long[] expected = {5_000_000, 9_000_000, 9_900_000};
+        double[] percentiles = {50, 90, 99};
+        for (int i = 0; i < expected.length; i++) {
+            long value = h.getValueAtPercentile(percentiles[i]);
+            assertTrue(percentiles[i] + "th percentile " + value, value >= expected[i]);
+            assertTrue(percentiles[i] + "th percentile " + value,
+                    value <= expected[i] + expected[i] / 50);
+        }
+        assertEquals(10_000_000, h.getValueAtPercentile(100));
+    }
+    
+    @Test
+    public void testHistogramClampsAndResets() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getValueAtPercentile(99));
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+        assertEquals(2, h.getCount());
+        assertEquals(0, h.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.MAX_VALUE, h.getMax());
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getValueAtPercentile(100));
+    }
+    
+    @Test
+    public void testDisabledProfilerRecordsNothing() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.load("sampleDKCLevel.txt", 5);
+        assertFalse(world.getProfiler().isEnabled());
+        for (int t = 0; t < 100; t++) {
+            world.step(GameWorld.INPUT_RIGHT);
+        }
+        for (TickProfiler.Phase phase : TickProfiler.Phase.values()) {
+            assertEquals(phase.getLabel(), 0, world.getProfiler().getCount(phase));
+        }
+        assertEquals(0, world.getProfiler().start());
+    }
+    
+    @Test
+    public void testEveryPhaseOfATickIsRecorded() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.setActiveWindow(400);
+        world.load("sampleDKCLevel.txt", 5);
+        TickProfiler profiler = new TickProfiler();
+        profiler.setEnabled(true);
+        world.setProfiler(profiler);
+        for (int t = 0; t < 100; t++) {
+            world.step(GameWorld.INPUT_RIGHT);
+        }
+        for (TickProfiler.Phase phase : WORLD_PHASES) {
+            assertEquals(phase.getLabel(), 100, profiler.getCount(phase));
+            assertTrue(phase.getLabel(), profiler.getMaxNanos(phase) > 0);
+            assertTrue(phase.getLabel(), profiler.getNanosAtPercentile(phase, 50)
+                    <= profiler.getMaxNanos(phase));
+        }
+        assertEquals(0, profiler.getCount(TickProfiler.Phase.PAINT));
+        // a header, then one line for each phase recorded
+        assertEquals(WORLD_PHASES.length + 1, profiler.getSummaryLines().length);
+        
+        profiler.reset();
+        assertEquals(0, profiler.getCount(TickProfiler.Phase.MOVE));
+    }
+    
+    @Test
+    public void testWriteCsvAndJson() throws IOException {
+        TickProfiler profiler = new TickProfiler();
+        profiler.setEnabled(true);
+        long time = profiler.start();
+        for (int i = 0; i < 10; i++) {
+            time = profiler.lap(TickProfiler.Phase.COLLIDE, time);
+        }
+        
+        File csv = File.createTempFile("profile", ".csv");
+        File json = File.createTempFile("profile", ".json");
+        try {
+            profiler.write(csv.getPath());
+            List<String> lines = Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8);
+            assertEquals(TickProfiler.Phase.values().length + 1, lines.size());
+            assertTrue(lines.get(0).startsWith("phase,count,"));
+            boolean found = false;
+            for (String line : lines) {
+                if (line.startsWith("collide,10,")) {
+                    found = true;
+                }
+            }
+            assertTrue("collide line in " + lines, found);
+            
+            profiler.write(json.getPath());
+            String text = new String(Files.readAllBytes(json.toPath()), StandardCharsets.UTF_8);
+            assertTrue(text, text.trim().startsWith("{"));
+            assertTrue(text, text.trim().endsWith("}"));
+            assertTrue(text, text.contains("\"collide\": {\"count\": 10,"));
+            assertTrue(text, text.contains("\"paint\": {\"count\": 0,"));
+        } finally {
+            csv.delete();
+            json.delete();
+        }
+    }
+    
+    @Test
+    public void testProfiledTicksDoNotAllocate() throws IOException {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        
+        GameWorld world = new GameWorld(800);
+        world.load("sampleDKCLevel.txt", 5);
+        world.getProfiler().setEnabled(true);
+        for (int t = 0; t < 20000; t++) {
+            world.step(GameWorld.INPUT_RIGHT);
+        }
+        long overhead = -threads.getThreadAllocatedBytes(thread)
+                + threads.getThreadAllocatedBytes(thread);
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int t = 0; t < 1000; t++) {
+            world.step(GameWorld.INPUT_RIGHT);
+        }
+        long after = threads.getThreadAllocatedBytes(thread);
+        assertEquals("bytes allocated in 1000 ticks", 0, after - before - overhead);
+    }
+}
@@ -0,0 +1,87 @@
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * WorldRenderer.java
+ * Draws the objects in a GameWorld that are inside the view, as they were part of the way
+ * between the previous tick and the current one. Terrain and power ups are looked up in
+ * the world's interval indexes, or terrain is copied from a TerrainTileCache when images
+ * are accelerated, and enemies are found through the order the world's SweepAndPrune
+ * keeps them in, so drawing a frame costs about the same however long the level is.
+ * Not thread-safe; each thread that draws should use its own renderer.
+ * @author Jack Harkins
+ *
+ */
+public class WorldRenderer {
+    
+    // moving objects are drawn up to one tick's movement away from their position
+    private static final int MOVE_MARGIN = 20;
+    
+    private final int viewWidth;
+    private final TerrainTileCache terrainTiles;
+    private boolean cacheTerrain;
+    private final List<TerrainBlock> visibleBlocks = new ArrayList<>();
+    private final List<PowerUp> visiblePowerUps = new ArrayList<>();
+    private final List<GameObj> visibleEnemies = new ArrayList<>();
+    
+    /**
+     * @param viewWidth width of the area being drawn into
+     * @param viewHeight height of the area being drawn into
+     */
+    public WorldRenderer(int viewWidth, int viewHeight) {
+        this.viewWidth = viewWidth;
+        this.terrainTiles = new TerrainTileCache(viewHeight);
+        this.cacheTerrain = TerrainTileCache.isAccelerated();
+    }
+    
+    /**
+     * Overrides whether terrain is drawn from a TerrainTileCache or block by block.
+     * @param cacheTerrain should terrain be cached?
+     */
+    public void setTerrainCaching(boolean cacheTerrain) {
+        this.cacheTerrain = cacheTerrain;
+    }
+    
+    /**
+     * Draws the terrain, checkpoints, enemies, power ups and player that can be seen.
+     * @param alpha fraction of a tick elapsed since the last one, in [0, 1]
+     */
+    public void draw(Graphics2D g, GameWorld world, double alpha) {
+        int prevCamera = world.getPrevCameraOffsetX();
+        int camera = (int) Math.round(prevCamera + (world.getCameraOffsetX() - prevCamera) * alpha);
+        // level x coordinates that appear on screen
+        int minX = -camera;
+        int maxX = viewWidth - camera;
+        
+        // terrain doesn't move, so there is nothing to interpolate
+        if (cacheTerrain) {
+            terrainTiles.draw(g, world, camera, minX, maxX);
+        } else {
+            world.getTerrainIndex().query(minX, maxX, visibleBlocks);
+            for (int i = 0; i < visibleBlocks.size(); i++) {
+                visibleBlocks.get(i).draw(g, camera);
+            }
+        }
+        List<Checkpoint> checkpoints = world.getCheckpoints();
+        for (int i = 0; i < checkpoints.size(); i++) {
+            Checkpoint checkpoint = checkpoints.get(i);
+            if (checkpoint.getPx() + checkpoint.getWidth() > minX && checkpoint.getPx() < maxX) {
+                checkpoint.draw(g, camera);
+            }
+        }
+        world.findEnemies(minX - MOVE_MARGIN, maxX + MOVE_MARGIN, visibleEnemies);
+        for (int i = 0; i < visibleEnemies.size(); i++) {
+            visibleEnemies.get(i).drawInterpolated(g, camera, alpha);
+        }
+        world.getPowerUpIndex().query(minX, maxX, visiblePowerUps);
+        for (int i = 0; i < visiblePowerUps.size(); i++) {
+            PowerUp powerUp = visiblePowerUps.get(i);
+            // the index still holds power ups that have been picked up
+            if (!powerUp.hasBeenClaimed()) {
+                powerUp.drawInterpolated(g, camera, alpha);
+            }
+        }
+        world.getPlayer().drawInterpolated(g, camera, alpha);
+    }
+}
@@ -0,0 +1,138 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * WorldSnapshot.java
+ * The complete state of a GameWorld at the end of one tick, taken with
+ * GameWorld.saveSnapshot() and put back with GameWorld.restoreSnapshot(). A world that is
+ * restored and given the same input carries on exactly as it did the first time, which
+ * is what checkpoints, rewinding and rolling back a replay need.
+ * 
+ * Everything but the objects themselves is written to a ByteBuffer: the contents of the
+ * world's EntityStore followed by what the player, enemies, power ups and level streamer
+ * keep in their own fields. The objects are kept by reference, so that ones taken out of
+ * play since the snapshot come back as themselves. Both are reused from one snapshot to
+ * the next, so once the buffer has grown to fit the level, taking a snapshot allocates
+ * nothing and can be done every tick.
+ * 
+ * A snapshot can only be restored into the world it was taken from, and only until that
+ * world loads another level.
+ * @author Jack Harkins
+ *
+ */
+public class WorldSnapshot {
+    
+    private static final int DEFAULT_CAPACITY = 4096;
+    
+    private ByteBuffer buffer;
+    private int size;
+    private GameObj[] objects = new GameObj[64];
+    private int numObjects;
+    private int nextObject;
+    private EntityStore store;
+    private long tickCount;
+    
+    public WorldSnapshot() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * @param capacity initial size of the buffer, in bytes; it grows as needed
+     */
+    public WorldSnapshot(int capacity) {
+        buffer = ByteBuffer.allocate(Math.max(capacity, 16));
+    }
+    
+    /**
+     * 
+     * @return has anything been saved in this snapshot yet?
+     */
+    public boolean isEmpty() {
+        return store == null;
+    }
+    
+    /**
+     * 
+     * @return the tick count of the world when the snapshot was taken
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+    
+    /**
+     * 
+     * @return the number of bytes the snapshot takes up in its buffer
+     */
+    public int getSize() {
+        return size;
+    }
+    
+    /**
+     * 
+     * @return the number of bytes the buffer can hold before it has to grow
+     */
+    public int getCapacity() {
+        return buffer.capacity();
+    }
+    
+    /**
+     * Starts saving the state of the world that owns a store, discarding whatever was
+     * saved before.
+     * @return the buffer to write to
+     */
+    ByteBuffer startSave(EntityStore store, long tickCount) {
+        this.store = null;
+        this.tickCount = tickCount;
+        buffer.clear();
+        Arrays.fill(objects, 0, numObjects, null);
+        numObjects = 0;
+        return buffer;
+    }
+    
+    void finishSave(EntityStore store) {
+        this.store = store;
+        size = buffer.position();
+    }
+    
+    /**
+     * Doubles the size of the buffer, after a save ran out of room. The save has to be
+     * started again.
+     */
+    void grow() {
+        buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+    }
+    
+    void addObject(GameObj obj) {
+        if (numObjects == objects.length) {
+            objects = Arrays.copyOf(objects, numObjects * 2);
+        }
+        objects[numObjects++] = obj;
+    }
+    
+    /**
+     * Starts restoring the state of the world that owns a store.
+     * @return the saved state, ready to read from the start
+     * @throws IllegalArgumentException if nothing has been saved, or the snapshot was
+     * taken from another world or level
+     */
+    ByteBuffer startRestore(EntityStore store) {
+        if (isEmpty()) {
+            throw new IllegalArgumentException("nothing has been saved in the snapshot");
+        }
+        if (store != this.store) {
+            throw new IllegalArgumentException("snapshot was taken from another world or level");
+        }
+        buffer.position(0);
+        buffer.limit(size);
+        nextObject = 0;
+        return buffer;
+    }
+    
+    /**
+     * 
+     * @return the next object saved with addObject(), in the order they were added
+     */
+    GameObj nextObject() {
+        return objects[nextObject++];
+    }
+}
@@ -0,0 +1,144 @@
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+public class WorldSnapshotTest {
+    
+    private static final int SNAPSHOT_TICK = 200;
+    private static final int END_TICK = 700;
+    
+    private static void play(GameWorld world, int from, int to) {
+        for (int t = from; t < to; t++) {
+            world.step(InputFixture.runRightJumping(t));
+        }
+    }
+    
+    // Plays on from a snapshot, rewinds to it, and plays the same ticks again
+    private static void checkRewind(GameWorld world) {
+        play(world, 0, SNAPSHOT_TICK);
+        WorldSnapshot snapshot = new WorldSnapshot();
+        world.saveSnapshot(snapshot);
+        long savedHash = world.getStateHash();
+        String savedSummary = world.getSummary();
+        
+        play(world, SNAPSHOT_TICK, END_TICK);
+        long endHash = world.getStateHash();
+        String endSummary = world.getSummary();
+        assertFalse("something happened after the snapshot", savedSummary.equals(endSummary));
+        
+        world.restoreSnapshot(snapshot);
+        assertEquals(SNAPSHOT_TICK, world.getTickCount());
+        assertEquals(savedSummary, world.getSummary());
+        assertEquals(savedHash, world.getStateHash());
+        
+        play(world, SNAPSHOT_TICK, END_TICK);
+        assertEquals(endSummary, world.getSummary());
+        assertEquals(endHash, world.getStateHash());
+    }
+    
+    @Test
+    public void testRewindWholeLevel() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.load("sampleDKCLevel.txt", 5);
+        checkRewind(world);
+    }
+    
+    @Test
+    public void testRewindStreamedLevel() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.setActiveWindow(400);
+        world.setSleepDistance(800);
+        world.setFastForwardSleepers(true);
+        world.load("sampleDKCLevel.txt", 5);
+        checkRewind(world);
+    }
+    
+    @Test
+    public void testSnapshotCanBeRestoredMoreThanOnce() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.load("sampleDKCLevel.txt", 5);
+        play(world, 0, SNAPSHOT_TICK);
+        WorldSnapshot snapshot = new WorldSnapshot();
+        world.saveSnapshot(snapshot);
+        long savedHash = world.getStateHash();
+        for (int i = 0; i < 3; i++) {
+            play(world, SNAPSHOT_TICK, SNAPSHOT_TICK + 150 * (i + 1));
+            world.restoreSnapshot(snapshot);
+            assertEquals(savedHash, world.getStateHash());
+        }
+    }
+    
+    @Test
+    public void testBufferGrowsToFit() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.load("sampleDKCLevel.txt", 5);
+        WorldSnapshot snapshot = new WorldSnapshot(16);
+        assertTrue(snapshot.isEmpty());
+        world.saveSnapshot(snapshot);
+        assertFalse(snapshot.isEmpty());
+        assertTrue(snapshot.getSize() > 16);
+        assertTrue(snapshot.getCapacity() >= snapshot.getSize());
+        long hash = world.getStateHash();
+        play(world, 0, 100);
+        world.restoreSnapshot(snapshot);
+        assertEquals(hash, world.getStateHash());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptySnapshotIsRejected() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.load("sampleDKCLevel.txt", 5);
+        world.restoreSnapshot(new WorldSnapshot());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testSnapshotOfAnotherLevelIsRejected() throws IOException {
+        GameWorld world = new GameWorld(800);
+        world.load("sampleDKCLevel.txt", 5);
+        WorldSnapshot snapshot = new WorldSnapshot();
+        world.saveSnapshot(snapshot);
+        world.load("sampleDKCLevel.txt", 5);
+        world.restoreSnapshot(snapshot);
+    }
+    
+    @Test
+    public void testSnapshotEveryTickDoesNotAllocate() throws IOException {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        
+        // the player keeps running, jumping, picking up bananas and stomping enemies
+        GameWorld world = new GameWorld(800);
+        world.load(LevelFixture.runway(21000).write(), 5);
+        WorldSnapshot snapshot = new WorldSnapshot();
+        WorldSnapshot rollback = new WorldSnapshot();
+        for (int t = 0; t < 20000; t++) {
+            world.saveSnapshot(snapshot);
+            world.saveSnapshot(rollback);
+            world.restoreSnapshot(rollback);
+            world.step(InputFixture.runRightJumping(t));
+        }
+        assertTrue(world.getSummary(), world.getPlayer().isAlive());
+        int enemies = world.getRemainingEnemies();
+        long overhead = -threads.getThreadAllocatedBytes(thread)
+                + threads.getThreadAllocatedBytes(thread);
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int t = 20000; t < 21000; t++) {
+            world.saveSnapshot(snapshot);
+            world.saveSnapshot(rollback);
+            world.restoreSnapshot(rollback);
+            world.step(InputFixture.runRightJumping(t));
+        }
+        long after = threads.getThreadAllocatedBytes(thread);
+        assertEquals("bytes allocated in 1000 ticks", 0, after - before - overhead);
+        assertTrue(world.getSummary(), world.getPlayer().isAlive());
+        assertTrue(world.getSummary(), world.getRemainingEnemies() < enemies);
+    }
+}